@@ -98,6 +98,10 @@ abstract class ClickDatabase : ScenarioDatabase() {
                         Migration6to7,
                         Migration9to10,
                         Migration10to11,
+                        Migration11to12,
+                        Migration12to13,
+                        Migration13to14,
+                        Migration14to15,
                     )
                     .build()
 
@@ -109,4 +113,4 @@ abstract class ClickDatabase : ScenarioDatabase() {
 }
 
 /** Current version of the database. */
-const val CLICK_DATABASE_VERSION = 11
\ No newline at end of file
+const val CLICK_DATABASE_VERSION = 15
\ No newline at end of file
@@ -34,6 +34,10 @@ import com.buzbuz.smartautoclicker.core.database.entity.ScenarioEntity
 import com.buzbuz.smartautoclicker.core.database.entity.ToggleEventTypeStringConverter
 import com.buzbuz.smartautoclicker.core.database.entity.TutorialSuccessEntity
 import com.buzbuz.smartautoclicker.core.database.migrations.Migration10to11
+import com.buzbuz.smartautoclicker.core.database.migrations.Migration11to12
+import com.buzbuz.smartautoclicker.core.database.migrations.Migration12to13
+import com.buzbuz.smartautoclicker.core.database.migrations.Migration13to14
+import com.buzbuz.smartautoclicker.core.database.migrations.Migration14to15
 import com.buzbuz.smartautoclicker.core.database.migrations.Migration1to2
 
 @Database(
@@ -81,6 +85,10 @@ abstract class TutorialDatabase : ScenarioDatabase() {
                 )
                     .addMigrations(
                         Migration10to11,
+                        Migration11to12,
+                        Migration12to13,
+                        Migration13to14,
+                        Migration14to15,
                     )
                     .build()
 
@@ -37,7 +37,8 @@ import kotlinx.serialization.Serializable
  *
  * @param clickPositionType [ActionType.CLICK] only: indicates how the click position is interpreted.
  *                          If USER_SELECTED, [x] and [y] will be used.
- *                          If ON_DETECTED_CONDITION, the [clickOnConditionId] will be used.
+ *                          If ON_DETECTED_CONDITION or ON_EACH_DETECTED_CONDITION, the [clickOnConditionId] will
+ *                          be used.
  * @param x [ActionType.CLICK] only: the x position of the click. Null for others [ActionType].
  * @param y [ActionType.CLICK] only: the y position of the click. Null for others [ActionType].
  * @param clickOnConditionId [ActionType.CLICK] only: if defined, the condition to click on.
@@ -168,6 +169,11 @@ enum class ClickPositionType {
      * When the condition operator is OR, click on the condition detected condition.
      */
     ON_DETECTED_CONDITION,
+    /**
+     * Click on each match of the detected condition on the screen.
+     * The condition is selected the same way as for [ON_DETECTED_CONDITION].
+     */
+    ON_EACH_DETECTED_CONDITION,
 }
 
 /** Type converter to read/write the [ClickPositionType] into the database. */
@@ -37,6 +37,15 @@ import kotlinx.serialization.Serializable
  *                             value of [com.buzbuz.smartautoclicker.domain.ConditionOperator].
  * @param randomize if true, the action values such as timers, positions will be shifted by a small random value in
  *                  order to avoid behaving like a bot.
+ * @param maxFps the maximum number of screen images processed per second during the detection. 0 for no limit.
+ * @param backoffFrameCount the number of consecutive images without fulfilled event or screen change before slowing
+ *                          down the detection. 0 to never slow it down.
+ * @param backoffMaxDelay the maximum delay between two processed images when the detection is slowed down, in
+ *                        milliseconds.
+ * @param downscaleCapture if true, the screen is recorded directly at the detection resolution during the detection,
+ *                         instead of being recorded at full size and downscaled for each image.
+ * @param multiScaleMatching if true, the conditions not found at their captured size are also searched at several other
+ *                           sizes, allowing to detect them on screens with a different density.
  */
 @Entity(tableName = "scenario_table")
 @Serializable
@@ -46,6 +55,11 @@ data class ScenarioEntity(
     @ColumnInfo(name = "detection_quality") val detectionQuality: Int,
     @ColumnInfo(name = "end_condition_operator") val endConditionOperator: Int,
     @ColumnInfo(name = "randomize", defaultValue="0") val randomize: Boolean = false,
+    @ColumnInfo(name = "max_fps", defaultValue="0") val maxFps: Int = 0,
+    @ColumnInfo(name = "backoff_frame_count", defaultValue="0") val backoffFrameCount: Int = 0,
+    @ColumnInfo(name = "backoff_max_delay", defaultValue="0") val backoffMaxDelay: Long = 0,
+    @ColumnInfo(name = "downscale_capture", defaultValue="0") val downscaleCapture: Boolean = false,
+    @ColumnInfo(name = "multi_scale_matching", defaultValue="0") val multiScaleMatching: Boolean = false,
 )
 
 /**
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration from database v11 to v12.
+ *
+ * * add the detection_area_left, detection_area_top, detection_area_right and detection_area_bottom nullable integer
+ * columns to the condition table. They define the area to search for conditions using the new IN_AREA detection type,
+ * and are null for all existing conditions.
+ */
+object Migration11to12 : Migration(11, 12) {
+
+    override fun migrate(database: SupportSQLiteDatabase) {
+        database.apply {
+            execSQL(addDetectionAreaColumn("detection_area_left"))
+            execSQL(addDetectionAreaColumn("detection_area_top"))
+            execSQL(addDetectionAreaColumn("detection_area_right"))
+            execSQL(addDetectionAreaColumn("detection_area_bottom"))
+        }
+    }
+
+    private fun addDetectionAreaColumn(columnName: String) = """
+        ALTER TABLE `condition_table` 
+        ADD COLUMN `$columnName` INTEGER DEFAULT NULL
+    """.trimIndent()
+}
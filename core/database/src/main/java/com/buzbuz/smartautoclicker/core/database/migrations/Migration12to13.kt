@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration from database v12 to v13.
+ *
+ * * add the max_fps, backoff_frame_count and backoff_max_delay integer columns to the scenario table. They define the
+ * frame pacing of the detection, and are 0 for all existing scenarios, keeping their detection unlimited.
+ */
+object Migration12to13 : Migration(12, 13) {
+
+    override fun migrate(database: SupportSQLiteDatabase) {
+        database.apply {
+            execSQL(addFramePacingColumn("max_fps"))
+            execSQL(addFramePacingColumn("backoff_frame_count"))
+            execSQL(addFramePacingColumn("backoff_max_delay"))
+        }
+    }
+
+    private fun addFramePacingColumn(columnName: String) = """
+        ALTER TABLE `scenario_table` 
+        ADD COLUMN `$columnName` INTEGER NOT NULL DEFAULT 0
+    """.trimIndent()
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration from database v13 to v14.
+ *
+ * * add the downscale_capture boolean column to the scenario table. It is false for all existing scenarios, keeping
+ * their detection on the full size capture.
+ */
+object Migration13to14 : Migration(13, 14) {
+
+    override fun migrate(database: SupportSQLiteDatabase) {
+        database.execSQL(addScenarioColumn("downscale_capture"))
+    }
+
+    private fun addScenarioColumn(columnName: String) = """
+        ALTER TABLE `scenario_table` 
+        ADD COLUMN `$columnName` INTEGER NOT NULL DEFAULT 0
+    """.trimIndent()
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration from database v14 to v15.
+ *
+ * * add the multi_scale_matching boolean column to the scenario table. It is false for all existing scenarios, keeping
+ * the detection of their conditions at their captured size only.
+ */
+object Migration14to15 : Migration(14, 15) {
+
+    override fun migrate(database: SupportSQLiteDatabase) {
+        database.execSQL(addScenarioColumn("multi_scale_matching"))
+    }
+
+    private fun addScenarioColumn(columnName: String) = """
+        ALTER TABLE `scenario_table` 
+        ADD COLUMN `$columnName` INTEGER NOT NULL DEFAULT 0
+    """.trimIndent()
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import android.os.Build
+
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+
+import com.buzbuz.smartautoclicker.core.database.ClickDatabase
+import com.buzbuz.smartautoclicker.core.database.utils.*
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.robolectric.annotation.Config
+
+/** Tests the [Migration11to12]. */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [Build.VERSION_CODES.Q])
+class Migration11to12Tests {
+
+    private companion object {
+        private const val TEST_DB = "migration-test"
+
+        private const val OLD_DB_VERSION = 11
+        private const val NEW_DB_VERSION = 12
+    }
+
+    @get:Rule
+    val helper: MigrationTestHelper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        ClickDatabase::class.java,
+    )
+
+    @Test
+    fun migrate_condition_detectionAreaIsNull() {
+        val id = 1L
+        val evtId = 12L
+        val name = "TOTO"
+        val path = "/toto"
+        val threshold = 10
+        val detectionType = 2
+
+        // Insert in V11 and close
+        helper.createDatabase(TEST_DB, OLD_DB_VERSION).apply {
+            execSQL(getInsertV11Condition(id, evtId, name, path, 0, 1, 2, 3, threshold, detectionType, true))
+            close()
+        }
+
+        // Migrate
+        val dbV12 = helper.runMigrationsAndValidate(TEST_DB, NEW_DB_VERSION, true, Migration11to12)
+
+        // Verify
+        dbV12.query(getV12Conditions()).use { cursor ->
+            cursor.assertCountEquals(1)
+            cursor.moveToFirst()
+            cursor.assertColumnEquals(id, "id")
+            cursor.assertColumnEquals(evtId, "eventId")
+            cursor.assertColumnEquals(name, "name")
+            cursor.assertColumnEquals(path, "path")
+            cursor.assertColumnEquals(0, "area_left")
+            cursor.assertColumnEquals(1, "area_top")
+            cursor.assertColumnEquals(2, "area_right")
+            cursor.assertColumnEquals(3, "area_bottom")
+            cursor.assertColumnEquals(threshold, "threshold")
+            cursor.assertColumnEquals(detectionType, "detection_type")
+            cursor.assertColumnEquals(true, "shouldBeDetected")
+            cursor.assertColumnNull("detection_area_left")
+            cursor.assertColumnNull("detection_area_top")
+            cursor.assertColumnNull("detection_area_right")
+            cursor.assertColumnNull("detection_area_bottom")
+        }
+
+        dbV12.close()
+    }
+}
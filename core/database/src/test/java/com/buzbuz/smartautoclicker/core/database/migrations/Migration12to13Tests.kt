@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import android.os.Build
+
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+
+import com.buzbuz.smartautoclicker.core.database.ClickDatabase
+import com.buzbuz.smartautoclicker.core.database.utils.*
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.robolectric.annotation.Config
+
+/** Tests the [Migration12to13]. */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [Build.VERSION_CODES.Q])
+class Migration12to13Tests {
+
+    private companion object {
+        private const val TEST_DB = "migration-test"
+
+        private const val OLD_DB_VERSION = 12
+        private const val NEW_DB_VERSION = 13
+    }
+
+    @get:Rule
+    val helper: MigrationTestHelper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        ClickDatabase::class.java,
+    )
+
+    @Test
+    fun migrate_scenario_framePacingIsUnlimited() {
+        val id = 1L
+        val name = "TOTO"
+        val detectionQuality = 600
+        val endConditionOperator = 1
+
+        // Insert in V12 and close
+        helper.createDatabase(TEST_DB, OLD_DB_VERSION).apply {
+            execSQL(getInsertV12Scenario(id, name, detectionQuality, endConditionOperator, true))
+            close()
+        }
+
+        // Migrate
+        val dbV13 = helper.runMigrationsAndValidate(TEST_DB, NEW_DB_VERSION, true, Migration12to13)
+
+        // Verify
+        dbV13.query(getV13Scenarios()).use { cursor ->
+            cursor.assertCountEquals(1)
+            cursor.moveToFirst()
+            cursor.assertColumnEquals(id, "id")
+            cursor.assertColumnEquals(name, "name")
+            cursor.assertColumnEquals(detectionQuality, "detection_quality")
+            cursor.assertColumnEquals(endConditionOperator, "end_condition_operator")
+            cursor.assertColumnEquals(true, "randomize")
+            cursor.assertColumnEquals(0, "max_fps")
+            cursor.assertColumnEquals(0, "backoff_frame_count")
+            cursor.assertColumnEquals(0L, "backoff_max_delay")
+        }
+
+        dbV13.close()
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.database.migrations
+
+import android.os.Build
+
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+
+import com.buzbuz.smartautoclicker.core.database.ClickDatabase
+import com.buzbuz.smartautoclicker.core.database.utils.*
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.robolectric.annotation.Config
+
+/** Tests the [Migration13to14]. */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [Build.VERSION_CODES.Q])
+class Migration13to14Tests {
+
+    private companion object {
+        private const val TEST_DB = "migration-test"
+
+        private const val OLD_DB_VERSION = 13
+        private const val NEW_DB_VERSION = 14
+    }
+
+    @get:Rule
+    val helper: MigrationTestHelper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        ClickDatabase::class.java,
+    )
+
+    @Test
+    fun migrate_scenario_captureIsNotDownscaled() {
+        val id = 1L
+        val name = "TOTO"
+        val detectionQuality = 600
+        val endConditionOperator = 1
+        val maxFps = 30
+
+        // Insert in V13 and close
+        helper.createDatabase(TEST_DB, OLD_DB_VERSION).apply {
+            execSQL(getInsertV13Scenario(id, name, detectionQuality, endConditionOperator, maxFps))
+            close()
+        }
+
+        // Migrate
+        val dbV14 = helper.runMigrationsAndValidate(TEST_DB, NEW_DB_VERSION, true, Migration13to14)
+
+        // Verify
+        dbV14.query(getV14Scenarios()).use { cursor ->
+            cursor.assertCountEquals(1)
+            cursor.moveToFirst()
+            cursor.assertColumnEquals(id, "id")
+            cursor.assertColumnEquals(name, "name")
+            cursor.assertColumnEquals(detectionQuality, "detection_quality")
+            cursor.assertColumnEquals(endConditionOperator, "end_condition_operator")
+            cursor.assertColumnEquals(maxFps, "max_fps")
+            cursor.assertColumnEquals(false, "downscale_capture")
+        }
+
+        dbV14.close()
+    }
+}
@@ -229,4 +229,45 @@ fun getInsertV10Condition(id: Long, eventId: Long, name: String, path: String, l
 // ----- Utils for Database V11 -----
 
 fun getV11Scenarios() = "SELECT * FROM scenario_table"
-fun getV11Actions() = "SELECT * FROM action_table"
\ No newline at end of file
+fun getV11Actions() = "SELECT * FROM action_table"
+fun getInsertV11Condition(id: Long, eventId: Long, name: String, path: String, left: Int, top: Int, right: Int, bottom: Int,
+                          threshold: Int, detectionType: Int, shouldBeDetected: Boolean) =
+    """
+        INSERT INTO condition_table (id, eventId, name, path, area_left, area_top, area_right, area_bottom, threshold, detection_type, shouldBeDetected) 
+        VALUES ($id, $eventId, "$name","$path", $left, $top, $right, $bottom, $threshold, $detectionType, ${shouldBeDetected.toSqlite()})
+    """.trimIndent()
+
+
+// ----- Utils for Database V12 -----
+
+fun getV12Conditions() = "SELECT * FROM condition_table"
+fun getInsertV12Scenario(id: Long, name: String, detectionQuality: Int, endConditionOperator: Int, randomize: Boolean) =
+    """
+        INSERT INTO scenario_table (id, name, detection_quality, end_condition_operator, randomize) 
+        VALUES ($id, "$name", $detectionQuality, $endConditionOperator, ${randomize.toSqlite()})
+    """.trimIndent()
+
+
+// ----- Utils for Database V13 -----
+
+fun getV13Scenarios() = "SELECT * FROM scenario_table"
+fun getInsertV13Scenario(id: Long, name: String, detectionQuality: Int, endConditionOperator: Int, maxFps: Int) =
+    """
+        INSERT INTO scenario_table (id, name, detection_quality, end_condition_operator, max_fps) 
+        VALUES ($id, "$name", $detectionQuality, $endConditionOperator, $maxFps)
+    """.trimIndent()
+
+
+// ----- Utils for Database V14 -----
+
+fun getV14Scenarios() = "SELECT * FROM scenario_table"
+fun getInsertV14Scenario(id: Long, name: String, detectionQuality: Int, endConditionOperator: Int, downscaleCapture: Boolean) =
+    """
+        INSERT INTO scenario_table (id, name, detection_quality, end_condition_operator, downscale_capture) 
+        VALUES ($id, "$name", $detectionQuality, $endConditionOperator, ${downscaleCapture.toSqlite()})
+    """.trimIndent()
+
+
+// ----- Utils for Database V15 -----
+
+fun getV15Scenarios() = "SELECT * FROM scenario_table"
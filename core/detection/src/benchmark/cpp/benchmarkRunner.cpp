@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <numeric>
+
+#include "host/allocationCounter.hpp"
+#include "benchmarkRunner.hpp"
+
+using namespace smartautoclicker::benchmark;
+
+// The minimum number of warm up operations, executed before the measured ones.
+static const int MIN_WARM_UP_ITERATIONS = 3;
+
+BenchmarkRunner::BenchmarkRunner(int iterations, std::string filter) : iterations(iterations), filter(std::move(filter)) {
+    durations.reserve(iterations);
+}
+
+void BenchmarkRunner::printHeader() const {
+    printf("%-52s %8s %12s %12s %12s %12s %10s\n", "Benchmark", "Iter", "Mean ns/op", "p50 ns", "p90 ns", "p99 ns", "Allocs/op");
+}
+
+void BenchmarkRunner::run(const std::string& name, const std::function<void()>& prepare, const std::function<void()>& operation) {
+    if (!filter.empty() && name.find(filter) == std::string::npos) return;
+
+    int warmUpIterations = std::max(MIN_WARM_UP_ITERATIONS, iterations / 10);
+    for (int i = 0; i < warmUpIterations; i++) {
+        if (prepare) prepare();
+        operation();
+    }
+
+    durations.clear();
+    unsigned long allocations = 0;
+    for (int i = 0; i < iterations; i++) {
+        if (prepare) prepare();
+
+        unsigned long allocationsBefore = getAllocationCount();
+        auto start = std::chrono::steady_clock::now();
+        operation();
+        auto end = std::chrono::steady_clock::now();
+        allocations += getAllocationCount() - allocationsBefore;
+
+        durations.push_back(std::chrono::duration_cast<std::chrono::nanoseconds>(end - start).count());
+    }
+
+    double mean = (double) std::accumulate(durations.begin(), durations.end(), 0LL) / iterations;
+    std::sort(durations.begin(), durations.end());
+
+    printf("%-52s %8d %12.0f %12lld %12lld %12lld ", name.c_str(), iterations, mean, getPercentile(durations, 0.5),
+           getPercentile(durations, 0.9), getPercentile(durations, 0.99));
+    if (isAllocationCountSupported()) {
+        printf("%10.1f\n", (double) allocations / iterations);
+    } else {
+        printf("%10s\n", "-");
+    }
+    fflush(stdout);
+}
+
+long long BenchmarkRunner::getPercentile(const std::vector<long long>& sortedDurations, double percentile) {
+    // Nearest rank method.
+    auto rank = (size_t) std::ceil(percentile * (double) sortedDurations.size());
+    return sortedDurations[std::max((size_t) 1, rank) - 1];
+}
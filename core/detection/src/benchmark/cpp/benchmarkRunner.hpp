@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <functional>
+#include <string>
+#include <vector>
+
+namespace smartautoclicker::benchmark {
+
+    /**
+     * Runs the benchmarks and prints their results.
+     *
+     * Each benchmark operation is first executed a few times to warm up the caches, then measured on each iteration.
+     * The results are the mean and percentiles of the duration of an operation, and the mean number of heap
+     * allocations it made.
+     */
+    class BenchmarkRunner {
+
+    private:
+        int iterations;
+        std::string filter;
+
+        std::vector<long long> durations;
+
+        static long long getPercentile(const std::vector<long long>& sortedDurations, double percentile);
+
+    public:
+        BenchmarkRunner(int iterations, std::string filter);
+
+        /** Print the header of the results table. */
+        void printHeader() const;
+
+        /**
+         * Run a benchmark, if its name matches the filter.
+         *
+         * @param name the name of the benchmark.
+         * @param prepare called before each operation, not measured. Can be null.
+         * @param operation the measured operation.
+         */
+        void run(const std::string& name, const std::function<void()>& prepare, const std::function<void()>& operation);
+    };
+}
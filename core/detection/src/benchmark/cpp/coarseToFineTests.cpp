@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <cstdio>
+#include <vector>
+
+#include <opencv2/imgproc.hpp>
+
+#include "detector.hpp"
+#include "host/hostJni.hpp"
+#include "syntheticScreen.hpp"
+
+using namespace smartautoclicker;
+using namespace smartautoclicker::benchmark;
+
+// The screen of the tests, and the detection quality of the scenarios by default.
+static const int SCREEN_WIDTH = 1080;
+static const int SCREEN_HEIGHT = 1920;
+static const double DETECTION_QUALITY = 1200;
+// The threshold of the tests conditions.
+static const int CONDITION_THRESHOLD = 10;
+// The size of the tests conditions, large enough to be searched coarse to fine.
+static const int CONDITION_SIZE = 128;
+// The positions of the conditions are aligned on this step, so all copies of a condition have the same coarse score.
+static const int POSITION_STEP = 32;
+// The brightness offset of the look-alikes: the same gray pattern, but colors rejected by the threshold.
+static const int LOOK_ALIKE_BRIGHTNESS_OFFSET = 64;
+// The noise of the searched condition on the screen, making its score lower than the one of the look-alikes.
+static const int CONDITION_NOISE_AMPLITUDE = 8;
+// More look-alikes than the coarse candidates refined, but less than the color verifications of the full search.
+static const int LOOK_ALIKE_COUNT = 6;
+
+static const uint64_t SEEDS[] = { 0xC7F, 0xC80, 0xC81, 0xC82 };
+
+static int failureCount = 0;
+
+static void check(bool condition, const char* testName, uint64_t seed, const char* message) {
+    if (condition) return;
+
+    printf("FAILED %s (seed %llx): %s\n", testName, (unsigned long long) seed, message);
+    failureCount++;
+}
+
+/** Create a RGBA condition with a pattern whose values leave room for the brightness offset of the look-alikes. */
+static cv::Mat createCondition(uint64_t seed) {
+    cv::RNG rng(seed);
+    cv::Mat condition(CONDITION_SIZE, CONDITION_SIZE, CV_8UC4, cv::Scalar(100, 100, 100, 255));
+
+    for (int i = 0; i < 12; i++) {
+        cv::Scalar color(rng.uniform(20, 160), rng.uniform(20, 160), rng.uniform(20, 160), 255);
+        cv::Point position(rng.uniform(0, CONDITION_SIZE), rng.uniform(0, CONDITION_SIZE));
+        int size = rng.uniform(8, CONDITION_SIZE / 2);
+        if (i % 2 == 0) {
+            cv::rectangle(condition, cv::Rect(position.x, position.y, size, size / 2 + 4), color, cv::FILLED);
+        } else {
+            cv::circle(condition, position, size / 2, color, cv::FILLED);
+        }
+    }
+
+    return condition;
+}
+
+/** @return the position of the copy at the given index, on a grid leaving the screen content around each copy. */
+static cv::Point getCopyPosition(int index, uint64_t seed) {
+    int columns = SCREEN_WIDTH / (CONDITION_SIZE * 2);
+    int offset = (int) (seed % 3) * POSITION_STEP;
+    return {
+        offset + (index % columns) * CONDITION_SIZE * 2,
+        offset + POSITION_STEP * 4 + (index / columns) * CONDITION_SIZE * 2,
+    };
+}
+
+static void paste(cv::Mat& screen, const cv::Mat& image, const cv::Point& position) {
+    image.copyTo(screen(cv::Rect(position, image.size())));
+}
+
+/** Paste the look-alikes of the condition on the screen, and the noisy condition itself if requested. */
+static cv::Mat createScreen(const cv::Mat& condition, uint64_t seed, int lookAlikeCount, bool withCondition) {
+    cv::Mat screen = createSyntheticScreen(SCREEN_WIDTH, SCREEN_HEIGHT, seed);
+
+    cv::Mat lookAlike;
+    cv::add(condition, cv::Scalar(LOOK_ALIKE_BRIGHTNESS_OFFSET, LOOK_ALIKE_BRIGHTNESS_OFFSET, LOOK_ALIKE_BRIGHTNESS_OFFSET, 0), lookAlike);
+    for (int i = 0; i < lookAlikeCount; i++) paste(screen, lookAlike, getCopyPosition(i, seed));
+
+    if (withCondition) {
+        cv::RNG rng(seed);
+        cv::Mat noise(condition.size(), CV_16SC4);
+        rng.fill(noise, cv::RNG::UNIFORM, -CONDITION_NOISE_AMPLITUDE, CONDITION_NOISE_AMPLITUDE + 1);
+
+        // Keep the condition opaque.
+        std::vector<cv::Mat> noiseChannels;
+        cv::split(noise, noiseChannels);
+        noiseChannels[3].setTo(0);
+        cv::merge(noiseChannels, noise);
+
+        cv::Mat noisyCondition;
+        cv::add(condition, noise, noisyCondition, cv::noArray(), CV_8UC4);
+        paste(screen, noisyCondition, getCopyPosition(lookAlikeCount, seed));
+    }
+
+    return screen;
+}
+
+/**
+ * Detect the condition on the whole screen, searched coarse to fine, and in an area covering the whole screen, which
+ * is always a full search, and check that both give the same result.
+ *
+ * @return the result of the full search.
+ */
+static DetectionResult detectAndCompare(const char* testName, uint64_t seed, const cv::Mat& screen, const cv::Mat& condition) {
+    HostJniEnv env;
+    Detector detector;
+    detector.setScreenMetrics(screen.cols, screen.rows, DETECTION_QUALITY);
+
+    HostDirectBuffer screenBuffer { screen.data, (jlong) (screen.total() * screen.elemSize()) };
+    detector.setScreenImage(env.get(), screenBuffer.asJObject(), screen.cols, screen.rows, (int) screen.step);
+    env.checkException();
+
+    HostBitmap conditionBitmap { condition.clone() };
+    DetectionResult pyramidResult = detector.detectCondition(env.get(), conditionBitmap.asJObject(), CONDITION_THRESHOLD);
+    env.checkException();
+    DetectionResult fullResult = detector.detectCondition(
+            env.get(), conditionBitmap.asJObject(), 0, 0, screen.cols, screen.rows, CONDITION_THRESHOLD);
+    env.checkException();
+
+    check(pyramidResult.isDetected == fullResult.isDetected, testName, seed, "detected states are different");
+    if (pyramidResult.isDetected && fullResult.isDetected) {
+        check(pyramidResult.centerX == fullResult.centerX && pyramidResult.centerY == fullResult.centerY,
+              testName, seed, "detected positions are different");
+    }
+
+    return fullResult;
+}
+
+static void detect_conditionOnly() {
+    for (uint64_t seed : SEEDS) {
+        cv::Mat condition = createCondition(seed);
+        DetectionResult result = detectAndCompare(__func__, seed, createScreen(condition, seed, 0, true), condition);
+        check(result.isDetected, __func__, seed, "condition is not detected");
+    }
+}
+
+static void detect_lookAlikesOnly() {
+    for (uint64_t seed : SEEDS) {
+        cv::Mat condition = createCondition(seed);
+        DetectionResult result = detectAndCompare(__func__, seed, createScreen(condition, seed, LOOK_ALIKE_COUNT, false), condition);
+        check(!result.isDetected, __func__, seed, "a look-alike is detected");
+    }
+}
+
+static void detect_conditionRankedAfterLookAlikes() {
+    for (uint64_t seed : SEEDS) {
+        cv::Mat condition = createCondition(seed);
+        DetectionResult result = detectAndCompare(__func__, seed, createScreen(condition, seed, LOOK_ALIKE_COUNT, true), condition);
+        check(result.isDetected, __func__, seed, "condition is not detected");
+    }
+}
+
+/**
+ * Host tests of the coarse to fine search of the whole screen conditions, against the full search.
+ *
+ * Usage, from this directory, once built as described in CMakeLists.txt:
+ *   ./build/coarse_to_fine_tests
+ */
+int main() {
+    detect_conditionOnly();
+    detect_lookAlikesOnly();
+    detect_conditionRankedAfterLookAlikes();
+
+    if (failureCount == 0) printf("All tests passed\n");
+    return failureCount == 0 ? 0 : 1;
+}
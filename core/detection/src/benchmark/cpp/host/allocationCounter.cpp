@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <atomic>
+#include <cerrno>
+#include <cstddef>
+
+#include "allocationCounter.hpp"
+
+// The heap allocations are counted by interposing the C allocation functions, which are also used by the C++
+// operator new and by OpenCV. This relies on the glibc internal allocation functions.
+
+static std::atomic<unsigned long> allocationCount(0);
+
+#if defined(__GLIBC__)
+
+extern "C" {
+    void* __libc_malloc(size_t size);
+    void* __libc_calloc(size_t count, size_t size);
+    void* __libc_realloc(void* pointer, size_t size);
+    void* __libc_memalign(size_t alignment, size_t size);
+
+    void* malloc(size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        return __libc_malloc(size);
+    }
+
+    void* calloc(size_t count, size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        return __libc_calloc(count, size);
+    }
+
+    void* realloc(void* pointer, size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        return __libc_realloc(pointer, size);
+    }
+
+    void* memalign(size_t alignment, size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        return __libc_memalign(alignment, size);
+    }
+
+    void* aligned_alloc(size_t alignment, size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        return __libc_memalign(alignment, size);
+    }
+
+    int posix_memalign(void** pointer, size_t alignment, size_t size) {
+        allocationCount.fetch_add(1, std::memory_order_relaxed);
+        void* allocated = __libc_memalign(alignment, size);
+        if (!allocated) return ENOMEM;
+
+        *pointer = allocated;
+        return 0;
+    }
+}
+
+bool smartautoclicker::benchmark::isAllocationCountSupported() {
+    return true;
+}
+
+#else
+
+bool smartautoclicker::benchmark::isAllocationCountSupported() {
+    return false;
+}
+
+#endif
+
+unsigned long smartautoclicker::benchmark::getAllocationCount() {
+    return allocationCount.load(std::memory_order_relaxed);
+}
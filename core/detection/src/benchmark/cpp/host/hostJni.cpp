@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <cstdarg>
+#include <cstdio>
+#include <stdexcept>
+
+#include <android/bitmap.h>
+#include <android/log.h>
+
+#include "hostJni.hpp"
+
+using namespace smartautoclicker::benchmark;
+
+HostJniEnv::HostJniEnv() {
+    functions.FindClass = &HostJniEnv::findClass;
+    functions.ThrowNew = &HostJniEnv::throwNew;
+    functions.ExceptionCheck = &HostJniEnv::exceptionCheck;
+    functions.GetDirectBufferAddress = &HostJniEnv::getDirectBufferAddress;
+    functions.GetDirectBufferCapacity = &HostJniEnv::getDirectBufferCapacity;
+    env.functions = &functions;
+}
+
+void HostJniEnv::checkException() {
+    if (!hasPendingException) return;
+
+    hasPendingException = false;
+    throw std::runtime_error(pendingExceptionMessage);
+}
+
+HostJniEnv* HostJniEnv::fromJniEnv(JNIEnv* env) {
+    return reinterpret_cast<HostJniEnv*>(env);
+}
+
+jclass JNICALL HostJniEnv::findClass(JNIEnv* env, const char* name) {
+    // The class is only used to throw exceptions, its name is enough.
+    return reinterpret_cast<jclass>(const_cast<char*>(name));
+}
+
+jint JNICALL HostJniEnv::throwNew(JNIEnv* env, jclass clazz, const char* message) {
+    HostJniEnv* hostEnv = fromJniEnv(env);
+    hostEnv->hasPendingException = true;
+    hostEnv->pendingExceptionMessage = std::string(reinterpret_cast<const char*>(clazz)) + ": " + message;
+    return JNI_OK;
+}
+
+jboolean JNICALL HostJniEnv::exceptionCheck(JNIEnv* env) {
+    return fromJniEnv(env)->hasPendingException ? JNI_TRUE : JNI_FALSE;
+}
+
+void* JNICALL HostJniEnv::getDirectBufferAddress(JNIEnv* env, jobject buffer) {
+    return reinterpret_cast<HostDirectBuffer*>(buffer)->address;
+}
+
+jlong JNICALL HostJniEnv::getDirectBufferCapacity(JNIEnv* env, jobject buffer) {
+    return reinterpret_cast<HostDirectBuffer*>(buffer)->capacity;
+}
+
+int __android_log_print(int prio, const char* tag, const char* fmt, ...) {
+    if (prio < ANDROID_LOG_WARN) return 0;
+
+    va_list args;
+    va_start(args, fmt);
+    fprintf(stderr, "%s: ", tag);
+    int written = vfprintf(stderr, fmt, args);
+    fprintf(stderr, "\n");
+    va_end(args);
+
+    return written;
+}
+
+int AndroidBitmap_getInfo(JNIEnv* env, jobject jbitmap, AndroidBitmapInfo* info) {
+    auto bitmap = reinterpret_cast<HostBitmap*>(jbitmap);
+    if (!bitmap || bitmap->pixels.type() != CV_8UC4) return ANDROID_BITMAP_RESULT_BAD_PARAMETER;
+
+    info->width = bitmap->pixels.cols;
+    info->height = bitmap->pixels.rows;
+    info->stride = (uint32_t) bitmap->pixels.step;
+    info->format = ANDROID_BITMAP_FORMAT_RGBA_8888;
+    info->flags = 0;
+    return ANDROID_BITMAP_RESULT_SUCCESS;
+}
+
+int AndroidBitmap_lockPixels(JNIEnv* env, jobject jbitmap, void** addrPtr) {
+    auto bitmap = reinterpret_cast<HostBitmap*>(jbitmap);
+    if (!bitmap || !bitmap->pixels.isContinuous()) return ANDROID_BITMAP_RESULT_BAD_PARAMETER;
+
+    *addrPtr = bitmap->pixels.data;
+    return ANDROID_BITMAP_RESULT_SUCCESS;
+}
+
+int AndroidBitmap_unlockPixels(JNIEnv* env, jobject jbitmap) {
+    return ANDROID_BITMAP_RESULT_SUCCESS;
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <string>
+
+#include <jni.h>
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker::benchmark {
+
+    /** A RGBA_8888 image, used in place of an Android Bitmap object. */
+    struct HostBitmap {
+        cv::Mat pixels;
+
+        jobject asJObject() { return reinterpret_cast<jobject>(this); }
+    };
+
+    /** A memory area, used in place of a java.nio direct ByteBuffer object. */
+    struct HostDirectBuffer {
+        void* address;
+        jlong capacity;
+
+        jobject asJObject() { return reinterpret_cast<jobject>(this); }
+    };
+
+    /**
+     * A JNIEnv implementing only the methods used by the detector.
+     * The exceptions thrown by the detector are kept pending until cleared, as in a real JVM.
+     */
+    class HostJniEnv {
+
+    private:
+        // Must be the first member, the JNIEnv pointer given to the detector is also a pointer to this object.
+        JNIEnv env {};
+        JNINativeInterface_ functions {};
+
+        bool hasPendingException = false;
+        std::string pendingExceptionMessage;
+
+        static HostJniEnv* fromJniEnv(JNIEnv* env);
+
+        static jclass JNICALL findClass(JNIEnv* env, const char* name);
+        static jint JNICALL throwNew(JNIEnv* env, jclass clazz, const char* message);
+        static jboolean JNICALL exceptionCheck(JNIEnv* env);
+        static void* JNICALL getDirectBufferAddress(JNIEnv* env, jobject buffer);
+        static jlong JNICALL getDirectBufferCapacity(JNIEnv* env, jobject buffer);
+
+    public:
+        HostJniEnv();
+
+        HostJniEnv(const HostJniEnv&) = delete;
+        HostJniEnv& operator=(const HostJniEnv&) = delete;
+
+        JNIEnv* get() { return &env; }
+
+        /** Throws a std::runtime_error if the detector have thrown a Java exception, and clears it. */
+        void checkException();
+    };
+}
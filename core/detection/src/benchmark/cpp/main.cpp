@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <thread>
+#include <vector>
+
+#include "detector.hpp"
+#include "host/hostJni.hpp"
+#include "benchmarkRunner.hpp"
+#include "syntheticScreen.hpp"
+
+using namespace smartautoclicker;
+using namespace smartautoclicker::benchmark;
+
+// The detection quality of the benchmarks, the default one of the scenarios.
+static const double DETECTION_QUALITY = 1200;
+// The threshold of the benchmarks conditions.
+static const int CONDITION_THRESHOLD = 10;
+// The size range of the benchmarks conditions, in screen pixels.
+static const int CONDITION_MIN_SIZE = 48;
+static const int CONDITION_MAX_SIZE = 160;
+// The margin around a condition for its detection area, in screen pixels.
+static const int CONDITION_AREA_MARGIN = 24;
+// One out of this count of the conditions of a processing is detected on the whole screen.
+static const int WHOLE_SCREEN_CONDITION_INTERVAL = 4;
+// The maximum number of detection workers.
+static const int MAX_WORKER_COUNT = 8;
+
+// The seeds of the synthetic data, fixed to get the same data on each run.
+static const uint64_t SCREEN_SEED = 0x5AC;
+static const uint64_t NOISY_SCREEN_SEED = 0x5AD;
+static const uint64_t CONDITIONS_SEED = 0x5AE;
+
+static const int DEFAULT_ITERATIONS = 100;
+
+struct Resolution {
+    const char* name;
+    int width;
+    int height;
+};
+
+static const Resolution RESOLUTIONS[] = {
+    { "720p", 720, 1280 },
+    { "1080p", 1080, 1920 },
+    { "1440p", 1440, 2560 },
+};
+
+static const int PROCESSING_CONDITION_COUNTS[] = { 1, 4, 16, 64 };
+
+/** The arrays of a detection batch, as they would be provided by the DetectionBatch Kotlin class. */
+class HostDetectionBatch {
+
+private:
+    std::vector<jint> conditionsParams;
+    std::vector<jint> groupsParams;
+    std::vector<jint> conditionsResults;
+    std::vector<jdouble> conditionsConfidences;
+    std::vector<jdouble> conditionsScales;
+    std::vector<jint> groupsResults;
+
+public:
+    void startGroup(bool requireAll) {
+        groupsParams.push_back((jint) (conditionsParams.size() / CONDITION_PARAMS_SIZE));
+        groupsParams.push_back(0);
+        groupsParams.push_back(requireAll ? GROUP_FLAG_REQUIRE_ALL : 0);
+        groupsResults.push_back(GROUP_STATE_NOT_EVALUATED);
+    }
+
+    void addCondition(int handle, const cv::Rect& area, bool isWholeScreen, bool shouldBeDetected) {
+        conditionsParams.insert(conditionsParams.end(), {
+            area.x,
+            area.y,
+            area.width,
+            area.height,
+            CONDITION_THRESHOLD,
+            (isWholeScreen ? CONDITION_FLAG_WHOLE_SCREEN : 0) | (shouldBeDetected ? CONDITION_FLAG_SHOULD_BE_DETECTED : 0),
+            handle,
+            (jint) conditionsConfidences.size(),
+        });
+        conditionsResults.insert(conditionsResults.end(), CONDITION_RESULTS_SIZE, 0);
+        conditionsConfidences.push_back(0);
+        conditionsScales.push_back(1);
+        groupsParams[groupsParams.size() - GROUP_PARAMS_SIZE + GROUP_PARAM_CONDITION_COUNT]++;
+    }
+
+    DetectionBatch get() {
+        return {
+            conditionsParams.data(),
+            (int) conditionsConfidences.size(),
+            groupsParams.data(),
+            (int) groupsResults.size(),
+            conditionsResults.data(),
+            conditionsConfidences.data(),
+            conditionsScales.data(),
+            groupsResults.data(),
+        };
+    }
+};
+
+/**
+ * A screen and a noisy copy of it, as the content of a direct buffer.
+ * When alternated, the frames have the same content for the detection, but none of the previous results can be reused.
+ */
+class ScreenFrames {
+
+private:
+    cv::Mat screens[2];
+    HostDirectBuffer buffers[2] {};
+    int nextFrame = 0;
+
+public:
+    ScreenFrames(int width, int height) {
+        screens[0] = createSyntheticScreen(width, height, SCREEN_SEED);
+        screens[1] = createNoisyScreen(screens[0], NOISY_SCREEN_SEED);
+        for (int i = 0; i < 2; i++) {
+            buffers[i] = { screens[i].data, (jlong) (screens[i].total() * screens[i].elemSize()) };
+        }
+    }
+
+    const cv::Mat& getScreen() const { return screens[0]; }
+
+    void setScreenImage(Detector& detector, HostJniEnv& env, bool alternate) {
+        const cv::Mat& screen = screens[nextFrame];
+        detector.setScreenImage(env.get(), buffers[nextFrame].asJObject(), screen.cols, screen.rows, (int) screen.step);
+        env.checkException();
+
+        if (alternate) nextFrame = (nextFrame + 1) % 2;
+    }
+};
+
+/** Register conditions cropped from the screen, at random positions, and return their areas. */
+static std::vector<std::pair<int, cv::Rect>> registerConditions(Detector& detector, HostJniEnv& env, const cv::Mat& screen, int count) {
+    detector.clearConditions();
+
+    cv::RNG rng(CONDITIONS_SEED);
+    std::vector<std::pair<int, cv::Rect>> conditions;
+    for (int i = 0; i < count; i++) {
+        int width = rng.uniform(CONDITION_MIN_SIZE, CONDITION_MAX_SIZE + 1);
+        int height = rng.uniform(CONDITION_MIN_SIZE, CONDITION_MAX_SIZE + 1);
+        cv::Rect area(rng.uniform(0, screen.cols - width), rng.uniform(0, screen.rows - height), width, height);
+
+        HostBitmap conditionBitmap { screen(area).clone() };
+        int handle = detector.registerCondition(env.get(), conditionBitmap.asJObject());
+        env.checkException();
+
+        conditions.emplace_back(handle, area);
+    }
+
+    return conditions;
+}
+
+static cv::Rect getDetectionArea(const cv::Rect& conditionArea, const cv::Mat& screen) {
+    cv::Rect detectionArea(
+        conditionArea.x - CONDITION_AREA_MARGIN,
+        conditionArea.y - CONDITION_AREA_MARGIN,
+        conditionArea.width + CONDITION_AREA_MARGIN * 2,
+        conditionArea.height + CONDITION_AREA_MARGIN * 2);
+    return detectionArea & cv::Rect(0, 0, screen.cols, screen.rows);
+}
+
+static void runSingleConditionBenchmark(BenchmarkRunner& runner, Detector& detector, HostJniEnv& env, ScreenFrames& frames,
+                                        const std::string& suffix, bool isWholeScreen) {
+
+    auto conditions = registerConditions(detector, env, frames.getScreen(), 1);
+
+    HostDetectionBatch batch;
+    batch.startGroup(true);
+    batch.addCondition(conditions[0].first, getDetectionArea(conditions[0].second, frames.getScreen()), isWholeScreen, true);
+    DetectionBatch detectionBatch = batch.get();
+
+    runner.run(
+        std::string("detectCondition/") + (isWholeScreen ? "WHOLE_SCREEN/" : "EXACT/") + suffix,
+        [&] { frames.setScreenImage(detector, env, true); },
+        [&] {
+            detector.detectConditions(env.get(), detectionBatch);
+            env.checkException();
+        });
+}
+
+static void runProcessingBenchmark(BenchmarkRunner& runner, Detector& detector, HostJniEnv& env, ScreenFrames& frames,
+                                   const std::string& suffix, int conditionCount, int workerCount, bool isStaticScreen) {
+
+    auto conditions = registerConditions(detector, env, frames.getScreen(), conditionCount);
+    detector.setDetectionWorkerCount(workerCount);
+
+    // One event per condition, none of them fulfilled: all conditions are detected, as the worst processing case.
+    HostDetectionBatch batch;
+    for (int i = 0; i < conditionCount; i++) {
+        batch.startGroup(false);
+        batch.addCondition(
+            conditions[i].first,
+            getDetectionArea(conditions[i].second, frames.getScreen()),
+            i % WHOLE_SCREEN_CONDITION_INTERVAL == WHOLE_SCREEN_CONDITION_INTERVAL - 1,
+            false);
+    }
+    DetectionBatch detectionBatch = batch.get();
+
+    runner.run(
+        "process/" + std::to_string(conditionCount) + " conditions/" + std::to_string(workerCount) + " workers/"
+            + (isStaticScreen ? "static/" : "") + suffix,
+        nullptr,
+        [&] {
+            frames.setScreenImage(detector, env, !isStaticScreen);
+            detector.detectConditions(env.get(), detectionBatch);
+            env.checkException();
+        });
+
+    detector.setDetectionWorkerCount(1);
+}
+
+int main(int argc, char** argv) {
+    int iterations = DEFAULT_ITERATIONS;
+    std::string filter;
+    for (int i = 1; i < argc; i++) {
+        if (strcmp(argv[i], "--iterations") == 0 && i + 1 < argc) {
+            iterations = std::max(1, atoi(argv[++i]));
+        } else if (strcmp(argv[i], "--filter") == 0 && i + 1 < argc) {
+            filter = argv[++i];
+        } else {
+            fprintf(stderr, "Usage: %s [--iterations <count>] [--filter <benchmark name part>]\n", argv[0]);
+            return EXIT_FAILURE;
+        }
+    }
+
+    int maxWorkerCount = std::clamp((int) std::thread::hardware_concurrency(), 1, MAX_WORKER_COUNT);
+    std::vector<int> workerCounts = { 1 };
+    if (maxWorkerCount > 1) workerCounts.push_back(maxWorkerCount);
+
+    BenchmarkRunner runner(iterations, filter);
+    runner.printHeader();
+
+    for (const Resolution& resolution : RESOLUTIONS) {
+        HostJniEnv env;
+        Detector detector;
+        ScreenFrames frames(resolution.width, resolution.height);
+        detector.setScreenMetrics(resolution.width, resolution.height, DETECTION_QUALITY);
+
+        runner.run(
+            std::string("setScreenImage/") + resolution.name,
+            nullptr,
+            [&] { frames.setScreenImage(detector, env, true); });
+
+        runSingleConditionBenchmark(runner, detector, env, frames, resolution.name, false);
+        runSingleConditionBenchmark(runner, detector, env, frames, resolution.name, true);
+
+        for (int conditionCount : PROCESSING_CONDITION_COUNTS) {
+            for (int workerCount : workerCounts) {
+                runProcessingBenchmark(runner, detector, env, frames, resolution.name, conditionCount, workerCount, false);
+            }
+        }
+        runProcessingBenchmark(runner, detector, env, frames, resolution.name, 16, 1, true);
+    }
+
+    return EXIT_SUCCESS;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <opencv2/imgproc.hpp>
+
+#include "syntheticScreen.hpp"
+
+using namespace cv;
+
+// The number of shapes drawn on a 1080p screen, scaled with the screen area.
+static const int SHAPE_COUNT_1080P = 300;
+// The number of texts drawn on a 1080p screen, scaled with the screen area.
+static const int TEXT_COUNT_1080P = 60;
+// The maximum difference between a pixel of a noisy screen and the original one.
+static const int NOISE_AMPLITUDE = 2;
+
+static Scalar randomColor(RNG& rng) {
+    return { (double) rng.uniform(0, 256), (double) rng.uniform(0, 256), (double) rng.uniform(0, 256), 255 };
+}
+
+cv::Mat smartautoclicker::benchmark::createSyntheticScreen(int width, int height, uint64_t seed) {
+    RNG rng(seed);
+    Mat screen(height, width, CV_8UC4);
+
+    // Vertical gradient background.
+    Scalar topColor = randomColor(rng), bottomColor = randomColor(rng);
+    for (int y = 0; y < height; y++) {
+        double ratio = (double) y / height;
+        screen.row(y).setTo(topColor * (1 - ratio) + bottomColor * ratio);
+    }
+
+    double areaRatio = (double) width * height / (1920 * 1080);
+    int shapeCount = (int) (SHAPE_COUNT_1080P * areaRatio);
+    for (int i = 0; i < shapeCount; i++) {
+        Point center(rng.uniform(0, width), rng.uniform(0, height));
+        int size = rng.uniform(8, width / 6);
+        if (rng.uniform(0, 2) == 0) {
+            rectangle(screen, Rect(center.x, center.y, size, rng.uniform(8, size + 1)), randomColor(rng), FILLED);
+        } else {
+            circle(screen, center, size / 2, randomColor(rng), FILLED, LINE_AA);
+        }
+    }
+
+    int textCount = (int) (TEXT_COUNT_1080P * areaRatio);
+    for (int i = 0; i < textCount; i++) {
+        Point origin(rng.uniform(0, width), rng.uniform(0, height));
+        putText(screen, "Smart AutoClicker " + std::to_string(i), origin, FONT_HERSHEY_SIMPLEX,
+                rng.uniform(0.5, 2.0), randomColor(rng), 2, LINE_AA);
+    }
+
+    return screen;
+}
+
+cv::Mat smartautoclicker::benchmark::createNoisyScreen(const cv::Mat& screen, uint64_t seed) {
+    RNG rng(seed);
+    Mat noise(screen.size(), CV_16SC4);
+    rng.fill(noise, RNG::UNIFORM, -NOISE_AMPLITUDE, NOISE_AMPLITUDE + 1);
+
+    Mat noisyScreen;
+    add(screen, noise, noisyScreen, noArray(), CV_8UC4);
+    // Keep the screen opaque.
+    std::vector<Mat> channels;
+    split(noisyScreen, channels);
+    channels[3].setTo(255);
+    merge(channels, noisyScreen);
+
+    return noisyScreen;
+}
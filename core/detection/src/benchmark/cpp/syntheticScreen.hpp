@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker::benchmark {
+
+    /**
+     * Create a RGBA screen image with a content looking like an user interface: a gradient background covered by
+     * plain shapes and texts. The same seed always gives the same image.
+     */
+    cv::Mat createSyntheticScreen(int width, int height, uint64_t seed);
+
+    /**
+     * Create a copy of a screen image with a slight noise on all pixels.
+     * It looks the same for the detection, but all parts of the screen are different from the original one.
+     */
+    cv::Mat createNoisyScreen(const cv::Mat& screen, uint64_t seed);
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <atomic>
+#include <chrono>
+#include <cstdio>
+#include <thread>
+
+#include "threading/workerPool.hpp"
+
+using namespace smartautoclicker;
+
+// The number of tasks of the tests jobs, more than the number of workers.
+static const int TASK_COUNT = 32;
+// The number of times each test is repeated, as the failures depend on the threads scheduling.
+static const int REPETITIONS = 1000;
+
+static int failureCount = 0;
+
+static void check(bool condition, const char* testName, const char* message) {
+    if (condition) return;
+
+    printf("FAILED %s: %s\n", testName, message);
+    failureCount++;
+}
+
+/** Run a job where each task takes a bit of time, and check that all tasks are completed when run returns. */
+static bool runAndCheckCompletion(WorkerPool& pool) {
+    std::atomic<int> completedTasks { 0 };
+    pool.run(TASK_COUNT, [&completedTasks] (int) {
+        std::this_thread::sleep_for(std::chrono::microseconds(50));
+        completedTasks++;
+    });
+
+    return completedTasks == TASK_COUNT;
+}
+
+static void run_allTasksCompleted() {
+    WorkerPool pool;
+    pool.setWorkerCount(4);
+
+    for (int i = 0; i < REPETITIONS; i++) {
+        check(runAndCheckCompletion(pool), __func__, "run returned before the completion of its tasks");
+    }
+}
+
+static void setWorkerCount_afterRun_noPhantomJob() {
+    for (int i = 0; i < REPETITIONS; i++) {
+        WorkerPool pool;
+        pool.setWorkerCount(2);
+        check(runAndCheckCompletion(pool), __func__, "first job is incomplete");
+
+        // The new workers must not consider the previous job as a new one.
+        pool.setWorkerCount(4 + i % 2);
+        check(runAndCheckCompletion(pool), __func__, "job after resize is incomplete");
+        check(runAndCheckCompletion(pool), __func__, "second job after resize is incomplete");
+    }
+}
+
+static void setWorkerCount_single_runsOnCallingThread() {
+    WorkerPool pool;
+    pool.setWorkerCount(4);
+    check(runAndCheckCompletion(pool), __func__, "job with workers is incomplete");
+
+    pool.setWorkerCount(1);
+    check(pool.getWorkerCount() == 1, __func__, "worker count is not updated");
+
+    std::thread::id callingThread = std::this_thread::get_id();
+    bool isOnCallingThread = true;
+    pool.run(TASK_COUNT, [&isOnCallingThread, callingThread] (int) {
+        if (std::this_thread::get_id() != callingThread) isOnCallingThread = false;
+    });
+    check(isOnCallingThread, __func__, "tasks executed by another thread");
+}
+
+/**
+ * Host tests of the WorkerPool.
+ *
+ * Usage, from this directory, once built as described in CMakeLists.txt:
+ *   ./build/worker_pool_tests
+ */
+int main() {
+    run_allTasksCompleted();
+    setWorkerCount_afterRun_noPhantomJob();
+    setWorkerCount_single_runsOnCallingThread();
+
+    if (failureCount == 0) printf("All tests passed\n");
+    return failureCount == 0 ? 0 : 1;
+}
@@ -16,6 +16,9 @@
  */
 #include <android/log.h>
 #include <android/bitmap.h>
+#include <algorithm>
+#include <chrono>
+#include <cmath>
 #include <memory>
 #include <opencv2/imgproc/imgproc_c.h>
 
@@ -25,32 +28,134 @@
 using namespace cv;
 using namespace smartautoclicker;
 
+// The number of halvings of the scaled images for the coarse to fine detection.
+static const int PYRAMID_MAX_LEVEL = 2;
+// The minimum size of a condition at the coarse level. Below that, the correlation isn't discriminant enough.
+static const int PYRAMID_MIN_CONDITION_SIZE = 12;
+// The maximum number of candidates found at the coarse level that are refined at the detection scale.
+static const int PYRAMID_CANDIDATE_COUNT = 5;
+// The matching value tolerance at the coarse level, as the halvings blur the details of the images.
+static const double PYRAMID_COARSE_TOLERANCE = 0.15;
+// The maximum threshold of the conditions matched with the BoundedTemplateMatcher. Above, too few windows are dropped
+// early for it to be faster than cv::matchTemplate.
+static const int BOUNDED_MATCHING_MAX_THRESHOLD = 10;
+// The maximum number of candidates listed for each requested match when detecting all matches of a condition.
+static const int ALL_MATCHES_CANDIDATES_PER_MATCH = 4;
+// The maximum number of pixels read to compute the color signature of a condition, or of its area on the screen.
+static const int COLOR_PREFILTER_SAMPLE_COUNT = 256;
+// The color difference tolerance of the prefilter, in percent, as the signatures are computed on a part of the pixels.
+static const double COLOR_PREFILTER_TOLERANCE = 5;
+// The margin around the predicted position of a tracked condition, in condition sizes, where it is searched first.
+static const int TRACKING_WINDOW_MARGIN = 1;
+// Value of the batch shared detections when none of the identical conditions have been detected yet.
+static const int NO_SHARED_DETECTION = -1;
+
 void Detector::setScreenMetrics(JNIEnv *env, jobject screenImage, double detectionQuality) {
     // Initial the current image mat. When the size of the image change (e.g. rotation), this method should be called
     // to update it.
     fullSizeColorCurrentImage = createColorMatFromARGB8888BitmapData(env, screenImage);
+    if (!fullSizeColorCurrentImage) return;
+
+    setScreenMetrics(fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows, detectionQuality);
+}
 
+void Detector::setScreenMetrics(int screenWidth, int screenHeight, double detectionQuality) {
     // Select the scale ratio depending on the screen size.
     // We reduce the size to improve the processing time, but we don't want it to be too small because it will impact
     // the performance of the detection.
-    auto maxImageDim = max(fullSizeColorCurrentImage->rows, fullSizeColorCurrentImage->cols);
+    auto maxImageDim = max(screenWidth, screenHeight);
+    double newScaleRatio;
     if (maxImageDim <= detectionQuality) {
-        scaleRatio = 1;
+        newScaleRatio = 1;
     } else {
-        scaleRatio = detectionQuality / maxImageDim;
+        newScaleRatio = detectionQuality / maxImageDim;
+    }
+
+    // The registered conditions are scaled with the screen, update them if needed.
+    if (newScaleRatio == scaleRatio) return;
+    scaleRatio = newScaleRatio;
+    scaledGrayCurrentImageDiff.invalidate();
+    for (auto& conditionTemplate : conditionTemplates) {
+        updateConditionScaledGray(*conditionTemplate);
     }
 }
 
+int Detector::registerCondition(JNIEnv *env, jobject conditionImage) {
+    auto conditionTemplate = createConditionTemplate(env, conditionImage, true);
+    if (!conditionTemplate) return -1;
+
+    conditionTemplates.push_back(std::move(conditionTemplate));
+    return (int) conditionTemplates.size() - 1;
+}
+
+void Detector::clearConditions() {
+    conditionTemplates.clear();
+    batchDetectionsCache.clear();
+}
+
+std::unique_ptr<ConditionTemplate> Detector::createConditionTemplate(JNIEnv *env, jobject conditionImage, bool copyPixels) const {
+    auto fullSizeColorCondition = createColorMatFromARGB8888BitmapData(env, conditionImage);
+    if (!fullSizeColorCondition) return nullptr;
+
+    auto conditionTemplate = std::make_unique<ConditionTemplate>();
+    // Registered conditions are kept after the bitmap is released, they must have their own pixels.
+    conditionTemplate->fullSizeColor = copyPixels ? fullSizeColorCondition->clone() : *fullSizeColorCondition;
+    updateConditionScaledGray(*conditionTemplate);
+    conditionTemplate->colorMeans = getColorMeans(conditionTemplate->fullSizeColor);
+    conditionTemplate->colorSignature = getColorSignature(conditionTemplate->fullSizeColor);
+
+    return conditionTemplate;
+}
+
 void Detector::setScreenImage(JNIEnv *env, jobject screenImage) {
     // Get screen info from the android bitmap format
     fullSizeColorCurrentImage = createColorMatFromARGB8888BitmapData(env, screenImage);
+    if (!fullSizeColorCurrentImage) return;
 
-    // Convert to gray for template matching
-    cv::Mat fullSizeGrayCurrentImage(fullSizeColorCurrentImage->rows, fullSizeColorCurrentImage->cols, CV_8UC1);
-    cv::cvtColor(*fullSizeColorCurrentImage, fullSizeGrayCurrentImage, cv::COLOR_RGBA2GRAY);
+    updateScaledGrayCurrentImage();
+}
 
-    // Scale down the image and store it apart (the cache image is not resized)
-    resize(fullSizeGrayCurrentImage, *scaledGrayCurrentImage, Size(), scaleRatio, scaleRatio, INTER_AREA);
+void Detector::setScreenImage(JNIEnv *env, jobject screenBuffer, int width, int height, int rowStride) {
+    // Wrap the pixels of the image, without any copy. They are only valid until the image is closed.
+    void* pixels = env->GetDirectBufferAddress(screenBuffer);
+    jlong capacity = env->GetDirectBufferCapacity(screenBuffer);
+    if (!pixels || rowStride < width * 4 || capacity < (jlong) rowStride * (height - 1) + width * 4) {
+        __android_log_print(ANDROID_LOG_ERROR, "Detector",
+                            "setScreenImage invalid buffer, %1d/%2d with stride %3d",
+                            width, height, rowStride);
+        jclass je = env->FindClass("java/lang/IllegalArgumentException");
+        env->ThrowNew(je, "Can't set screen image, buffer is invalid !");
+        return;
+    }
+
+    fullSizeColorCurrentImage = std::make_unique<cv::Mat>(height, width, CV_8UC4, pixels, (size_t) rowStride);
+    updateScaledGrayCurrentImage();
+}
+
+void Detector::updateScaledGrayCurrentImage() {
+    // Convert to gray and scale down for template matching, in a single pass (the cache image is not resized)
+    scaledGrayConverter.convert(*fullSizeColorCurrentImage, scaleRatio, *scaledGrayCurrentImage);
+    // Halve it for the coarse to fine detection of the whole screen conditions
+    buildPyramid(*scaledGrayCurrentImage, scaledGrayCurrentImagePyramid, PYRAMID_MAX_LEVEL);
+
+    // Find what have changed since the previous frame, to reuse the batch results in the unchanged areas. The changes
+    // of the frames set without any batch detection, only to get their change ratio, are kept for the next detection.
+    if (isScreenChangeDetected) screenChangeBaseFrameIndex = frameIndex;
+    scaledGrayCurrentImageDiff.update(*scaledGrayCurrentImage, !isScreenChangeDetected);
+    isScreenChangeDetected = false;
+    frameIndex++;
+}
+
+double Detector::getScreenChangeRatio() const {
+    return scaledGrayCurrentImageDiff.getDirtyRatio();
+}
+
+void Detector::updateScaledGrayCurrentImageMatcher() {
+    // The integral images are only computed when a condition with a strict threshold is detected, once per image.
+    if (scaledGrayCurrentImageMatcherFrameIndex == frameIndex) return;
+
+    scaledGrayCurrentImageMatcher.setImage(*scaledGrayCurrentImage);
+    scaledGrayCurrentImageMatcherFrameIndex = frameIndex;
 }
 
 DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, int threshold) {
@@ -58,15 +163,16 @@ DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, i
         env,
         conditionImage,
         cv::Rect(0, 0, fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows),
-        threshold
+        threshold,
+        true
     );
 }
 
 DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, int x, int y, int width, int height, int threshold) {
-    return detectCondition(env, conditionImage, cv::Rect(x, y, width, height), threshold);
+    return detectCondition(env, conditionImage, cv::Rect(x, y, width, height), threshold, false);
 }
 
-DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, cv::Rect fullSizeDetectionRoi, int threshold) {
+DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, cv::Rect fullSizeDetectionRoi, int threshold, bool isWholeScreen) {
     // Reset the results cache
     detectionResult.reset();
 
@@ -79,108 +185,829 @@ DetectionResult Detector::detectCondition(JNIEnv *env, jobject conditionImage, c
         return detectionResult;
     }
 
+    // Get the condition image information from the android bitmap format.
+    auto conditionTemplate = createConditionTemplate(env, conditionImage, false);
+    if (!conditionTemplate) return detectionResult;
+
+    if (threshold <= BOUNDED_MATCHING_MAX_THRESHOLD) updateScaledGrayCurrentImageMatcher();
+    matchCondition(*conditionTemplate, fullSizeDetectionRoi, threshold, isWholeScreen, false, matchingBuffers, detectionResult);
+    return detectionResult;
+}
+
+int Detector::detectAllMatches(JNIEnv *env, int conditionHandle, int threshold, int maxCount, jint* positions,
+                               jdouble* confidences) {
+    return detectAllMatches(
+        env,
+        conditionHandle,
+        cv::Rect(0, 0, fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows),
+        threshold,
+        maxCount,
+        positions,
+        confidences
+    );
+}
+
+int Detector::detectAllMatches(JNIEnv *env, int conditionHandle, int x, int y, int width, int height, int threshold,
+                               int maxCount, jint* positions, jdouble* confidences) {
+    return detectAllMatches(env, conditionHandle, cv::Rect(x, y, width, height), threshold, maxCount, positions, confidences);
+}
+
+int Detector::detectAllMatches(JNIEnv *env, int conditionHandle, cv::Rect fullSizeDetectionRoi, int threshold,
+                               int maxCount, jint* positions, jdouble* confidences) {
+    // setScreenImage haven't been called first
+    if (scaledGrayCurrentImage->empty()) {
+        __android_log_print(ANDROID_LOG_ERROR, "Detector",
+                            "detectAllMatches caught an exception");
+        jclass je = env->FindClass("java/lang/Exception");
+        env->ThrowNew(je, "Can't detect condition matches, scaledGrayCurrentImage is empty !");
+        return 0;
+    }
+
+    if (conditionHandle < 0 || conditionHandle >= (int) conditionTemplates.size()) {
+        __android_log_print(ANDROID_LOG_ERROR, "Detector", "Invalid condition handle %1d", conditionHandle);
+        jclass je = env->FindClass("java/lang/IllegalArgumentException");
+        env->ThrowNew(je, "Can't detect condition matches, handle is not registered !");
+        return 0;
+    }
+
+    const ConditionTemplate& condition = *conditionTemplates[conditionHandle];
+    cv::Rect scaledDetectionRoi;
+    if (maxCount <= 0 || !getScaledDetectionRoi(fullSizeDetectionRoi, scaledDetectionRoi)) return 0;
+    if (scaledDetectionRoi.width < condition.scaledGray.cols || scaledDetectionRoi.height < condition.scaledGray.rows) return 0;
+
+    // All matches are read from the same results, so the coarse to fine and bounded matchings, which stop at the first
+    // valid match, are not used here.
+    matchTemplate(Mat(*scaledGrayCurrentImage, scaledDetectionRoi), condition.scaledGray, matchingBuffers.results);
+    return findValidMatches(condition, matchingBuffers.results, fullSizeDetectionRoi, threshold, maxCount, matchingBuffers,
+                            positions, confidences);
+}
+
+void Detector::matchCondition(const ConditionTemplate& condition, cv::Rect fullSizeDetectionRoi, int threshold, bool isWholeScreen, bool isMultiScale,
+                              MatchingBuffers& buffers, DetectionResult& result) const {
+    // This method can be called from several threads at once, it must only read the detector state. Each thread have
+    // its own buffers.
+    result.reset();
+
     // Get and check the detection area in normal and scaled size
+    cv::Rect scaledDetectionRoi;
+    if (!getScaledDetectionRoi(fullSizeDetectionRoi, scaledDetectionRoi)) return;
+
+    // A condition searched at its exact position that obviously doesn't have the colors of the screen can't be found.
+    if (isColorPrefilterRejected(condition, fullSizeDetectionRoi, threshold, isMultiScale)) return;
+
+    // Large conditions searched on the whole screen are first searched on a halved screen, which is a lot faster.
+    // When this search is not conclusive, the condition is searched at the detection scale as the other ones.
+    int pyramidLevel = isWholeScreen ? getPyramidLevel(condition) : 0;
+    bool isCoarseSearchConclusive = pyramidLevel > 0
+            && matchConditionCoarseToFine(condition, pyramidLevel, fullSizeDetectionRoi, threshold, buffers, result);
+
+    if (!isCoarseSearchConclusive) {
+        result.reset();
+
+        if (isBoundedMatching(condition, threshold)) {
+            // With a strict threshold, most of the windows can be dropped without computing their whole score.
+            findValidBoundedMatch(condition, scaledDetectionRoi, fullSizeDetectionRoi, threshold, buffers, result);
+        } else {
+            // Crop the scaled gray current image to only get the detection area
+            auto croppedGrayCurrentImage = Mat(*scaledGrayCurrentImage, scaledDetectionRoi);
+
+            // Get the matching results
+            matchTemplate(croppedGrayCurrentImage, condition.scaledGray, buffers.results);
+            findValidMatch(condition, condition.scales.front(), buffers.results, cv::Point(0, 0), fullSizeDetectionRoi, threshold, buffers, result);
+        }
+    }
+
+    // Not found at its captured size, the condition can be displayed at another one.
+    if (isMultiScale && !result.isDetected) {
+        matchConditionScales(condition, scaledDetectionRoi, fullSizeDetectionRoi, threshold, buffers, result);
+    }
+}
+
+bool Detector::matchConditionScales(const ConditionTemplate& condition, const cv::Rect& scaledDetectionRoi,
+                                    const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers,
+                                    DetectionResult& result) const {
+
+    // All scales are matched on the same scaled gray image, only the condition is resized.
+    auto croppedGrayCurrentImage = Mat(*scaledGrayCurrentImage, scaledDetectionRoi);
+    double bestValue = result.maxVal;
+    cv::Point bestLocation = result.maxLoc;
+
+    // The scales are sorted from the closest to the farthest of the captured size, the first valid match is kept.
+    for (size_t scaleIndex = 1; scaleIndex < condition.scales.size(); scaleIndex++) {
+        const ConditionScale& conditionScale = condition.scales[scaleIndex];
+        if (conditionScale.scaledGray.cols > croppedGrayCurrentImage.cols || conditionScale.scaledGray.rows > croppedGrayCurrentImage.rows) {
+            continue;
+        }
+
+        matchTemplate(croppedGrayCurrentImage, conditionScale.scaledGray, buffers.results);
+        if (findValidMatch(condition, conditionScale, buffers.results, cv::Point(0, 0), fullSizeDetectionRoi, threshold, buffers, result)) {
+            result.scale = conditionScale.scale;
+            return true;
+        }
+
+        if (result.maxVal > bestValue) {
+            bestValue = result.maxVal;
+            bestLocation = result.maxLoc;
+        }
+    }
+
+    // Report the best matching value of all scales.
+    result.maxVal = bestValue;
+    result.maxLoc = bestLocation;
+    return false;
+}
+
+bool Detector::getScaledDetectionRoi(const cv::Rect& fullSizeDetectionRoi, cv::Rect& scaledDetectionRoi) const {
     if (isRoiOutOfBounds(fullSizeDetectionRoi, *fullSizeColorCurrentImage)) {
         __android_log_print(ANDROID_LOG_ERROR, "Detector",
                             "Full size ROI is invalid, %1d/%2d %3d/%4d in %5d/%6d",
                             fullSizeDetectionRoi.x, fullSizeDetectionRoi.y, fullSizeDetectionRoi.width, fullSizeDetectionRoi.height,
                             fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows);
-        return detectionResult;
+        return false;
     }
-    auto scaledDetectionRoi = getScaledRoi(fullSizeDetectionRoi.x, fullSizeDetectionRoi.y, fullSizeDetectionRoi.width, fullSizeDetectionRoi.height);
+
+    scaledDetectionRoi = getScaledRoi(fullSizeDetectionRoi.x, fullSizeDetectionRoi.y, fullSizeDetectionRoi.width, fullSizeDetectionRoi.height);
     if (isRoiOutOfBounds(scaledDetectionRoi, *scaledGrayCurrentImage)) {
         __android_log_print(ANDROID_LOG_ERROR, "Detector",
                             "Scaled ROI is invalid, %1d/%2d %3d/%4d in %5d/%6d",
                             scaledDetectionRoi.x, scaledDetectionRoi.y, scaledDetectionRoi.width, scaledDetectionRoi.height,
                             scaledGrayCurrentImage->cols, scaledGrayCurrentImage->rows);
-        return detectionResult;
+        return false;
     }
 
-    // Crop the scaled gray current image to only get the detection area
-    auto croppedGrayCurrentImage = Mat(*scaledGrayCurrentImage, scaledDetectionRoi);
+    return true;
+}
 
-    // Get the condition image information from the android bitmap format.
-    auto fullSizeColorCondition = createColorMatFromARGB8888BitmapData(env, conditionImage);
-    auto scaledGrayCondition = scaleAndChangeToGray(*fullSizeColorCondition);
+bool Detector::matchConditionCoarseToFine(const ConditionTemplate& condition, int pyramidLevel, cv::Rect fullSizeDetectionRoi,
+                                          int threshold, MatchingBuffers& buffers, DetectionResult& result) const {
+
+    cv::Mat& coarseMatchingResults = buffers.coarseResults;
+    matchTemplate(scaledGrayCurrentImagePyramid[pyramidLevel], condition.scaledGrayPyramid[pyramidLevel], coarseMatchingResults);
+    double coarseMinimumValue = ((double) (100 - threshold) / 100) - PYRAMID_COARSE_TOLERANCE;
+    int levelScale = 1 << pyramidLevel;
+
+    // Refine the best candidates of the coarse level, from the best to the worst, until one is valid.
+    DetectionResult coarseResult;
+    for (int candidate = 0; candidate < PYRAMID_CANDIDATE_COUNT; candidate++) {
+        locateMinMax(coarseMatchingResults, coarseResult);
+        // No other candidate can be valid, the search is conclusive.
+        if (coarseResult.maxVal <= coarseMinimumValue) {
+            if (result.maxVal == 0) result.maxVal = coarseResult.maxVal;
+            return true;
+        }
+
+        // Do not find this candidate again.
+        markRoiAsInvalidInResults(coarseMatchingResults, cv::Rect(
+                coarseResult.maxLoc.x - condition.scaledGrayPyramid[pyramidLevel].cols / 2,
+                coarseResult.maxLoc.y - condition.scaledGrayPyramid[pyramidLevel].rows / 2,
+                condition.scaledGrayPyramid[pyramidLevel].cols,
+                condition.scaledGrayPyramid[pyramidLevel].rows));
+
+        // At the detection scale, the candidate can be anywhere in the area covered by its coarse pixel, and the blur
+        // of the halvings can shift it by the same amount.
+        cv::Rect resultsWindow(
+                coarseResult.maxLoc.x * levelScale - levelScale,
+                coarseResult.maxLoc.y * levelScale - levelScale,
+                levelScale * 3,
+                levelScale * 3);
+        resultsWindow &= cv::Rect(
+                0,
+                0,
+                scaledGrayCurrentImage->cols - condition.scaledGray.cols + 1,
+                scaledGrayCurrentImage->rows - condition.scaledGray.rows + 1);
+        if (resultsWindow.empty()) continue;
+
+        cv::Rect imageWindow(
+                resultsWindow.x,
+                resultsWindow.y,
+                resultsWindow.width + condition.scaledGray.cols - 1,
+                resultsWindow.height + condition.scaledGray.rows - 1);
+        matchTemplate(Mat(*scaledGrayCurrentImage, imageWindow), condition.scaledGray, buffers.results);
+        if (findValidMatch(condition, condition.scales.front(), buffers.results, resultsWindow.tl(), fullSizeDetectionRoi, threshold, buffers, result)) return true;
+    }
+
+    // All refined candidates were rejected, a valid one can be ranked lower on the coarse level, like among the
+    // look-alikes of a repetitive UI. Only the full search can find it.
+    return false;
+}
+
+bool Detector::isBoundedMatching(const ConditionTemplate& condition, int threshold) const {
+    return threshold <= BOUNDED_MATCHING_MAX_THRESHOLD
+            && scaledGrayCurrentImageMatcherFrameIndex == frameIndex
+            && condition.scaledGrayBounded.isMatchable();
+}
+
+bool Detector::findValidBoundedMatch(const ConditionTemplate& condition, const cv::Rect& scaledDetectionRoi,
+                                     const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers,
+                                     DetectionResult& result) const {
+
+    double minScore = (double) (100 - threshold) / 100;
+    std::vector<cv::Rect>& rejectedAreas = buffers.rejectedAreas;
+    rejectedAreas.clear();
+    cv::Point scanPosition(0, 0);
+    double bestScore = 0;
+
+    // Until a window above the threshold have the right colors, or none are left, or too many have been verified.
+    cv::Rect fullSizeMatchingRoi;
+    result.isDetected = false;
+    for (int verification = 0; verification < maxColorVerificationCount && scaledGrayCurrentImageMatcher.findNext(
+            condition.scaledGrayBounded, scaledDetectionRoi, minScore, rejectedAreas, scanPosition, result.maxLoc,
+            result.maxVal, bestScore); verification++) {
+
+        // Same as the invalidated results in findValidMatch, the windows around a rejected one are skipped.
+        cv::Rect resultsMatchingRoi = getDetectionResultScaledCroppedRoi(result, condition.scaledGray.cols, condition.scaledGray.rows);
+        fullSizeMatchingRoi = getDetectionResultFullSizeRoi(result, fullSizeDetectionRoi, condition.fullSizeColor.cols, condition.fullSizeColor.rows);
+        if (isRoiOutOfBounds(fullSizeMatchingRoi, *fullSizeColorCurrentImage)) {
+            rejectedAreas.push_back(resultsMatchingRoi);
+            continue;
+        }
+
+        // Check if the colors are matching in the candidate area.
+        auto fullSizeColorCroppedCurrentImage = Mat(*fullSizeColorCurrentImage, fullSizeMatchingRoi);
+        if (getColorDiff(fullSizeColorCroppedCurrentImage, condition.colorMeans) < threshold) {
+            result.isDetected = true;
+            break;
+        }
+
+        // Colors are invalid, the windows around this one are the same match.
+        rejectedAreas.push_back(resultsMatchingRoi);
+    }
+
+    if (result.isDetected) {
+        result.centerX = fullSizeMatchingRoi.x + ((int) (fullSizeMatchingRoi.width / 2));
+        result.centerY = fullSizeMatchingRoi.y + ((int) (fullSizeMatchingRoi.height / 2));
+    } else {
+        // The best score of the windows that were not dropped early, as the confidence rate.
+        result.maxVal = bestScore;
+        result.centerX = 0;
+        result.centerY = 0;
+    }
+
+    return result.isDetected;
+}
+
+bool Detector::findValidMatch(const ConditionTemplate& condition, const ConditionScale& conditionScale, const cv::Mat& matchingResults, const cv::Point& resultsOffset,
+                              const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers,
+                              DetectionResult& result) const {
 
-    // Get the matching results
-    auto matchingResults = matchTemplate(croppedGrayCurrentImage, *scaledGrayCondition);
+    // List the best candidates above the threshold in a single pass over the results, instead of searching the maximum
+    // again after each invalid candidate.
+    double minValue = (double) (100 - threshold) / 100;
+    findMatchingCandidates(matchingResults, minValue, maxColorVerificationCount, buffers.candidates, result.maxVal, result.maxLoc);
+    double bestValue = result.maxVal;
+    cv::Point bestLocation = result.maxLoc + resultsOffset;
 
-    // Until a condition is detected or none fits
+    // Until a candidate is detected or none fits
     cv::Rect scaledMatchingRoi;
     cv::Rect fullSizeMatchingRoi;
-    detectionResult.isDetected = false;
-    while (!detectionResult.isDetected) {
-        // Find the max value and its position in the result
-        locateMinMax(*matchingResults, detectionResult);
-        // If the maximum for the whole picture is below the threshold, we will never find.
-        if (!isValidMatching(detectionResult, threshold)) break;
-
-        // Calculate the ROI based on the maximum location
-        scaledMatchingRoi = getDetectionResultScaledCroppedRoi(scaledGrayCondition->cols, scaledGrayCondition->rows);
-        fullSizeMatchingRoi = getDetectionResultFullSizeRoi(fullSizeDetectionRoi, fullSizeColorCondition->cols, fullSizeColorCondition->rows);
+    buffers.rejectedAreas.clear();
+    result.isDetected = false;
+    for (const MatchingCandidate& candidate : buffers.candidates) {
+        // A candidate in the area of a rejected one is a part of the same match.
+        if (isInAreas(candidate.location, buffers.rejectedAreas)) continue;
+
+        // Calculate the ROI based on the candidate location, the results can be a part of the detection area only
+        result.maxVal = candidate.value;
+        result.maxLoc = candidate.location;
+        cv::Rect resultsMatchingRoi = getDetectionResultScaledCroppedRoi(result, conditionScale.scaledGray.cols, conditionScale.scaledGray.rows);
+        result.maxLoc += resultsOffset;
+        scaledMatchingRoi = getDetectionResultScaledCroppedRoi(result, conditionScale.scaledGray.cols, conditionScale.scaledGray.rows);
+        fullSizeMatchingRoi = getDetectionResultFullSizeRoi(result, fullSizeDetectionRoi, conditionScale.fullSize.width, conditionScale.fullSize.height);
         if (isRoiOutOfBounds(scaledMatchingRoi, *scaledGrayCurrentImage) || isRoiOutOfBounds(fullSizeMatchingRoi, *fullSizeColorCurrentImage)) {
             // Roi is out of bounds, invalid match
-            markRoiAsInvalidInResults(*matchingResults,scaledMatchingRoi);
+            buffers.rejectedAreas.push_back(resultsMatchingRoi);
             continue;
         }
 
         // Check if the colors are matching in the candidate area.
         auto fullSizeColorCroppedCurrentImage = Mat(*fullSizeColorCurrentImage, fullSizeMatchingRoi);
-        double colorDiff = getColorDiff(fullSizeColorCroppedCurrentImage, *fullSizeColorCondition);
+        double colorDiff = getColorDiff(fullSizeColorCroppedCurrentImage, condition.colorMeans);
         if (colorDiff < threshold) {
-            detectionResult.isDetected = true;
-        } else {
-            // Colors are invalid, modify the matching result to indicate that.
-            markRoiAsInvalidInResults(*matchingResults,scaledMatchingRoi);
+            result.isDetected = true;
+            break;
         }
+
+        // Colors are invalid, the candidates around this one are the same match.
+        buffers.rejectedAreas.push_back(resultsMatchingRoi);
     }
 
     // If the condition is detected, compute the position of the detection and add it to the results.
-    if (detectionResult.isDetected) {
-        detectionResult.centerX = fullSizeMatchingRoi.x + ((int) (fullSizeMatchingRoi.width / 2));
-        detectionResult.centerY = fullSizeMatchingRoi.y + ((int) (fullSizeMatchingRoi.height / 2));
+    if (result.isDetected) {
+        result.centerX = fullSizeMatchingRoi.x + ((int) (fullSizeMatchingRoi.width / 2));
+        result.centerY = fullSizeMatchingRoi.y + ((int) (fullSizeMatchingRoi.height / 2));
     } else {
-        detectionResult.centerX = 0;
-        detectionResult.centerY = 0;
+        result.maxVal = bestValue;
+        result.maxLoc = bestLocation;
+        result.centerX = 0;
+        result.centerY = 0;
     }
 
-    return detectionResult;
+    return result.isDetected;
+}
+
+int Detector::findValidMatches(const ConditionTemplate& condition, const cv::Mat& matchingResults,
+                               const cv::Rect& fullSizeDetectionRoi, int threshold, int maxCount, MatchingBuffers& buffers,
+                               jint* positions, jdouble* confidences) const {
+
+    // Each match have a single local maximum, but a noisy one can have a few more around it. Keep some margin for them
+    // and for the candidates with invalid colors.
+    double minValue = (double) (100 - threshold) / 100;
+    double maxValue;
+    cv::Point maxLocation;
+    findMatchingCandidates(matchingResults, minValue, maxCount * ALL_MATCHES_CANDIDATES_PER_MATCH + maxColorVerificationCount,
+                           buffers.candidates, maxValue, maxLocation);
+
+    // Non maximum suppression: from the best to the worst, a candidate overlapping an already kept or rejected window
+    // is a part of the same match.
+    std::vector<cv::Rect>& matchedAreas = buffers.rejectedAreas;
+    matchedAreas.clear();
+    DetectionResult candidateResult;
+    int matchCount = 0;
+    int colorRejectionCount = 0;
+    for (const MatchingCandidate& candidate : buffers.candidates) {
+        if (matchCount >= maxCount || colorRejectionCount >= maxColorVerificationCount) break;
+
+        cv::Rect resultsMatchingRoi(candidate.location.x, candidate.location.y, condition.scaledGray.cols, condition.scaledGray.rows);
+        if (isOverlappingAreas(resultsMatchingRoi, matchedAreas)) continue;
+        matchedAreas.push_back(resultsMatchingRoi);
+
+        candidateResult.maxLoc = candidate.location;
+        cv::Rect fullSizeMatchingRoi = getDetectionResultFullSizeRoi(candidateResult, fullSizeDetectionRoi, condition.fullSizeColor.cols, condition.fullSizeColor.rows);
+        if (isRoiOutOfBounds(fullSizeMatchingRoi, *fullSizeColorCurrentImage)) continue;
+
+        // Check if the colors are matching in the candidate area.
+        auto fullSizeColorCroppedCurrentImage = Mat(*fullSizeColorCurrentImage, fullSizeMatchingRoi);
+        if (getColorDiff(fullSizeColorCroppedCurrentImage, condition.colorMeans) >= threshold) {
+            colorRejectionCount++;
+            continue;
+        }
+
+        positions[matchCount * 2] = fullSizeMatchingRoi.x + ((int) (fullSizeMatchingRoi.width / 2));
+        positions[matchCount * 2 + 1] = fullSizeMatchingRoi.y + ((int) (fullSizeMatchingRoi.height / 2));
+        confidences[matchCount] = candidate.value;
+        matchCount++;
+    }
+
+    return matchCount;
+}
+
+void Detector::findMatchingCandidates(const cv::Mat& matchingResults, double minValue, int maxCount,
+                                      std::vector<MatchingCandidate>& candidates, double& maxValue, cv::Point& maxLocation) {
+
+    // The candidates are kept in a min heap, the worst one is replaced when a better one is found.
+    auto isBetter = [] (const MatchingCandidate& first, const MatchingCandidate& second) {
+        return first.value > second.value;
+    };
+
+    candidates.clear();
+    maxValue = 0;
+    maxLocation = cv::Point(0, 0);
+    for (int y = 0; y < matchingResults.rows; y++) {
+        const float* previousRow = y > 0 ? matchingResults.ptr<float>(y - 1) : nullptr;
+        const float* row = matchingResults.ptr<float>(y);
+        const float* nextRow = y < matchingResults.rows - 1 ? matchingResults.ptr<float>(y + 1) : nullptr;
+
+        for (int x = 0; x < matchingResults.cols; x++) {
+            float value = row[x];
+            if (value > maxValue) {
+                maxValue = value;
+                maxLocation = cv::Point(x, y);
+            }
+            if (value <= minValue) continue;
+
+            // Only the local maximums are candidates, the values around them are the same match. On a plateau, the
+            // first value in the scan order is kept.
+            bool hasLeft = x > 0, hasRight = x < matchingResults.cols - 1;
+            if ((hasLeft && row[x - 1] >= value) || (hasRight && row[x + 1] > value)) continue;
+            if (previousRow && ((hasLeft && previousRow[x - 1] >= value) || previousRow[x] >= value || (hasRight && previousRow[x + 1] >= value))) continue;
+            if (nextRow && ((hasLeft && nextRow[x - 1] > value) || nextRow[x] > value || (hasRight && nextRow[x + 1] > value))) continue;
+
+            if ((int) candidates.size() < maxCount) {
+                candidates.push_back({ value, cv::Point(x, y) });
+                std::push_heap(candidates.begin(), candidates.end(), isBetter);
+            } else if (value > candidates.front().value) {
+                std::pop_heap(candidates.begin(), candidates.end(), isBetter);
+                candidates.back() = { value, cv::Point(x, y) };
+                std::push_heap(candidates.begin(), candidates.end(), isBetter);
+            }
+        }
+    }
+
+    // Best candidates first
+    std::sort_heap(candidates.begin(), candidates.end(), isBetter);
+}
+
+bool Detector::isInAreas(const cv::Point& location, const std::vector<cv::Rect>& areas) {
+    return std::any_of(areas.begin(), areas.end(), [&location] (const cv::Rect& area) {
+        return area.contains(location);
+    });
+}
+
+bool Detector::isOverlappingAreas(const cv::Rect& area, const std::vector<cv::Rect>& areas) {
+    return std::any_of(areas.begin(), areas.end(), [&area] (const cv::Rect& other) {
+        return (area & other).area() > 0;
+    });
+}
+
+cv::Size Detector::getMaxScaledSize(const ConditionTemplate& condition) {
+    cv::Size maxSize = condition.scaledGray.size();
+    for (const ConditionScale& conditionScale : condition.scales) {
+        maxSize.width = max(maxSize.width, conditionScale.scaledGray.cols);
+        maxSize.height = max(maxSize.height, conditionScale.scaledGray.rows);
+    }
+    return maxSize;
+}
+
+int Detector::getPyramidLevel(const ConditionTemplate& condition) const {
+    // Use the coarsest level where the condition is still large enough to be discriminant.
+    int minConditionSize = min(condition.scaledGray.cols, condition.scaledGray.rows);
+    int level = 0;
+    while (level < PYRAMID_MAX_LEVEL && level + 1 < (int) condition.scaledGrayPyramid.size()
+            && level + 1 < (int) scaledGrayCurrentImagePyramid.size()
+            && (minConditionSize >> (level + 1)) >= PYRAMID_MIN_CONDITION_SIZE) {
+        level++;
+    }
+    return level;
+}
+
+void Detector::setDetectionWorkerCount(int workerCount) {
+    workerPool.setWorkerCount(workerCount);
+}
+
+void Detector::setMatchingScales(const jdouble* scales, int count) {
+    // The captured size is always matched first, keep only the other scales, from the closest to the farthest of it.
+    matchingScales.clear();
+    for (int index = 0; index < count; index++) {
+        double scale = scales[index];
+        if (scale <= 0 || scale == 1 || std::find(matchingScales.begin(), matchingScales.end(), scale) != matchingScales.end()) {
+            continue;
+        }
+        matchingScales.push_back(scale);
+    }
+    std::sort(matchingScales.begin(), matchingScales.end(), [] (double first, double second) {
+        return std::abs(std::log(first)) < std::abs(std::log(second));
+    });
+
+    // The registered conditions are resized once at each scale.
+    for (auto& conditionTemplate : conditionTemplates) {
+        updateConditionScales(*conditionTemplate);
+    }
+}
+
+void Detector::setMaxColorVerificationCount(int count) {
+    maxColorVerificationCount = std::max(count, 1);
+}
+
+void Detector::setColorPrefilterEnabled(bool enabled) {
+    isColorPrefilterEnabled = enabled;
+}
+
+int Detector::detectConditions(JNIEnv *env, const DetectionBatch& batch) {
+    // Reset the results of the previous detection
+    for (int conditionIndex = 0; conditionIndex < batch.conditionCount; conditionIndex++) {
+        batch.conditionsResults[conditionIndex * CONDITION_RESULTS_SIZE + CONDITION_RESULT_STATE] = CONDITION_STATE_NOT_EVALUATED;
+        batch.conditionsResults[conditionIndex * CONDITION_RESULTS_SIZE + CONDITION_RESULT_DURATION] = 0;
+    }
+    for (int groupIndex = 0; groupIndex < batch.groupCount; groupIndex++) {
+        batch.groupsResults[groupIndex] = GROUP_STATE_NOT_EVALUATED;
+    }
+
+    if (!isBatchValid(env, batch)) return NO_GROUP_FULFILLED;
+    isScreenChangeDetected = true;
+
+    // The matcher for the strict thresholds is shared by all workers, prepare it before the matching.
+    for (int conditionIndex = 0; conditionIndex < batch.conditionCount; conditionIndex++) {
+        if (batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_THRESHOLD] <= BOUNDED_MATCHING_MAX_THRESHOLD) {
+            updateScaledGrayCurrentImageMatcher();
+            break;
+        }
+    }
+
+    // With several workers, the conditions are matched ahead of the evaluation below, which will then only consume
+    // the available results.
+    isBatchDetectionResultAvailable.assign(batch.conditionCount, false);
+    batchDetectionResults.resize(batch.conditionCount);
+    batchDetectionsCache.resize(batch.conditionCount);
+    batchMatchingBuffers.resize(batch.conditionCount);
+    batchSharedDetectionsIndexes.assign(batch.conditionCount, NO_SHARED_DETECTION);
+    batchDetectionsDurations.resize(batch.conditionCount);
+    if (workerPool.getWorkerCount() > 1) matchBatchConditionsInParallel(batch);
+
+    // Evaluate the groups in order, until one of them is fulfilled
+    for (int groupIndex = 0; groupIndex < batch.groupCount; groupIndex++) {
+        const jint* groupParams = batch.groupsParams + groupIndex * GROUP_PARAMS_SIZE;
+        if (groupParams[GROUP_PARAM_FLAGS] & GROUP_FLAG_SKIPPED) {
+            batch.groupsResults[groupIndex] = GROUP_STATE_NOT_FULFILLED;
+            continue;
+        }
+
+        // All conditions passed for AND, none are for OR.
+        bool requireAll = groupParams[GROUP_PARAM_FLAGS] & GROUP_FLAG_REQUIRE_ALL;
+        bool isFulfilled = requireAll;
+        int firstCondition = groupParams[GROUP_PARAM_FIRST_CONDITION];
+        int lastCondition = firstCondition + groupParams[GROUP_PARAM_CONDITION_COUNT];
+        for (int conditionIndex = firstCondition; conditionIndex < lastCondition; conditionIndex++) {
+            bool isConditionFulfilled = detectBatchCondition(batch, conditionIndex);
+
+            if (requireAll && !isConditionFulfilled) {
+                // One of the condition isn't fulfilled, it's a false for a AND operator.
+                isFulfilled = false;
+                break;
+            } else if (!requireAll && isConditionFulfilled) {
+                // One of the condition is fulfilled, it's a yes for a OR operator.
+                isFulfilled = true;
+                break;
+            }
+        }
+
+        batch.groupsResults[groupIndex] = isFulfilled ? GROUP_STATE_FULFILLED : GROUP_STATE_NOT_FULFILLED;
+        if (isFulfilled) return groupIndex;
+    }
+
+    return NO_GROUP_FULFILLED;
+}
+
+bool Detector::isBatchValid(JNIEnv *env, const DetectionBatch& batch) const {
+    // setScreenImage haven't been called first
+    if (scaledGrayCurrentImage->empty()) {
+        __android_log_print(ANDROID_LOG_ERROR, "Detector",
+                            "detectConditions caught an exception");
+        jclass je = env->FindClass("java/lang/Exception");
+        env->ThrowNew(je, "Can't detect conditions, scaledGrayCurrentImage is empty !");
+        return false;
+    }
+
+    // The conditions can be matched from the workers threads, verify them all before starting.
+    for (int groupIndex = 0; groupIndex < batch.groupCount; groupIndex++) {
+        const jint* groupParams = batch.groupsParams + groupIndex * GROUP_PARAMS_SIZE;
+        if (groupParams[GROUP_PARAM_FLAGS] & GROUP_FLAG_SKIPPED) continue;
+
+        int firstCondition = groupParams[GROUP_PARAM_FIRST_CONDITION];
+        int lastCondition = firstCondition + groupParams[GROUP_PARAM_CONDITION_COUNT];
+        for (int conditionIndex = firstCondition; conditionIndex < lastCondition; conditionIndex++) {
+            int handle = batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_HANDLE];
+            if (handle < 0 || handle >= (int) conditionTemplates.size()) {
+                __android_log_print(ANDROID_LOG_ERROR, "Detector", "Invalid condition handle %1d", handle);
+                jclass je = env->FindClass("java/lang/IllegalArgumentException");
+                env->ThrowNew(je, "Can't detect condition, handle is not registered !");
+                return false;
+            }
+
+            int sharedIndex = batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_SHARED_DETECTION];
+            if (sharedIndex < 0 || sharedIndex > conditionIndex) {
+                __android_log_print(ANDROID_LOG_ERROR, "Detector", "Invalid shared detection %1d", sharedIndex);
+                jclass je = env->FindClass("java/lang/IllegalArgumentException");
+                env->ThrowNew(je, "Can't detect condition, shared detection is not a previous condition !");
+                return false;
+            }
+        }
+    }
+
+    return true;
+}
+
+void Detector::matchBatchConditionsInParallel(const DetectionBatch& batch) {
+    // List the conditions to be matched, in the order of evaluation, and the group of each one. The identical
+    // conditions are matched once, with the first of them, their evaluation will use its result.
+    std::vector<int> conditionsGroups;
+    std::vector<int> conditionsIndexes;
+    for (int groupIndex = 0; groupIndex < batch.groupCount; groupIndex++) {
+        const jint* groupParams = batch.groupsParams + groupIndex * GROUP_PARAMS_SIZE;
+        if (groupParams[GROUP_PARAM_FLAGS] & GROUP_FLAG_SKIPPED) continue;
+
+        int firstCondition = groupParams[GROUP_PARAM_FIRST_CONDITION];
+        int lastCondition = firstCondition + groupParams[GROUP_PARAM_CONDITION_COUNT];
+        for (int conditionIndex = firstCondition; conditionIndex < lastCondition; conditionIndex++) {
+            if (batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_SHARED_DETECTION] != conditionIndex) continue;
+
+            conditionsGroups.push_back(groupIndex);
+            conditionsIndexes.push_back(conditionIndex);
+        }
+    }
+
+    // The workers pick the conditions in evaluation order, and skip the ones the sequential evaluation would never
+    // reach: the conditions of an already decided group, and all conditions after the first fulfilled group.
+    std::vector<std::atomic<int>> groupsStates(batch.groupCount);
+    std::vector<std::atomic<int>> groupsNeutralResultCounts(batch.groupCount);
+    std::atomic<int> firstFulfilledGroup(batch.groupCount);
+
+    workerPool.run((int) conditionsIndexes.size(), [&](int taskIndex) {
+        int groupIndex = conditionsGroups[taskIndex];
+        if (groupIndex > firstFulfilledGroup || groupsStates[groupIndex] != GROUP_STATE_NOT_EVALUATED) return;
+
+        int conditionIndex = conditionsIndexes[taskIndex];
+        DetectionResult& result = batchDetectionResults[conditionIndex];
+        matchBatchCondition(batch, conditionIndex, result);
+        isBatchDetectionResultAvailable[conditionIndex] = true;
+
+        const jint* groupParams = batch.groupsParams + groupIndex * GROUP_PARAMS_SIZE;
+        bool requireAll = groupParams[GROUP_PARAM_FLAGS] & GROUP_FLAG_REQUIRE_ALL;
+        bool shouldBeDetected = batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_FLAGS] & CONDITION_FLAG_SHOULD_BE_DETECTED;
+        bool isConditionFulfilled = result.isDetected == shouldBeDetected;
+
+        // A false for a AND or a true for a OR decides the group. If all conditions are true for a AND, or false for
+        // a OR, the group is also decided. In both cases, the group result is the one of the last condition.
+        bool isGroupDecided = isConditionFulfilled != requireAll
+                || ++groupsNeutralResultCounts[groupIndex] == groupParams[GROUP_PARAM_CONDITION_COUNT];
+        if (!isGroupDecided) return;
+
+        groupsStates[groupIndex] = isConditionFulfilled ? GROUP_STATE_FULFILLED : GROUP_STATE_NOT_FULFILLED;
+        if (!isConditionFulfilled) return;
+
+        int currentFirstFulfilledGroup = firstFulfilledGroup;
+        while (groupIndex < currentFirstFulfilledGroup
+                && !firstFulfilledGroup.compare_exchange_weak(currentFirstFulfilledGroup, groupIndex));
+    });
+}
+
+void Detector::matchBatchCondition(const DetectionBatch& batch, int conditionIndex, DetectionResult& result) {
+    auto start = std::chrono::steady_clock::now();
+    const jint* params = batch.conditionsParams + conditionIndex * CONDITION_PARAMS_SIZE;
+    const ConditionTemplate& condition = *conditionTemplates[params[CONDITION_PARAM_HANDLE]];
+    bool isWholeScreen = params[CONDITION_PARAM_FLAGS] & CONDITION_FLAG_WHOLE_SCREEN;
+    bool isMultiScale = params[CONDITION_PARAM_FLAGS] & CONDITION_FLAG_MULTI_SCALE;
+    bool isTracked = isWholeScreen && (params[CONDITION_PARAM_FLAGS] & CONDITION_FLAG_TRACKED);
+
+    cv::Rect fullSizeDetectionRoi = isWholeScreen
+            ? cv::Rect(0, 0, fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows)
+            : cv::Rect(params[CONDITION_PARAM_X], params[CONDITION_PARAM_Y], params[CONDITION_PARAM_WIDTH], params[CONDITION_PARAM_HEIGHT]);
+
+    // A condition index is matched by a single worker at a time, its cache can be used without synchronization.
+    CachedDetection& cached = batchDetectionsCache[conditionIndex];
+    bool isCacheFromPreviousFrame = cached.frameIndex != 0 && cached.frameIndex >= screenChangeBaseFrameIndex
+            && std::equal(params, params + CONDITION_PARAMS_SIZE, cached.params);
+
+    if (isCacheFromPreviousFrame && isCachedDetectionUnchanged(cached, params)) {
+        result = cached.result;
+    } else if (isCacheFromPreviousFrame && isWholeScreen && !cached.result.isDetected) {
+        // The condition wasn't anywhere on the previous frame, it can only appear where the screen have changed.
+        cv::Rect dirtyFullSizeRoi = getDirtyFullSizeRoi(condition);
+        matchCondition(condition, dirtyFullSizeRoi, params[CONDITION_PARAM_THRESHOLD], dirtyFullSizeRoi == fullSizeDetectionRoi, isMultiScale,
+                       batchMatchingBuffers[conditionIndex], result);
+    } else {
+        // A tracked condition is first searched where it should be if it kept moving the same way.
+        result.reset();
+        if (isCacheFromPreviousFrame && isTracked && cached.result.isDetected) {
+            cv::Rect trackingFullSizeRoi = getTrackingFullSizeRoi(condition, cached);
+            if (!trackingFullSizeRoi.empty()) {
+                matchCondition(condition, trackingFullSizeRoi, params[CONDITION_PARAM_THRESHOLD], false, isMultiScale,
+                               batchMatchingBuffers[conditionIndex], result);
+            }
+        }
+
+        if (!result.isDetected) {
+            matchCondition(condition, fullSizeDetectionRoi, params[CONDITION_PARAM_THRESHOLD], isWholeScreen, isMultiScale,
+                           batchMatchingBuffers[conditionIndex], result);
+        }
+    }
+
+    // The motion is only known between two consecutive detections.
+    cached.motion = isCacheFromPreviousFrame && cached.result.isDetected && result.isDetected
+            ? cv::Point((int) result.centerX - (int) cached.result.centerX, (int) result.centerY - (int) cached.result.centerY)
+            : cv::Point(0, 0);
+    std::copy(params, params + CONDITION_PARAMS_SIZE, cached.params);
+    cached.frameIndex = frameIndex;
+    cached.result = result;
+    cached.scaledMatchingRoi = result.isDetected
+            ? getScaledRoi(
+                    (int) result.centerX - cvRound(condition.fullSizeColor.cols * result.scale) / 2,
+                    (int) result.centerY - cvRound(condition.fullSizeColor.rows * result.scale) / 2,
+                    cvRound(condition.fullSizeColor.cols * result.scale),
+                    cvRound(condition.fullSizeColor.rows * result.scale))
+            : cv::Rect();
+
+    batchDetectionsDurations[conditionIndex] = (jint) std::chrono::duration_cast<std::chrono::microseconds>(
+            std::chrono::steady_clock::now() - start).count();
+}
+
+bool Detector::isCachedDetectionUnchanged(const CachedDetection& cached, const jint* params) const {
+    if (cached.frameIndex == frameIndex) return true;
+
+    // The detection in an area only depends on the content of this area.
+    if (!(params[CONDITION_PARAM_FLAGS] & CONDITION_FLAG_WHOLE_SCREEN)) {
+        return !scaledGrayCurrentImageDiff.isDirty(getScaledRoi(
+                params[CONDITION_PARAM_X], params[CONDITION_PARAM_Y], params[CONDITION_PARAM_WIDTH], params[CONDITION_PARAM_HEIGHT]));
+    }
+
+    // On the whole screen, a detected condition is still detected if its previous position haven't changed.
+    if (cached.result.isDetected) return !scaledGrayCurrentImageDiff.isDirty(cached.scaledMatchingRoi);
+    return scaledGrayCurrentImageDiff.getDirtyBounds().empty();
+}
+
+cv::Rect Detector::getDirtyFullSizeRoi(const ConditionTemplate& condition) const {
+    // A match overlapping a dirty tile can start up to a condition size before it. Add the condition size on each
+    // side, it also covers the rounding of the conversion to the full size. With several matching scales, the largest
+    // one is used.
+    const cv::Rect& dirtyBounds = scaledGrayCurrentImageDiff.getDirtyBounds();
+    cv::Size maxScaledSize = getMaxScaledSize(condition);
+    cv::Rect fullSizeDirtyRoi(
+            (int) floor((dirtyBounds.x - maxScaledSize.width) / scaleRatio),
+            (int) floor((dirtyBounds.y - maxScaledSize.height) / scaleRatio),
+            (int) ceil((dirtyBounds.width + maxScaledSize.width * 2) / scaleRatio),
+            (int) ceil((dirtyBounds.height + maxScaledSize.height * 2) / scaleRatio));
+
+    return fullSizeDirtyRoi & cv::Rect(0, 0, fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows);
+}
+
+cv::Rect Detector::getTrackingFullSizeRoi(const ConditionTemplate& condition, const CachedDetection& cached) const {
+    // Around the previous position moved by the previous motion, with a margin for the changes of motion that grows
+    // with its speed.
+    cv::Size fullSize(
+            cvRound(condition.fullSizeColor.cols * cached.result.scale),
+            cvRound(condition.fullSizeColor.rows * cached.result.scale));
+    int marginX = fullSize.width * TRACKING_WINDOW_MARGIN + std::abs(cached.motion.x);
+    int marginY = fullSize.height * TRACKING_WINDOW_MARGIN + std::abs(cached.motion.y);
+    cv::Rect fullSizeTrackingRoi(
+            (int) cached.result.centerX + cached.motion.x - fullSize.width / 2 - marginX,
+            (int) cached.result.centerY + cached.motion.y - fullSize.height / 2 - marginY,
+            fullSize.width + marginX * 2,
+            fullSize.height + marginY * 2);
+
+    fullSizeTrackingRoi &= cv::Rect(0, 0, fullSizeColorCurrentImage->cols, fullSizeColorCurrentImage->rows);
+    if (fullSizeTrackingRoi.width < condition.fullSizeColor.cols || fullSizeTrackingRoi.height < condition.fullSizeColor.rows) {
+        return {};
+    }
+    return fullSizeTrackingRoi;
+}
+
+bool Detector::detectBatchCondition(const DetectionBatch& batch, int conditionIndex) {
+    // Identical conditions share the result of the first one detected, either by the workers or by this evaluation.
+    int sharedIndex = batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_SHARED_DETECTION];
+    int& detectedIndex = batchSharedDetectionsIndexes[sharedIndex];
+    if (detectedIndex == NO_SHARED_DETECTION && isBatchDetectionResultAvailable[sharedIndex]) detectedIndex = sharedIndex;
+
+    DetectionResult& result = batchDetectionResults[conditionIndex];
+    bool isShared = detectedIndex != NO_SHARED_DETECTION && detectedIndex != conditionIndex;
+    if (detectedIndex != NO_SHARED_DETECTION) {
+        if (isShared) result = batchDetectionResults[detectedIndex];
+    } else {
+        // Use the result matched by the workers, if any.
+        if (!isBatchDetectionResultAvailable[conditionIndex]) {
+            matchBatchCondition(batch, conditionIndex, result);
+        }
+        detectedIndex = conditionIndex;
+    }
+
+    jint* results = batch.conditionsResults + conditionIndex * CONDITION_RESULTS_SIZE;
+    results[CONDITION_RESULT_STATE] = result.isDetected ? CONDITION_STATE_DETECTED : CONDITION_STATE_NOT_DETECTED;
+    results[CONDITION_RESULT_CENTER_X] = (int) result.centerX;
+    results[CONDITION_RESULT_CENTER_Y] = (int) result.centerY;
+    results[CONDITION_RESULT_DURATION] = isShared ? 0 : batchDetectionsDurations[conditionIndex];
+    batch.conditionsConfidences[conditionIndex] = result.maxVal;
+    batch.conditionsScales[conditionIndex] = result.scale;
+
+    bool shouldBeDetected = batch.conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_FLAGS] & CONDITION_FLAG_SHOULD_BE_DETECTED;
+    return result.isDetected == shouldBeDetected;
 }
 
 std::unique_ptr<Mat> Detector::scaleAndChangeToGray(const cv::Mat& fullSizeColored) const {
-    // Convert the condition into a gray mat
-    cv::Mat fullSizeGrayCondition(fullSizeColored.rows, fullSizeColored.cols, CV_8UC1);
-    cv::cvtColor(fullSizeColored, fullSizeGrayCondition, cv::COLOR_RGBA2GRAY);
+    // Convert the condition into a scaled gray mat, the same way than the screen image.
+    auto scaledGrayCondition = std::make_unique<cv::Mat>();
+    ScaledGrayConverter().convert(fullSizeColored, scaleRatio, *scaledGrayCondition);
 
-    // Scale it
-    auto scaledGrayCondition = Mat(max((int) (fullSizeGrayCondition.rows * scaleRatio), 1),
-                                   max((int) (fullSizeGrayCondition.cols * scaleRatio), 1),
-                                   CV_8UC1);
-    resize(fullSizeGrayCondition, scaledGrayCondition, Size(), scaleRatio, scaleRatio, INTER_AREA);
+    return scaledGrayCondition;
+}
 
-    return std::make_unique<cv::Mat>(scaledGrayCondition);
+void Detector::updateConditionScaledGray(ConditionTemplate& condition) const {
+    condition.scaledGray = *scaleAndChangeToGray(condition.fullSizeColor);
+    buildPyramid(condition.scaledGray, condition.scaledGrayPyramid, PYRAMID_MAX_LEVEL);
+    condition.scaledGrayBounded.update(condition.scaledGray);
+    updateConditionScales(condition);
 }
 
-std::unique_ptr<Mat> Detector::matchTemplate(const Mat& image, const Mat& condition) {
-    cv::Mat resultMat(image.rows - condition.rows + 1, image.cols - condition.cols + 1, CV_32F);
-    cv::matchTemplate(image, condition, resultMat, cv::TM_CCOEFF_NORMED);
+void Detector::updateConditionScales(ConditionTemplate& condition) const {
+    condition.scales.clear();
+    condition.scales.push_back({ 1, condition.scaledGray, condition.fullSizeColor.size() });
+
+    for (double scale : matchingScales) {
+        cv::Size scaledSize(
+                max(cvRound(condition.scaledGray.cols * scale), 1),
+                max(cvRound(condition.scaledGray.rows * scale), 1));
+        cv::Size fullSize(
+                max(cvRound(condition.fullSizeColor.cols * scale), 1),
+                max(cvRound(condition.fullSizeColor.rows * scale), 1));
+
+        // Same interpolation as the screen scaling when reducing, smoother when enlarging.
+        cv::Mat scaledGray;
+        cv::resize(condition.scaledGray, scaledGray, scaledSize, 0, 0, scale < 1 ? cv::INTER_AREA : cv::INTER_LINEAR);
+        condition.scales.push_back({ scale, scaledGray, fullSize });
+    }
+}
 
-    return std::make_unique<cv::Mat>(resultMat);
+void Detector::matchTemplate(const Mat& image, const Mat& condition, cv::Mat& results) {
+    // The results are only reallocated when their size changes, they are reused between detections of the same size.
+    cv::matchTemplate(image, condition, results, cv::TM_CCOEFF_NORMED);
 }
 
 void Detector::locateMinMax(const Mat& matchingResult, DetectionResult& results) {
     minMaxLoc(matchingResult, &results.minVal, &results.maxVal, &results.minLoc, &results.maxLoc, Mat());
 }
 
-bool Detector::isValidMatching(const DetectionResult& results, const int threshold) {
-    return results.maxVal > ((double) (100 - threshold) / 100);
+double Detector::getColorDiff(const cv::Mat& image, const cv::Scalar& conditionColorMeans) {
+    return getColorDiff(getColorMeans(image), conditionColorMeans);
 }
 
-double Detector::getColorDiff(const cv::Mat& image, const cv::Mat& condition) {
-    auto imageColorMeans = mean(image);
-    auto conditionColorMeans = mean(condition);
-
+double Detector::getColorDiff(const cv::Scalar& imageColorMeans, const cv::Scalar& conditionColorMeans) {
     double diff = 0;
     for (int i = 0; i < 3; i++) {
         diff += abs(imageColorMeans.val[i] - conditionColorMeans.val[i]);
@@ -188,19 +1015,54 @@ double Detector::getColorDiff(const cv::Mat& image, const cv::Mat& condition) {
     return (diff * 100) / (255 * 3);
 }
 
-cv::Rect Detector::getDetectionResultScaledCroppedRoi(int scaledWidth, int scaledHeight) const {
+bool Detector::isColorPrefilterRejected(const ConditionTemplate& condition, const cv::Rect& fullSizeDetectionRoi,
+                                        int threshold, bool isMultiScale) const {
+    // Only the detection area of an exact detection, with the size of the condition, contains a single candidate whose
+    // colors can be compared before the matching. Other scales have different colors at the same position.
+    if (!isColorPrefilterEnabled || isMultiScale || fullSizeDetectionRoi.size() != condition.fullSizeColor.size()) {
+        return false;
+    }
+
+    // Both signatures are computed on the same pixels of the condition and of its area, the difference is close to the
+    // one of the color verification of the candidate.
+    cv::Scalar screenSignature = getColorSignature(Mat(*fullSizeColorCurrentImage, fullSizeDetectionRoi));
+    return getColorDiff(screenSignature, condition.colorSignature) >= threshold + COLOR_PREFILTER_TOLERANCE;
+}
+
+cv::Scalar Detector::getColorSignature(const cv::Mat& image) {
+    // The mean color of a regular grid of pixels, spread over the whole image.
+    int step = std::max(1, (int) std::sqrt((double) image.total() / COLOR_PREFILTER_SAMPLE_COUNT));
+    double sums[3] = { 0, 0, 0 };
+    int count = 0;
+
+    for (int y = step / 2; y < image.rows; y += step) {
+        const uchar* row = image.ptr<uchar>(y);
+        for (int x = step / 2; x < image.cols; x += step) {
+            const uchar* pixel = row + x * 4;
+            sums[0] += pixel[0];
+            sums[1] += pixel[1];
+            sums[2] += pixel[2];
+            count++;
+        }
+    }
+
+    if (count == 0) return {};
+    return { sums[0] / count, sums[1] / count, sums[2] / count };
+}
+
+cv::Rect Detector::getDetectionResultScaledCroppedRoi(const DetectionResult& result, int scaledWidth, int scaledHeight) {
     return {
-        detectionResult.maxLoc.x,
-        detectionResult.maxLoc.y,
+        result.maxLoc.x,
+        result.maxLoc.y,
         scaledWidth,
         scaledHeight
     };
 }
 
-cv::Rect Detector::getDetectionResultFullSizeRoi(const cv::Rect& fullSizeDetectionRoi, int fullSizeWidth, int fullSizeHeight) const {
+cv::Rect Detector::getDetectionResultFullSizeRoi(const DetectionResult& result, const cv::Rect& fullSizeDetectionRoi, int fullSizeWidth, int fullSizeHeight) const {
     return {
-            fullSizeDetectionRoi.x + cvRound(detectionResult.maxLoc.x / scaleRatio),
-            fullSizeDetectionRoi.y + cvRound(detectionResult.maxLoc.y / scaleRatio),
+            fullSizeDetectionRoi.x + cvRound(result.maxLoc.x / scaleRatio),
+            fullSizeDetectionRoi.y + cvRound(result.maxLoc.y / scaleRatio),
             fullSizeWidth,
             fullSizeHeight
     };
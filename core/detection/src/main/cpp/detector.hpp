@@ -18,6 +18,13 @@
 #include <jni.h>
 #include <opencv2/imgproc/imgproc.hpp>
 
+#include "image/boundedTemplateMatcher.hpp"
+#include "image/colorMeans.hpp"
+#include "image/frameDiff.hpp"
+#include "image/scaledGrayConverter.hpp"
+#include "threading/workerPool.hpp"
+#include "types/conditionTemplate.hpp"
+#include "types/detectionBatch.hpp"
 #include "types/detectionResult.hpp"
 
 namespace smartautoclicker {
@@ -25,38 +32,136 @@ namespace smartautoclicker {
     class Detector {
 
     private:
+        /** The result of a batch condition, reused on the next frame if its detection area haven't changed. */
+        struct CachedDetection {
+            jint params[CONDITION_PARAMS_SIZE];
+            unsigned long frameIndex = 0;
+            cv::Rect scaledMatchingRoi;
+            DetectionResult result;
+            /** The motion of a tracked condition between its two last detections, in full size pixels. */
+            cv::Point motion;
+        };
+
+        /** A possible match of a condition, in the matching results. */
+        struct MatchingCandidate {
+            double value;
+            cv::Point location;
+        };
+
+        /** The buffers used to match a condition, reused between the detections to avoid their allocations. */
+        struct MatchingBuffers {
+            cv::Mat coarseResults;
+            cv::Mat results;
+            std::vector<MatchingCandidate> candidates;
+            std::vector<cv::Rect> rejectedAreas;
+        };
+
         double scaleRatio = 1;
 
         std::unique_ptr<cv::Mat> fullSizeColorCurrentImage = nullptr;
         std::unique_ptr<cv::Mat> scaledGrayCurrentImage = std::make_unique<cv::Mat>();
+        std::vector<cv::Mat> scaledGrayCurrentImagePyramid;
+        ScaledGrayConverter scaledGrayConverter;
+        FrameDiff scaledGrayCurrentImageDiff;
+        unsigned long frameIndex = 0;
+        /** Tells if the screen changes in scaledGrayCurrentImageDiff have been used by a batch detection. */
+        bool isScreenChangeDetected = true;
+        /** The index of the frame the screen changes are compared to, the last one set before a batch detection. */
+        unsigned long screenChangeBaseFrameIndex = 0;
+        BoundedTemplateMatcher scaledGrayCurrentImageMatcher;
+        unsigned long scaledGrayCurrentImageMatcherFrameIndex = 0;
 
         DetectionResult detectionResult;
-
+        MatchingBuffers matchingBuffers;
+        // Same default than DEFAULT_COLOR_VERIFICATION_COUNT on the Java side.
+        int maxColorVerificationCount = 8;
+        /** Tells if the colors of the exact detections are compared before matching their condition. */
+        bool isColorPrefilterEnabled = true;
+        /** The scales of the conditions searched by the multi-scale detections, in addition to their captured size. */
+        std::vector<double> matchingScales;
+
+        std::vector<std::unique_ptr<ConditionTemplate>> conditionTemplates;
+
+        WorkerPool workerPool;
+        std::vector<DetectionResult> batchDetectionResults;
+        std::vector<char> isBatchDetectionResultAvailable;
+        std::vector<CachedDetection> batchDetectionsCache;
+        std::vector<MatchingBuffers> batchMatchingBuffers;
+        /** For each condition index shared by identical conditions, the index of the one detected for them. */
+        std::vector<int> batchSharedDetectionsIndexes;
+        /** The matching time of each condition of the batch, in microseconds. */
+        std::vector<jint> batchDetectionsDurations;
+
+        void updateScaledGrayCurrentImage();
+        void updateScaledGrayCurrentImageMatcher();
         std::unique_ptr<cv::Mat> scaleAndChangeToGray(const cv::Mat &fullSizeColored) const;
+        void updateConditionScaledGray(ConditionTemplate& condition) const;
+        void updateConditionScales(ConditionTemplate& condition) const;
+        std::unique_ptr<ConditionTemplate> createConditionTemplate(JNIEnv *env, jobject conditionImage, bool copyPixels) const;
 
-        static std::unique_ptr<cv::Mat> matchTemplate(const cv::Mat& image, const cv::Mat& condition);
+        static void matchTemplate(const cv::Mat& image, const cv::Mat& condition, cv::Mat& results);
         static void locateMinMax(const cv::Mat& matchingResult, DetectionResult& results);
-        static bool isValidMatching(const DetectionResult& results, const int threshold);
-        static double getColorDiff(const cv::Mat& image, const cv::Mat& condition);
+        static double getColorDiff(const cv::Mat& image, const cv::Scalar& conditionColorMeans);
+        static double getColorDiff(const cv::Scalar& imageColorMeans, const cv::Scalar& conditionColorMeans);
+        static cv::Scalar getColorSignature(const cv::Mat& image);
+        bool isColorPrefilterRejected(const ConditionTemplate& condition, const cv::Rect& fullSizeDetectionRoi, int threshold, bool isMultiScale) const;
 
-        cv::Rect getDetectionResultScaledCroppedRoi(int scaledWidth, int scaledHeight) const;
-        cv::Rect getDetectionResultFullSizeRoi(const cv::Rect& detectionRoi, int fullSizeWidth, int fullSizeHeight) const;
+        static cv::Rect getDetectionResultScaledCroppedRoi(const DetectionResult& result, int scaledWidth, int scaledHeight);
+        cv::Rect getDetectionResultFullSizeRoi(const DetectionResult& result, const cv::Rect& detectionRoi, int fullSizeWidth, int fullSizeHeight) const;
         cv::Rect getScaledRoi(const int x, const int y, const int width, const int height) const;
         static bool isRoiOutOfBounds(const cv::Rect &roi, const cv::Mat &image);
         static void markRoiAsInvalidInResults(const cv::Mat& results, const cv::Rect& roi);
 
-        DetectionResult detectCondition(JNIEnv *env, jobject conditionImage, cv::Rect fullSizeDetectionRoi, int threshold);
+        void matchCondition(const ConditionTemplate& condition, cv::Rect fullSizeDetectionRoi, int threshold, bool isWholeScreen, bool isMultiScale, MatchingBuffers& buffers, DetectionResult& result) const;
+        bool matchConditionScales(const ConditionTemplate& condition, const cv::Rect& scaledDetectionRoi, const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers, DetectionResult& result) const;
+        bool matchConditionCoarseToFine(const ConditionTemplate& condition, int pyramidLevel, cv::Rect fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers, DetectionResult& result) const;
+        bool isBoundedMatching(const ConditionTemplate& condition, int threshold) const;
+        bool findValidBoundedMatch(const ConditionTemplate& condition, const cv::Rect& scaledDetectionRoi, const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers, DetectionResult& result) const;
+        bool findValidMatch(const ConditionTemplate& condition, const ConditionScale& conditionScale, const cv::Mat& matchingResults, const cv::Point& resultsOffset, const cv::Rect& fullSizeDetectionRoi, int threshold, MatchingBuffers& buffers, DetectionResult& result) const;
+        int findValidMatches(const ConditionTemplate& condition, const cv::Mat& matchingResults, const cv::Rect& fullSizeDetectionRoi, int threshold, int maxCount, MatchingBuffers& buffers, jint* positions, jdouble* confidences) const;
+        static void findMatchingCandidates(const cv::Mat& matchingResults, double minValue, int maxCount, std::vector<MatchingCandidate>& candidates, double& maxValue, cv::Point& maxLocation);
+        static bool isInAreas(const cv::Point& location, const std::vector<cv::Rect>& areas);
+        static bool isOverlappingAreas(const cv::Rect& area, const std::vector<cv::Rect>& areas);
+        bool getScaledDetectionRoi(const cv::Rect& fullSizeDetectionRoi, cv::Rect& scaledDetectionRoi) const;
+        int getPyramidLevel(const ConditionTemplate& condition) const;
+        static cv::Size getMaxScaledSize(const ConditionTemplate& condition);
+        DetectionResult detectCondition(JNIEnv *env, jobject conditionImage, cv::Rect fullSizeDetectionRoi, int threshold, bool isWholeScreen);
+        int detectAllMatches(JNIEnv *env, int conditionHandle, cv::Rect fullSizeDetectionRoi, int threshold, int maxCount, jint* positions, jdouble* confidences);
+
+        bool isBatchValid(JNIEnv *env, const DetectionBatch& batch) const;
+        void matchBatchCondition(const DetectionBatch& batch, int conditionIndex, DetectionResult& result);
+        bool isCachedDetectionUnchanged(const CachedDetection& cached, const jint* params) const;
+        cv::Rect getDirtyFullSizeRoi(const ConditionTemplate& condition) const;
+        cv::Rect getTrackingFullSizeRoi(const ConditionTemplate& condition, const CachedDetection& cached) const;
+        void matchBatchConditionsInParallel(const DetectionBatch& batch);
+        bool detectBatchCondition(const DetectionBatch& batch, int conditionIndex);
 
     public:
 
         Detector() = default;
 
         void setScreenMetrics(JNIEnv *env, jobject screenImage, double detectionQuality);
+        void setScreenMetrics(int screenWidth, int screenHeight, double detectionQuality);
 
         void setScreenImage(JNIEnv *env, jobject screenImage);
+        void setScreenImage(JNIEnv *env, jobject screenBuffer, int width, int height, int rowStride);
+        double getScreenChangeRatio() const;
 
         DetectionResult detectCondition(JNIEnv *env, jobject conditionImage, int threshold);
         DetectionResult detectCondition(JNIEnv *env, jobject conditionImage, int x, int y, int width, int height, int threshold);
+
+        int detectAllMatches(JNIEnv *env, int conditionHandle, int threshold, int maxCount, jint* positions, jdouble* confidences);
+        int detectAllMatches(JNIEnv *env, int conditionHandle, int x, int y, int width, int height, int threshold, int maxCount, jint* positions, jdouble* confidences);
+
+        int registerCondition(JNIEnv *env, jobject conditionImage);
+        void clearConditions();
+
+        void setDetectionWorkerCount(int workerCount);
+        void setMaxColorVerificationCount(int count);
+        void setColorPrefilterEnabled(bool enabled);
+        void setMatchingScales(const jdouble* scales, int count);
+
+        int detectConditions(JNIEnv *env, const DetectionBatch& batch);
     };
 }
 
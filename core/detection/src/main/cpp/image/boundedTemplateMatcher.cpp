@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <cfloat>
+#include <cmath>
+
+#include <opencv2/imgproc.hpp>
+
+#include "boundedTemplateMatcher.hpp"
+
+using namespace cv;
+using namespace smartautoclicker;
+
+// Returned by computeScore when the window have been dropped before its score is known.
+static const double DROPPED_WINDOW_SCORE = -2;
+
+void BoundedTemplate::update(const cv::Mat& templateImage) {
+    CV_Assert(templateImage.type() == CV_8UC1);
+
+    templateImage.convertTo(zeroMeanPixels, CV_32F);
+    zeroMeanPixels -= mean(zeroMeanPixels);
+    norm = cv::norm(zeroMeanPixels);
+
+    rowsPrefixSums.resize(zeroMeanPixels.rows);
+    rowsSuffixNorms.assign(zeroMeanPixels.rows + 1, 0);
+    double prefixSum = 0;
+    for (int y = 0; y < zeroMeanPixels.rows; y++) {
+        prefixSum += sum(zeroMeanPixels.row(y))[0];
+        rowsPrefixSums[y] = prefixSum;
+    }
+    double suffixSquaredNorm = 0;
+    for (int y = zeroMeanPixels.rows - 1; y >= 0; y--) {
+        double rowNorm = cv::norm(zeroMeanPixels.row(y));
+        suffixSquaredNorm += rowNorm * rowNorm;
+        rowsSuffixNorms[y] = sqrt(suffixSquaredNorm);
+    }
+}
+
+bool BoundedTemplate::isMatchable() const {
+    return !zeroMeanPixels.empty() && norm > FLT_EPSILON;
+}
+
+void BoundedTemplateMatcher::setImage(const cv::Mat& grayImage) {
+    CV_Assert(grayImage.type() == CV_8UC1);
+
+    image = grayImage;
+    integral(grayImage, imageSums, imageSquaredSums, CV_64F, CV_64F);
+}
+
+bool BoundedTemplateMatcher::findNext(const BoundedTemplate& boundedTemplate, const cv::Rect& searchArea, double minScore,
+                                      const std::vector<cv::Rect>& rejectedAreas, cv::Point& scanPosition,
+                                      cv::Point& location, double& score, double& bestScore) const {
+
+    int windowColumns = searchArea.width - boundedTemplate.zeroMeanPixels.cols + 1;
+    int windowRows = searchArea.height - boundedTemplate.zeroMeanPixels.rows + 1;
+
+    for (int y = scanPosition.y; y < windowRows; y++) {
+        for (int x = y == scanPosition.y ? scanPosition.x : 0; x < windowColumns; x++) {
+            bool isRejected = std::any_of(rejectedAreas.begin(), rejectedAreas.end(), [x, y] (const cv::Rect& area) {
+                return area.contains(cv::Point(x, y));
+            });
+            if (isRejected) continue;
+
+            double windowScore = computeScore(boundedTemplate, searchArea.x + x, searchArea.y + y, minScore);
+            bestScore = std::max(bestScore, windowScore);
+            if (windowScore <= minScore) continue;
+
+            // The scores are smooth around a match, and the first window above the minimum is usually on its border.
+            scanPosition = cv::Point(x + 1, y);
+            location = cv::Point(x, y);
+            score = windowScore;
+            climbToLocalMaximum(boundedTemplate, searchArea, location, score);
+            bestScore = std::max(bestScore, score);
+            return true;
+        }
+    }
+
+    scanPosition = cv::Point(0, std::max(windowRows, 0));
+    return false;
+}
+
+double BoundedTemplateMatcher::computeScore(const BoundedTemplate& boundedTemplate, int x, int y, double minScore) const {
+
+    const cv::Mat& templatePixels = boundedTemplate.zeroMeanPixels;
+    int width = templatePixels.cols;
+    int height = templatePixels.rows;
+
+    // The window variance, as the sum of its squared differences with its mean.
+    double windowSum = getAreaSum(imageSums, x, y, width, height);
+    double windowMean = windowSum / (width * height);
+    double windowVariance = std::max(getAreaSum(imageSquaredSums, x, y, width, height) - windowSum * windowMean, 0.);
+    double denominator = sqrt(windowVariance) * boundedTemplate.norm;
+    // A window of a single color can't match, as with cv::matchTemplate.
+    if (denominator < FLT_EPSILON) return 0;
+
+    double requiredCorrelation = minScore * denominator;
+    double correlation = 0;
+    for (int row = 0; row < height; row++) {
+        const uchar* imageRow = image.ptr<uchar>(y + row) + x;
+        const float* templateRow = templatePixels.ptr<float>(row);
+        float rowCorrelation = 0;
+        for (int column = 0; column < width; column++) {
+            rowCorrelation += (float) imageRow[column] * templateRow[column];
+        }
+        correlation += rowCorrelation;
+
+        if (row == height - 1) continue;
+
+        // The correlation of the remaining rows can't exceed the product of their norms, once the window mean is
+        // removed from the image pixels.
+        int remainingRows = height - row - 1;
+        double remainingSum = getAreaSum(imageSums, x, y + row + 1, width, remainingRows);
+        double remainingSquaredSum = getAreaSum(imageSquaredSums, x, y + row + 1, width, remainingRows);
+        double remainingVariance = std::max(
+                remainingSquaredSum - 2 * windowMean * remainingSum + width * remainingRows * windowMean * windowMean,
+                0.);
+
+        double maxCorrelation = correlation - windowMean * boundedTemplate.rowsPrefixSums[row]
+                + sqrt(remainingVariance) * boundedTemplate.rowsSuffixNorms[row + 1];
+        if (maxCorrelation <= requiredCorrelation) return DROPPED_WINDOW_SCORE;
+    }
+
+    double score = (correlation - windowMean * boundedTemplate.rowsPrefixSums[height - 1]) / denominator;
+    return std::min(std::max(score, -1.), 1.);
+}
+
+void BoundedTemplateMatcher::climbToLocalMaximum(const BoundedTemplate& boundedTemplate, const cv::Rect& searchArea,
+                                                 cv::Point& location, double& score) const {
+
+    int windowColumns = searchArea.width - boundedTemplate.zeroMeanPixels.cols + 1;
+    int windowRows = searchArea.height - boundedTemplate.zeroMeanPixels.rows + 1;
+
+    // Each step moves to the best neighbour window, and the scores can't increase forever.
+    for (int step = 0; step < windowColumns + windowRows; step++) {
+        cv::Point bestNeighbour = location;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                cv::Point neighbour(location.x + dx, location.y + dy);
+                if ((dx == 0 && dy == 0) || neighbour.x < 0 || neighbour.y < 0
+                        || neighbour.x >= windowColumns || neighbour.y >= windowRows) continue;
+
+                double neighbourScore = computeScore(
+                        boundedTemplate, searchArea.x + neighbour.x, searchArea.y + neighbour.y, score);
+                if (neighbourScore > score) {
+                    score = neighbourScore;
+                    bestNeighbour = neighbour;
+                }
+            }
+        }
+
+        if (bestNeighbour == location) return;
+        location = bestNeighbour;
+    }
+}
+
+double BoundedTemplateMatcher::getAreaSum(const cv::Mat& sums, int x, int y, int width, int height) {
+    return sums.at<double>(y + height, x + width) - sums.at<double>(y, x + width)
+            - sums.at<double>(y + height, x) + sums.at<double>(y, x);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <vector>
+
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker {
+
+    /** A template image, pre-processed for the BoundedTemplateMatcher. */
+    class BoundedTemplate {
+
+    public:
+        /** The pixels of the template minus their mean, as floats. */
+        cv::Mat zeroMeanPixels;
+        /** The norm of the zero mean pixels. 0 for a template of a single color, that can't be matched. */
+        double norm = 0;
+        /** For each row, the sum of the zero mean pixels of this row and all the previous ones. */
+        std::vector<double> rowsPrefixSums;
+        /** For each row, the norm of the zero mean pixels of this row and all the following ones, ending with 0. */
+        std::vector<double> rowsSuffixNorms;
+
+        /** Pre-process the gray template image. */
+        void update(const cv::Mat& templateImage);
+        /** @return true if the template can be matched, false if it is of a single color. */
+        bool isMatchable() const;
+    };
+
+    /**
+     * Finds the windows of an image with a TM_CCOEFF_NORMED matching score above a minimum, without computing the
+     * whole matching results.
+     *
+     * The windows are scanned in raster order, and the score of each window is computed row by row. After each row, the
+     * part of the score that remains to be computed is bounded with the Cauchy-Schwarz inequality, using the variance of
+     * the remaining rows given by the integral images. The window is dropped as soon as this bound can't reach the
+     * minimum score, and the scan stops at the first window above it.
+     */
+    class BoundedTemplateMatcher {
+
+    private:
+        cv::Mat image;
+        cv::Mat imageSums;
+        cv::Mat imageSquaredSums;
+
+        static double getAreaSum(const cv::Mat& sums, int x, int y, int width, int height);
+        double computeScore(const BoundedTemplate& boundedTemplate, int x, int y, double minScore) const;
+        void climbToLocalMaximum(const BoundedTemplate& boundedTemplate, const cv::Rect& searchArea, cv::Point& location, double& score) const;
+
+    public:
+        /** Set the gray image to search in, and compute its integral images. */
+        void setImage(const cv::Mat& grayImage);
+
+        /**
+         * Find the next window of the search area with a score above the minimum.
+         *
+         * @param boundedTemplate the template to search for.
+         * @param searchArea the area of the image to search in.
+         * @param minScore the score a window must exceed to be found.
+         * @param rejectedAreas the windows with their top left corner in one of those areas, in search area
+         *                      coordinates, are skipped.
+         * @param scanPosition the first window to scan, in search area coordinates. Updated with the window following
+         *                     the found one, or with the end of the search area.
+         * @param location the top left corner of the found window, moved to the local maximum of the scores around it,
+         *                 in search area coordinates.
+         * @param score the score of the found window.
+         * @param bestScore updated with the best score computed during the scan, windows dropped early excepted.
+         *
+         * @return true if a window have been found, false if there is none until the end of the search area.
+         */
+        bool findNext(const BoundedTemplate& boundedTemplate, const cv::Rect& searchArea, double minScore,
+                      const std::vector<cv::Rect>& rejectedAreas, cv::Point& scanPosition, cv::Point& location,
+                      double& score, double& bestScore) const;
+    };
+}
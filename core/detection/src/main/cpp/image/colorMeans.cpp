@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+#include <cstdint>
+
+#if defined(__ARM_NEON)
+#include <arm_neon.h>
+#elif defined(__SSE2__)
+#include <emmintrin.h>
+#endif
+
+#include "colorMeans.hpp"
+
+using namespace cv;
+
+#if defined(__ARM_NEON)
+/** @return the sum of the lanes of the vector. vaddvq_u32 is not available on armeabi-v7a. */
+static inline uint64_t getLanesSum(uint32x4_t values) {
+    uint64x2_t pairSums = vpaddlq_u32(values);
+    return vgetq_lane_u64(pairSums, 0) + vgetq_lane_u64(pairSums, 1);
+}
+#endif
+
+/** Add the red, green and blue values of a row of RGBA pixels to the sums. */
+static void addRowColorSums(const uchar* rgbaRow, int width, uint64_t* sums) {
+    int x = 0;
+
+#if defined(__ARM_NEON)
+    // Each channel is de-interleaved, then its values are added pairwise into wider lanes.
+    uint32x4_t redSums = vdupq_n_u32(0);
+    uint32x4_t greenSums = vdupq_n_u32(0);
+    uint32x4_t blueSums = vdupq_n_u32(0);
+    for (; x <= width - 16; x += 16) {
+        uint8x16x4_t pixels = vld4q_u8(rgbaRow + x * 4);
+        redSums = vpadalq_u16(redSums, vpaddlq_u8(pixels.val[0]));
+        greenSums = vpadalq_u16(greenSums, vpaddlq_u8(pixels.val[1]));
+        blueSums = vpadalq_u16(blueSums, vpaddlq_u8(pixels.val[2]));
+    }
+    sums[0] += getLanesSum(redSums);
+    sums[1] += getLanesSum(greenSums);
+    sums[2] += getLanesSum(blueSums);
+#elif defined(__SSE2__)
+    // Once masked, a channel is the only non zero byte of each pixel, and _mm_sad_epu8 adds all of them in each half.
+    const __m128i redMask = _mm_set1_epi32(0x000000FF);
+    const __m128i greenMask = _mm_set1_epi32(0x0000FF00);
+    const __m128i blueMask = _mm_set1_epi32(0x00FF0000);
+    const __m128i zero = _mm_setzero_si128();
+    __m128i redSums = zero;
+    __m128i greenSums = zero;
+    __m128i blueSums = zero;
+    for (; x <= width - 4; x += 4) {
+        __m128i pixels = _mm_loadu_si128((const __m128i*) (rgbaRow + x * 4));
+        redSums = _mm_add_epi64(redSums, _mm_sad_epu8(_mm_and_si128(pixels, redMask), zero));
+        greenSums = _mm_add_epi64(greenSums, _mm_sad_epu8(_mm_and_si128(pixels, greenMask), zero));
+        blueSums = _mm_add_epi64(blueSums, _mm_sad_epu8(_mm_and_si128(pixels, blueMask), zero));
+    }
+
+    uint64_t halves[2];
+    _mm_storeu_si128((__m128i*) halves, redSums);
+    sums[0] += halves[0] + halves[1];
+    _mm_storeu_si128((__m128i*) halves, greenSums);
+    sums[1] += halves[0] + halves[1];
+    _mm_storeu_si128((__m128i*) halves, blueSums);
+    sums[2] += halves[0] + halves[1];
+#endif
+
+    for (; x < width; x++) {
+        const uchar* pixel = rgbaRow + x * 4;
+        sums[0] += pixel[0];
+        sums[1] += pixel[1];
+        sums[2] += pixel[2];
+    }
+}
+
+cv::Scalar smartautoclicker::getColorMeans(const cv::Mat& rgbaImage) {
+    CV_Assert(rgbaImage.type() == CV_8UC4);
+    if (rgbaImage.empty()) return {};
+
+    uint64_t sums[3] = { 0, 0, 0 };
+    for (int y = 0; y < rgbaImage.rows; y++) {
+        addRowColorSums(rgbaImage.ptr<uchar>(y), rgbaImage.cols, sums);
+    }
+
+    auto pixelCount = (double) rgbaImage.total();
+    return { sums[0] / pixelCount, sums[1] / pixelCount, sums[2] / pixelCount, 0 };
+}
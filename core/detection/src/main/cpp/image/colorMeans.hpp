@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+#pragma once
+
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker {
+
+    /**
+     * Computes the mean of the red, green and blue channels of a RGBA image.
+     *
+     * This is the equivalent of cv::mean, without the alpha channel that is never compared, and with integer sums
+     * vectorized with NEON or SSE2 when available, as OpenCV is built without its own optimizations. It is used to
+     * verify the colors of each candidate of a detection, on a crop of the full size screen image.
+     *
+     * The cost is still proportional to the area of the crop. A summed-area table of the screen would give each mean in
+     * constant time, but it would have to be rebuilt from the whole full size screen on each frame, with 3 channels of
+     * 32 bits per pixel, for a few verified candidates of conditions much smaller than the screen.
+     *
+     * @param rgbaImage the RGBA image, or a crop of it.
+     *
+     * @return the mean of each color channel, in the red, green and blue order. The fourth value is always 0.
+     */
+    cv::Scalar getColorMeans(const cv::Mat& rgbaImage);
+}
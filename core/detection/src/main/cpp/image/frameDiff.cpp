@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <cstring>
+
+#include "frameDiff.hpp"
+
+using namespace cv;
+using namespace smartautoclicker;
+
+// The size of the side of a tile, in pixels of the compared frames.
+static const int TILE_SIZE = 32;
+
+void FrameDiff::update(const cv::Mat& frame, bool keepChanges) {
+    CV_Assert(frame.type() == CV_8UC1);
+
+    if (previousFrame.size() != frame.size()) {
+        setAllDirty(frame);
+        return;
+    }
+
+    int dirtyTop = tileRows, dirtyBottom = -1, dirtyLeft = tileColumns, dirtyRight = -1;
+    if (!keepChanges) {
+        std::fill(dirtyTiles.begin(), dirtyTiles.end(), false);
+        dirtyTileCount = 0;
+    } else if (!dirtyBounds.empty()) {
+        dirtyTop = dirtyBounds.y / TILE_SIZE;
+        dirtyBottom = (dirtyBounds.y + dirtyBounds.height - 1) / TILE_SIZE;
+        dirtyLeft = dirtyBounds.x / TILE_SIZE;
+        dirtyRight = (dirtyBounds.x + dirtyBounds.width - 1) / TILE_SIZE;
+    }
+
+    // Compare the rows of each tile, and copy them for the next frame at the same time.
+    for (int y = 0; y < frame.rows; y++) {
+        const uchar* row = frame.ptr<uchar>(y);
+        uchar* previousRow = previousFrame.ptr<uchar>(y);
+        int tileY = y / TILE_SIZE;
+
+        for (int tileX = 0; tileX < tileColumns; tileX++) {
+            int x = tileX * TILE_SIZE;
+            int width = std::min(TILE_SIZE, frame.cols - x);
+            if (memcmp(row + x, previousRow + x, width) == 0) continue;
+
+            memcpy(previousRow + x, row + x, width);
+            char& isTileDirty = dirtyTiles[tileY * tileColumns + tileX];
+            if (!isTileDirty) dirtyTileCount++;
+            isTileDirty = true;
+            dirtyTop = std::min(dirtyTop, tileY);
+            dirtyBottom = std::max(dirtyBottom, tileY);
+            dirtyLeft = std::min(dirtyLeft, tileX);
+            dirtyRight = std::max(dirtyRight, tileX);
+        }
+    }
+
+    if (dirtyBottom < 0) {
+        dirtyBounds = cv::Rect();
+        return;
+    }
+    dirtyBounds = cv::Rect(
+            dirtyLeft * TILE_SIZE,
+            dirtyTop * TILE_SIZE,
+            (dirtyRight - dirtyLeft + 1) * TILE_SIZE,
+            (dirtyBottom - dirtyTop + 1) * TILE_SIZE
+    ) & cv::Rect(0, 0, frame.cols, frame.rows);
+}
+
+void FrameDiff::invalidate() {
+    previousFrame.release();
+}
+
+bool FrameDiff::isDirty(const cv::Rect& area) const {
+    cv::Rect clippedArea = area & dirtyBounds;
+    if (clippedArea.empty()) return false;
+
+    int lastTileX = (clippedArea.x + clippedArea.width - 1) / TILE_SIZE;
+    int lastTileY = (clippedArea.y + clippedArea.height - 1) / TILE_SIZE;
+    for (int tileY = clippedArea.y / TILE_SIZE; tileY <= lastTileY; tileY++) {
+        for (int tileX = clippedArea.x / TILE_SIZE; tileX <= lastTileX; tileX++) {
+            if (dirtyTiles[tileY * tileColumns + tileX]) return true;
+        }
+    }
+    return false;
+}
+
+const cv::Rect& FrameDiff::getDirtyBounds() const {
+    return dirtyBounds;
+}
+
+double FrameDiff::getDirtyRatio() const {
+    if (dirtyTiles.empty()) return 1;
+    return (double) dirtyTileCount / (double) dirtyTiles.size();
+}
+
+void FrameDiff::setAllDirty(const cv::Mat& frame) {
+    frame.copyTo(previousFrame);
+
+    tileColumns = (frame.cols + TILE_SIZE - 1) / TILE_SIZE;
+    tileRows = (frame.rows + TILE_SIZE - 1) / TILE_SIZE;
+    dirtyTiles.assign(tileColumns * tileRows, true);
+    dirtyTileCount = (int) dirtyTiles.size();
+    dirtyBounds = cv::Rect(0, 0, frame.cols, frame.rows);
+}
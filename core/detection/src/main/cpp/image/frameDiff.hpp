@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <vector>
+
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker {
+
+    /**
+     * Tracks the parts of the screen that have changed between two consecutive frames.
+     *
+     * The frames are split into square tiles, and a tile is dirty when at least one of its pixels is different from
+     * the previous frame. When there is no previous frame, or when its size is different, all tiles are dirty.
+     */
+    class FrameDiff {
+
+    private:
+        cv::Mat previousFrame;
+
+        int tileColumns = 0;
+        int tileRows = 0;
+        std::vector<char> dirtyTiles;
+        int dirtyTileCount = 0;
+        cv::Rect dirtyBounds;
+
+        void setAllDirty(const cv::Mat& frame);
+
+    public:
+        /**
+         * Compare the new frame with the previous one and keep it for the next comparison.
+         * With keepChanges, the tiles already dirty stay dirty: the changes are accumulated since the last update
+         * without it.
+         */
+        void update(const cv::Mat& frame, bool keepChanges = false);
+        /** Forget the previous frame, all tiles will be dirty on the next update. */
+        void invalidate();
+
+        /** @return true if at least one pixel of the area have changed since the previous frame. */
+        bool isDirty(const cv::Rect& area) const;
+        /** @return the smallest area containing all dirty tiles, empty if nothing have changed. */
+        const cv::Rect& getDirtyBounds() const;
+        /** @return the ratio of dirty tiles over all tiles, between 0 and 1. */
+        double getDirtyRatio() const;
+    };
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <cmath>
+
+#if defined(__ARM_NEON)
+#include <arm_neon.h>
+#elif defined(__SSE2__)
+#include <emmintrin.h>
+#endif
+
+#include "scaledGrayConverter.hpp"
+
+using namespace cv;
+using namespace smartautoclicker;
+
+// Fixed point coefficients of the RGB to gray conversion, identical to the ones used by cv::cvtColor.
+static const int GRAY_SHIFT = 14;
+static const int GRAY_ROUND = 1 << (GRAY_SHIFT - 1);
+static const int GRAY_R_COEF = 4899;
+static const int GRAY_G_COEF = 9617;
+static const int GRAY_B_COEF = 1868;
+
+void ScaledGrayConverter::convert(const cv::Mat& fullSizeColor, double ratio, cv::Mat& scaledGray) {
+    CV_Assert(fullSizeColor.type() == CV_8UC4);
+    CV_Assert(ratio > 0 && ratio <= 1);
+
+    Size scaledSize = getScaledSize(fullSizeColor.cols, fullSizeColor.rows, ratio);
+    scaledGray.create(scaledSize, CV_8UC1);
+
+    // No scaling, convert the rows directly into the destination.
+    if (scaledSize.width == fullSizeColor.cols && scaledSize.height == fullSizeColor.rows) {
+        for (int y = 0; y < fullSizeColor.rows; y++) {
+            convertRowToGray(fullSizeColor.ptr<uchar>(y), scaledGray.ptr<uchar>(y), fullSizeColor.cols);
+        }
+        return;
+    }
+
+    updateWeights(fullSizeColor.cols, fullSizeColor.rows, ratio);
+
+    int lastSourceRow = -1;
+    int currentDestinationRow = verticalWeights.front().destinationIndex;
+    std::fill(verticalSums.begin(), verticalSums.end(), 0.f);
+
+    for (const AreaWeight& verticalWeight : verticalWeights) {
+        // Convert and reduce horizontally the source row. A row can be shared by two destination rows.
+        if (verticalWeight.sourceIndex != lastSourceRow) {
+            lastSourceRow = verticalWeight.sourceIndex;
+            convertRowToGray(fullSizeColor.ptr<uchar>(lastSourceRow), grayRow.data(), sourceWidth);
+
+            std::fill(horizontalSums.begin(), horizontalSums.end(), 0.f);
+            for (const AreaWeight& horizontalWeight : horizontalWeights) {
+                horizontalSums[horizontalWeight.destinationIndex] +=
+                        grayRow[horizontalWeight.sourceIndex] * horizontalWeight.weight;
+            }
+        }
+
+        // Destination row is complete, write it.
+        if (verticalWeight.destinationIndex != currentDestinationRow) {
+            uchar* destinationRow = scaledGray.ptr<uchar>(currentDestinationRow);
+            for (int x = 0; x < scaledSize.width; x++) {
+                destinationRow[x] = saturate_cast<uchar>(verticalSums[x]);
+                verticalSums[x] = 0.f;
+            }
+            currentDestinationRow = verticalWeight.destinationIndex;
+        }
+
+        for (int x = 0; x < scaledSize.width; x++) {
+            verticalSums[x] += horizontalSums[x] * verticalWeight.weight;
+        }
+    }
+
+    uchar* destinationRow = scaledGray.ptr<uchar>(currentDestinationRow);
+    for (int x = 0; x < scaledSize.width; x++) {
+        destinationRow[x] = saturate_cast<uchar>(verticalSums[x]);
+    }
+}
+
+cv::Size ScaledGrayConverter::getScaledSize(int width, int height, double ratio) {
+    // Same rounding as cv::resize, but never empty.
+    return {
+        std::max(cvRound(width * ratio), 1),
+        std::max(cvRound(height * ratio), 1),
+    };
+}
+
+void ScaledGrayConverter::updateWeights(int width, int height, double ratio) {
+    if (width == sourceWidth && height == sourceHeight && ratio == scaleRatio) return;
+
+    sourceWidth = width;
+    sourceHeight = height;
+    scaleRatio = ratio;
+
+    Size scaledSize = getScaledSize(width, height, ratio);
+    computeAreaWeights(width, scaledSize.width, (double) width / scaledSize.width, horizontalWeights);
+    computeAreaWeights(height, scaledSize.height, (double) height / scaledSize.height, verticalWeights);
+
+    grayRow.resize(width);
+    horizontalSums.resize(scaledSize.width);
+    verticalSums.resize(scaledSize.width);
+}
+
+void ScaledGrayConverter::computeAreaWeights(int sourceSize, int destinationSize, double scale, std::vector<AreaWeight>& weights) {
+    // Same weights as cv::resize INTER_AREA: each destination pixel is the average of the source area it covers.
+    weights.clear();
+    for (int destinationIndex = 0; destinationIndex < destinationSize; destinationIndex++) {
+        double sourceStart = destinationIndex * scale;
+        double sourceEnd = sourceStart + scale;
+        double cellSize = std::min(scale, sourceSize - sourceStart);
+
+        int firstFullPixel = (int) std::ceil(sourceStart);
+        int lastFullPixel = std::min((int) std::floor(sourceEnd), sourceSize - 1);
+        firstFullPixel = std::min(firstFullPixel, lastFullPixel);
+
+        if (firstFullPixel - sourceStart > 1e-3) {
+            weights.push_back({ destinationIndex, firstFullPixel - 1, (float) ((firstFullPixel - sourceStart) / cellSize) });
+        }
+        for (int sourceIndex = firstFullPixel; sourceIndex < lastFullPixel; sourceIndex++) {
+            weights.push_back({ destinationIndex, sourceIndex, (float) (1.0 / cellSize) });
+        }
+        if (sourceEnd - lastFullPixel > 1e-3) {
+            weights.push_back({
+                destinationIndex,
+                lastFullPixel,
+                (float) (std::min(std::min(sourceEnd - lastFullPixel, 1.), cellSize) / cellSize)
+            });
+        }
+    }
+}
+
+void ScaledGrayConverter::convertRowToGray(const uchar* rgbaRow, uchar* grayRow, int width) {
+    int x = 0;
+
+#if defined(__ARM_NEON)
+    for (; x <= width - 8; x += 8) {
+        uint8x8x4_t pixels = vld4_u8(rgbaRow + x * 4);
+        uint16x8_t r = vmovl_u8(pixels.val[0]);
+        uint16x8_t g = vmovl_u8(pixels.val[1]);
+        uint16x8_t b = vmovl_u8(pixels.val[2]);
+
+        uint32x4_t low = vmull_n_u16(vget_low_u16(r), GRAY_R_COEF);
+        low = vmlal_n_u16(low, vget_low_u16(g), GRAY_G_COEF);
+        low = vmlal_n_u16(low, vget_low_u16(b), GRAY_B_COEF);
+        uint32x4_t high = vmull_n_u16(vget_high_u16(r), GRAY_R_COEF);
+        high = vmlal_n_u16(high, vget_high_u16(g), GRAY_G_COEF);
+        high = vmlal_n_u16(high, vget_high_u16(b), GRAY_B_COEF);
+
+        uint16x8_t gray = vcombine_u16(vrshrn_n_u32(low, GRAY_SHIFT), vrshrn_n_u32(high, GRAY_SHIFT));
+        vst1_u8(grayRow + x, vmovn_u16(gray));
+    }
+#elif defined(__SSE2__)
+    // Each 32 bits lane contains a RGBA pixel. Once masked, R and B, then G and A, are two 16 bits values that can be
+    // multiplied and added with their coefficients by _mm_madd_epi16.
+    const __m128i lowBytesMask = _mm_set1_epi32(0x00FF00FF);
+    const __m128i rbCoefs = _mm_set1_epi32((GRAY_B_COEF << 16) | GRAY_R_COEF);
+    const __m128i gaCoefs = _mm_set1_epi32(GRAY_G_COEF);
+    const __m128i round = _mm_set1_epi32(GRAY_ROUND);
+
+    for (; x <= width - 8; x += 8) {
+        __m128i grays[2];
+        for (int i = 0; i < 2; i++) {
+            __m128i pixels = _mm_loadu_si128((const __m128i*) (rgbaRow + (x + i * 4) * 4));
+            __m128i rb = _mm_and_si128(pixels, lowBytesMask);
+            __m128i ga = _mm_and_si128(_mm_srli_epi32(pixels, 8), lowBytesMask);
+
+            __m128i sum = _mm_add_epi32(_mm_madd_epi16(rb, rbCoefs), _mm_madd_epi16(ga, gaCoefs));
+            grays[i] = _mm_srli_epi32(_mm_add_epi32(sum, round), GRAY_SHIFT);
+        }
+
+        __m128i gray = _mm_packs_epi32(grays[0], grays[1]);
+        _mm_storel_epi64((__m128i*) (grayRow + x), _mm_packus_epi16(gray, gray));
+    }
+#endif
+
+    for (; x < width; x++) {
+        const uchar* pixel = rgbaRow + x * 4;
+        grayRow[x] = (uchar) ((pixel[0] * GRAY_R_COEF + pixel[1] * GRAY_G_COEF + pixel[2] * GRAY_B_COEF + GRAY_ROUND) >> GRAY_SHIFT);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <vector>
+
+#include <opencv2/core/mat.hpp>
+
+namespace smartautoclicker {
+
+    /**
+     * Converts a RGBA image into a downscaled gray image in a single pass.
+     *
+     * This is the equivalent of a cv::cvtColor with COLOR_RGBA2GRAY followed by a cv::resize with INTER_AREA, but
+     * without the full size gray image in between: each source row is converted to gray and immediately accumulated
+     * into the scaled row it belongs to. The gray conversion is vectorized with NEON or SSE2 when available, as
+     * OpenCV is built without its own optimizations.
+     *
+     * The working buffers are kept between the calls, so converting images of the same size and ratio does not
+     * allocate anything.
+     */
+    class ScaledGrayConverter {
+
+    private:
+        /** The contribution of a source pixel to a destination pixel for the area interpolation. */
+        struct AreaWeight {
+            int destinationIndex;
+            int sourceIndex;
+            float weight;
+        };
+
+        int sourceWidth = 0;
+        int sourceHeight = 0;
+        double scaleRatio = 0;
+
+        std::vector<AreaWeight> horizontalWeights;
+        std::vector<AreaWeight> verticalWeights;
+
+        std::vector<uchar> grayRow;
+        std::vector<float> horizontalSums;
+        std::vector<float> verticalSums;
+
+        void updateWeights(int width, int height, double ratio);
+
+        static void computeAreaWeights(int sourceSize, int destinationSize, double scale, std::vector<AreaWeight>& weights);
+        static void convertRowToGray(const uchar* rgbaRow, uchar* grayRow, int width);
+
+    public:
+        /**
+         * Convert the RGBA image into a gray image of scaled size.
+         *
+         * @param fullSizeColor the RGBA image to convert.
+         * @param ratio the scale ratio to apply. Must be lower or equal to 1.
+         * @param scaledGray receives the converted image. Reallocated only if its size or type is not correct.
+         */
+        void convert(const cv::Mat& fullSizeColor, double ratio, cv::Mat& scaledGray);
+
+        /** @return the size of the scaled image for the provided source size and ratio. */
+        static cv::Size getScaledSize(int width, int height, double ratio);
+    };
+}
@@ -26,86 +26,279 @@
 using namespace smartautoclicker;
 
 /**
- * This function is a helper providing the boiler plate code to return the native object from Java object.
- * The "nativePtr" is reached from this code, casted to Detector's pointer and returned. This will be used in
- * all our native methods wrappers to recover the object before invoking it's methods.
+ * This function is a helper providing the boiler plate code to return the native object from its pointer.
+ * The "nativePtr" is kept by the Java object and provided to each native method, avoiding any field lookup. It is
+ * casted to Detector's pointer and returned.
  */
-static Detector *getObject(JNIEnv *env, jobject self) {
-    jclass cls = env->GetObjectClass(self);
-    if (!cls)
-        env->FatalError("GetObjectClass failed");
+static inline Detector *getObject(jlong nativePtr) {
+    return reinterpret_cast<Detector *>(nativePtr);
+}
 
-    jfieldID nativeObjectPointerID = env->GetFieldID(cls, "nativePtr", "J");
-    if (!nativeObjectPointerID)
-        env->FatalError("GetFieldID failed");
+/** @return the address of a direct buffer provided by the Java side. */
+template<typename T>
+static T* getDirectBuffer(JNIEnv *env, jobject buffer) {
+    auto* address = static_cast<T*>(env->GetDirectBufferAddress(buffer));
+    if (!address)
+        env->FatalError("GetDirectBufferAddress failed");
 
-    jlong nativeObjectPointer = env->GetLongField(self, nativeObjectPointerID);
-    return reinterpret_cast<Detector *>(nativeObjectPointer);
+    return address;
 }
 
-static void setDetectionResult(JNIEnv *env, jobject self, DetectionResult result) {
-    jclass cls = env->GetObjectClass(self);
-    if (!cls)
-        env->FatalError("GetObjectClass failed");
-
-    jmethodID methodId = env->GetMethodID(cls, "setResults", "(ZIID)V");
+/**
+ * Write the results of a single condition detection into the direct buffers provided by the Java side, using the same
+ * layout than the results of a condition in a DetectionBatch.
+ */
+static void setDetectionResult(
+        JNIEnv *env,
+        jobject resultBuffer,
+        jobject confidenceBuffer,
+        jobject scaleBuffer,
+        const DetectionResult& result
+) {
+    auto* results = getDirectBuffer<jint>(env, resultBuffer);
+    auto* confidence = getDirectBuffer<jdouble>(env, confidenceBuffer);
+    auto* scale = getDirectBuffer<jdouble>(env, scaleBuffer);
 
-    env->CallVoidMethod(self, methodId, result.isDetected, (int) result.centerX, (int) result.centerY, result.maxVal);
+    results[CONDITION_RESULT_STATE] = result.isDetected ? CONDITION_STATE_DETECTED : CONDITION_STATE_NOT_DETECTED;
+    results[CONDITION_RESULT_CENTER_X] = (jint) result.centerX;
+    results[CONDITION_RESULT_CENTER_Y] = (jint) result.centerY;
+    confidence[0] = result.maxVal;
+    scale[0] = result.scale;
 }
 
 extern "C" {
     JNIEXPORT jlong JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_newDetector(
             JNIEnv *env,
-            jobject self
+            jclass clazz
     ) {
         return reinterpret_cast<jlong>(new Detector());
     }
 
     JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateScreenMetrics(
             JNIEnv *env,
-            jobject self,
+            jclass clazz,
+            jlong nativePtr,
             jobject screenBitmap,
             jdouble detectionQuality
     ) {
-        getObject(env, self)->setScreenMetrics(env, screenBitmap, detectionQuality);
+        getObject(nativePtr)->setScreenMetrics(env, screenBitmap, detectionQuality);
     }
 
     JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_setScreenImage(
             JNIEnv *env,
-            jobject self,
+            jclass clazz,
+            jlong nativePtr,
             jobject screenBitmap
     ) {
-        getObject(env, self)->setScreenImage(env, screenBitmap);
+        getObject(nativePtr)->setScreenImage(env, screenBitmap);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateScreenSizeMetrics(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jint screenWidth,
+            jint screenHeight,
+            jdouble detectionQuality
+    ) {
+        getObject(nativePtr)->setScreenMetrics(screenWidth, screenHeight, detectionQuality);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_setScreenImageBuffer(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jobject screenBuffer,
+            jint width,
+            jint height,
+            jint rowStride
+    ) {
+        getObject(nativePtr)->setScreenImage(env, screenBuffer, width, height, rowStride);
+    }
+
+    JNIEXPORT jdouble JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_getScreenChangeRatio(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr
+    ) {
+        return getObject(nativePtr)->getScreenChangeRatio();
     }
 
     JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_detect(
             JNIEnv *env,
-            jobject self,
+            jclass clazz,
+            jlong nativePtr,
             jobject conditionBitmap,
             jint threshold,
-            jobject result
+            jobject resultBuffer,
+            jobject confidenceBuffer,
+            jobject scaleBuffer
     ) {
-        setDetectionResult(env, result, getObject(env, self)->detectCondition(env, conditionBitmap, threshold));
+        setDetectionResult(
+                env,
+                resultBuffer,
+                confidenceBuffer,
+                scaleBuffer,
+                getObject(nativePtr)->detectCondition(env, conditionBitmap, threshold));
     }
 
     JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_detectAt(
             JNIEnv *env,
-            jobject self,
+            jclass clazz,
+            jlong nativePtr,
             jobject conditionBitmap,
             jint x,
             jint y,
             jint width,
             jint height,
             jint threshold,
-            jobject result
+            jobject resultBuffer,
+            jobject confidenceBuffer,
+            jobject scaleBuffer
+    ) {
+        setDetectionResult(
+                env,
+                resultBuffer,
+                confidenceBuffer,
+                scaleBuffer,
+                getObject(nativePtr)->detectCondition(env, conditionBitmap, x, y, width, height, threshold));
+    }
+
+    JNIEXPORT jint JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_detectMatches(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jint conditionHandle,
+            jint threshold,
+            jint maxCount,
+            jobject positionsBuffer,
+            jobject confidencesBuffer
+    ) {
+        return getObject(nativePtr)->detectAllMatches(
+                env,
+                conditionHandle,
+                threshold,
+                maxCount,
+                getDirectBuffer<jint>(env, positionsBuffer),
+                getDirectBuffer<jdouble>(env, confidencesBuffer));
+    }
+
+    JNIEXPORT jint JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_detectMatchesAt(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jint conditionHandle,
+            jint x,
+            jint y,
+            jint width,
+            jint height,
+            jint threshold,
+            jint maxCount,
+            jobject positionsBuffer,
+            jobject confidencesBuffer
+    ) {
+        return getObject(nativePtr)->detectAllMatches(
+                env,
+                conditionHandle,
+                x,
+                y,
+                width,
+                height,
+                threshold,
+                maxCount,
+                getDirectBuffer<jint>(env, positionsBuffer),
+                getDirectBuffer<jdouble>(env, confidencesBuffer));
+    }
+
+    JNIEXPORT jint JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_registerConditionBitmap(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jobject conditionBitmap
+    ) {
+        return getObject(nativePtr)->registerCondition(env, conditionBitmap);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_clearRegisteredConditions(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr
+    ) {
+        getObject(nativePtr)->clearConditions();
+    }
+
+    JNIEXPORT jint JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_detectBatch(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jobject conditionsParams,
+            jint conditionCount,
+            jobject groupsParams,
+            jint groupCount,
+            jobject conditionsResults,
+            jobject conditionsConfidences,
+            jobject conditionsScales,
+            jobject groupsResults
+    ) {
+        // The buffers are accessed directly, no copy from or to the Java side is needed.
+        DetectionBatch batch {
+            getDirectBuffer<jint>(env, conditionsParams),
+            conditionCount,
+            getDirectBuffer<jint>(env, groupsParams),
+            groupCount,
+            getDirectBuffer<jint>(env, conditionsResults),
+            getDirectBuffer<jdouble>(env, conditionsConfidences),
+            getDirectBuffer<jdouble>(env, conditionsScales),
+            getDirectBuffer<jint>(env, groupsResults),
+        };
+
+        return getObject(nativePtr)->detectConditions(env, batch);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateDetectionWorkerCount(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jint workerCount
+    ) {
+        getObject(nativePtr)->setDetectionWorkerCount(workerCount);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateMaxColorVerificationCount(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jint count
+    ) {
+        getObject(nativePtr)->setMaxColorVerificationCount(count);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateColorPrefilterEnabled(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jboolean enabled
+    ) {
+        getObject(nativePtr)->setColorPrefilterEnabled(enabled);
+    }
+
+    JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_updateMatchingScales(
+            JNIEnv *env,
+            jclass clazz,
+            jlong nativePtr,
+            jdoubleArray scales
     ) {
-        setDetectionResult(env, result, getObject(env, self)->detectCondition(env, conditionBitmap, x, y, width, height, threshold));
+        jsize count = env->GetArrayLength(scales);
+        jdouble* scalesElements = env->GetDoubleArrayElements(scales, nullptr);
+        getObject(nativePtr)->setMatchingScales(scalesElements, count);
+        env->ReleaseDoubleArrayElements(scales, scalesElements, JNI_ABORT);
     }
 
     JNIEXPORT void JNICALL Java_com_buzbuz_smartautoclicker_core_detection_NativeDetector_deleteDetector(
             JNIEnv *env,
-            jobject self
+            jclass clazz,
+            jlong nativePtr
     ) {
-        delete getObject(env, self);
+        delete getObject(nativePtr);
     }
 }
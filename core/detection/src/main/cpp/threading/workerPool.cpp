@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "workerPool.hpp"
+
+using namespace smartautoclicker;
+
+WorkerPool::~WorkerPool() {
+    stopThreads();
+}
+
+void WorkerPool::setWorkerCount(int workerCount) {
+    if (workerCount < 1) workerCount = 1;
+    if (workerCount == getWorkerCount()) return;
+
+    stopThreads();
+
+    // The new workers must only execute the jobs started after their creation, not the last one executed.
+    unsigned long startJobGeneration;
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        startJobGeneration = jobGeneration;
+    }
+
+    // The calling thread is one of the workers.
+    for (int i = 0; i < workerCount - 1; i++) {
+        threads.emplace_back(&WorkerPool::workerLoop, this, startJobGeneration);
+    }
+}
+
+int WorkerPool::getWorkerCount() const {
+    return (int) threads.size() + 1;
+}
+
+void WorkerPool::run(int taskCount, const std::function<void(int)>& task) {
+    if (taskCount <= 0) return;
+
+    // No need to wake up the other threads for a single task.
+    if (threads.empty() || taskCount == 1) {
+        for (int taskIndex = 0; taskIndex < taskCount; taskIndex++) task(taskIndex);
+        return;
+    }
+
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        currentJob = &task;
+        currentJobTaskCount = taskCount;
+        nextTaskIndex = 0;
+        runningThreadCount = (int) threads.size();
+        jobGeneration++;
+    }
+    jobAvailable.notify_all();
+
+    executeTasks();
+
+    std::unique_lock<std::mutex> lock(mutex);
+    jobCompleted.wait(lock, [this] { return runningThreadCount == 0; });
+    currentJob = nullptr;
+}
+
+void WorkerPool::workerLoop(unsigned long startJobGeneration) {
+    unsigned long lastJobGeneration = startJobGeneration;
+
+    while (true) {
+        {
+            std::unique_lock<std::mutex> lock(mutex);
+            jobAvailable.wait(lock, [this, lastJobGeneration] {
+                return isStopping || jobGeneration != lastJobGeneration;
+            });
+            if (isStopping) return;
+            lastJobGeneration = jobGeneration;
+        }
+
+        executeTasks();
+
+        {
+            std::lock_guard<std::mutex> lock(mutex);
+            runningThreadCount--;
+        }
+        jobCompleted.notify_one();
+    }
+}
+
+void WorkerPool::executeTasks() {
+    int taskIndex;
+    while ((taskIndex = nextTaskIndex.fetch_add(1)) < currentJobTaskCount) {
+        (*currentJob)(taskIndex);
+    }
+}
+
+void WorkerPool::stopThreads() {
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        isStopping = true;
+    }
+    jobAvailable.notify_all();
+
+    for (auto& thread : threads) thread.join();
+    threads.clear();
+
+    std::lock_guard<std::mutex> lock(mutex);
+    isStopping = false;
+}
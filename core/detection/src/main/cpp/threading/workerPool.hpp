@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <atomic>
+#include <condition_variable>
+#include <functional>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+namespace smartautoclicker {
+
+    /**
+     * A fixed set of threads executing the tasks of a job in parallel.
+     *
+     * A job is a number of tasks identified by their index. The tasks are picked in increasing index order by the
+     * workers, and the calling thread takes part in the execution, so a pool with a worker count of 1 does not create
+     * any thread and executes the job sequentially.
+     */
+    class WorkerPool {
+
+    private:
+        std::vector<std::thread> threads;
+
+        std::mutex mutex;
+        std::condition_variable jobAvailable;
+        std::condition_variable jobCompleted;
+
+        const std::function<void(int)>* currentJob = nullptr;
+        int currentJobTaskCount = 0;
+        std::atomic<int> nextTaskIndex { 0 };
+        unsigned long jobGeneration = 0;
+        int runningThreadCount = 0;
+        bool isStopping = false;
+
+        void workerLoop(unsigned long startJobGeneration);
+        void executeTasks();
+        void stopThreads();
+
+    public:
+
+        WorkerPool() = default;
+        ~WorkerPool();
+
+        WorkerPool(const WorkerPool&) = delete;
+        WorkerPool& operator=(const WorkerPool&) = delete;
+
+        /** Set the number of workers executing the jobs, including the calling thread. */
+        void setWorkerCount(int workerCount);
+        int getWorkerCount() const;
+
+        /** Execute all tasks of a job, and wait until they are all completed. */
+        void run(int taskCount, const std::function<void(int)>& task);
+    };
+}
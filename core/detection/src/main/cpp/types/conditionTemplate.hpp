@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <vector>
+
+#include <opencv2/core/mat.hpp>
+
+#include "../image/boundedTemplateMatcher.hpp"
+
+namespace smartautoclicker {
+
+    /** A condition image resized at one of the matching scales of the multi-scale detections. */
+    struct ConditionScale {
+        /** The scale of the condition, relatively to its captured size. */
+        double scale;
+        /** The scaled gray image, resized at this scale. */
+        cv::Mat scaledGray;
+        /** The size of the condition on the full size screen at this scale. */
+        cv::Size fullSize;
+    };
+
+    /**
+     * A condition image, pre-processed for the detection.
+     * The scaled gray images depends on the scale ratio of the screen, and must be updated each time it changes.
+     */
+    class ConditionTemplate {
+
+    public:
+        cv::Mat fullSizeColor;
+        cv::Mat scaledGray;
+        /** The scaled gray image, followed by its successive halvings for the coarse to fine detection. */
+        std::vector<cv::Mat> scaledGrayPyramid;
+        /** The scaled gray image, pre-processed for the detections with a strict threshold. */
+        BoundedTemplate scaledGrayBounded;
+        /**
+         * The scaled gray image at each matching scale. The first one is the condition at its captured size, sharing
+         * the pixels of scaledGray, followed by the additional scales of the multi-scale detections.
+         */
+        std::vector<ConditionScale> scales;
+        cv::Scalar colorMeans;
+        /** The mean color of a part of the pixels of the condition, compared with the screen before the matching. */
+        cv::Scalar colorSignature;
+    };
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#pragma once
+
+#include <jni.h>
+
+namespace smartautoclicker {
+
+    // Layout of the primitive arrays of a detection batch.
+    // Those values must be kept in sync with the ones in DetectionBatch.kt.
+
+    const int CONDITION_PARAMS_SIZE = 8;
+    const int CONDITION_PARAM_X = 0;
+    const int CONDITION_PARAM_Y = 1;
+    const int CONDITION_PARAM_WIDTH = 2;
+    const int CONDITION_PARAM_HEIGHT = 3;
+    const int CONDITION_PARAM_THRESHOLD = 4;
+    const int CONDITION_PARAM_FLAGS = 5;
+    const int CONDITION_PARAM_HANDLE = 6;
+    const int CONDITION_PARAM_SHARED_DETECTION = 7;
+
+    const int CONDITION_FLAG_WHOLE_SCREEN = 1;
+    const int CONDITION_FLAG_SHOULD_BE_DETECTED = 1 << 1;
+    const int CONDITION_FLAG_MULTI_SCALE = 1 << 2;
+    const int CONDITION_FLAG_TRACKED = 1 << 3;
+
+    const int CONDITION_RESULTS_SIZE = 4;
+    const int CONDITION_RESULT_STATE = 0;
+    const int CONDITION_RESULT_CENTER_X = 1;
+    const int CONDITION_RESULT_CENTER_Y = 2;
+    const int CONDITION_RESULT_DURATION = 3;
+
+    const int CONDITION_STATE_NOT_EVALUATED = 0;
+    const int CONDITION_STATE_NOT_DETECTED = 1;
+    const int CONDITION_STATE_DETECTED = 2;
+
+    const int GROUP_PARAMS_SIZE = 3;
+    const int GROUP_PARAM_FIRST_CONDITION = 0;
+    const int GROUP_PARAM_CONDITION_COUNT = 1;
+    const int GROUP_PARAM_FLAGS = 2;
+
+    const int GROUP_FLAG_REQUIRE_ALL = 1;
+    const int GROUP_FLAG_SKIPPED = 1 << 1;
+
+    const int GROUP_STATE_NOT_EVALUATED = 0;
+    const int GROUP_STATE_NOT_FULFILLED = 1;
+    const int GROUP_STATE_FULFILLED = 2;
+
+    const int NO_GROUP_FULFILLED = -1;
+
+    /** The direct buffers of a detection batch, as provided by the Java side. */
+    struct DetectionBatch {
+        const jint* conditionsParams;
+        int conditionCount;
+        const jint* groupsParams;
+        int groupCount;
+
+        jint* conditionsResults;
+        jdouble* conditionsConfidences;
+        jdouble* conditionsScales;
+        jint* groupsResults;
+    };
+}
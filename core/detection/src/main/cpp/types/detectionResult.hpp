@@ -25,6 +25,8 @@ namespace smartautoclicker {
         bool isDetected;
         double centerX;
         double centerY;
+        /** The scale of the condition that have been detected, relatively to its captured size. */
+        double scale = 1;
 
         double minVal;
         double maxVal;
@@ -35,6 +37,7 @@ namespace smartautoclicker {
             isDetected = false;
             centerX = 0;
             centerY = 0;
+            scale = 1;
             minVal = 0;
             maxVal = 0;
             minLoc.x = 0;
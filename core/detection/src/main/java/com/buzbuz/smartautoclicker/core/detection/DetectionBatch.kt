@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.detection
+
+import android.graphics.Rect
+
+import androidx.annotation.VisibleForTesting
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.DoubleBuffer
+import java.nio.IntBuffer
+
+/**
+ * A set of conditions to be detected on the current screen with a single call to [ImageDetector.detectConditions].
+ * The conditions are referenced by the handle returned by [ImageDetector.registerCondition].
+ *
+ * Conditions are added into groups, and are evaluated in their insertion order. A group requires either all of its
+ * conditions to be fulfilled, or only one of them, and its evaluation stops as soon as its result is known. The
+ * evaluation of the batch stops with the first fulfilled group.
+ *
+ * Identical conditions, with the same image, area, threshold and detection flags, are only detected once per
+ * detection: they share the results of the first one evaluated, even if they are in different groups or if only one of
+ * them should be detected.
+ *
+ * All values are kept in direct buffers in the native byte order, accessed by the native code without any copy. This
+ * allows to reuse the same batch for each screen image without any allocation once it has reached its final size.
+ */
+class DetectionBatch {
+
+    /** The detection parameters of the conditions. See CONDITION_PARAM_* for the content. */
+    internal var conditionsParams: IntBuffer = allocateIntBuffer(DEFAULT_CAPACITY * CONDITION_PARAMS_SIZE)
+        private set
+    /** The detection results of the conditions. See CONDITION_RESULT_* for the content. */
+    internal var conditionsResults: IntBuffer = allocateIntBuffer(DEFAULT_CAPACITY * CONDITION_RESULTS_SIZE)
+        private set
+    /** The confidence rates of the conditions detection. */
+    internal var conditionsConfidences: DoubleBuffer = allocateDoubleBuffer(DEFAULT_CAPACITY)
+        private set
+    /** The scales of the detected conditions, relatively to their captured size. */
+    internal var conditionsScales: DoubleBuffer = allocateDoubleBuffer(DEFAULT_CAPACITY)
+        private set
+    /** The parameters of the groups. See GROUP_PARAM_* for the content. */
+    internal var groupsParams: IntBuffer = allocateIntBuffer(DEFAULT_CAPACITY * GROUP_PARAMS_SIZE)
+        private set
+    /** The results of the groups. One of the GROUP_STATE_* values. */
+    internal var groupsResults: IntBuffer = allocateIntBuffer(DEFAULT_CAPACITY)
+        private set
+
+    /** The number of conditions in this batch. */
+    var conditionCount: Int = 0
+        private set
+    /** The number of groups in this batch. */
+    var groupCount: Int = 0
+        private set
+
+    /** Remove all conditions and groups from this batch. */
+    fun clear() {
+        conditionCount = 0
+        groupCount = 0
+    }
+
+    /**
+     * Start a new group of conditions.
+     * All conditions added after this call, and until the next one, will be in this group.
+     *
+     * @param requireAll true if all conditions must be fulfilled for the group to be fulfilled, false if only one is.
+     * @return the index of the group.
+     */
+    fun startGroup(requireAll: Boolean): Int {
+        if (groupCount == groupsResults.capacity()) growGroups()
+
+        val offset = groupCount * GROUP_PARAMS_SIZE
+        groupsParams.put(offset + GROUP_PARAM_FIRST_CONDITION, conditionCount)
+        groupsParams.put(offset + GROUP_PARAM_CONDITION_COUNT, 0)
+        groupsParams.put(offset + GROUP_PARAM_FLAGS, if (requireAll) GROUP_FLAG_REQUIRE_ALL else 0)
+        groupsResults.put(groupCount, GROUP_STATE_NOT_EVALUATED)
+
+        return groupCount++
+    }
+
+    /**
+     * Mark the current group as skipped.
+     * It will not be evaluated, and will be considered as not fulfilled.
+     */
+    fun skipGroup() {
+        if (groupCount == 0) throw IllegalStateException("No group started")
+        val flagsIndex = (groupCount - 1) * GROUP_PARAMS_SIZE + GROUP_PARAM_FLAGS
+        groupsParams.put(flagsIndex, groupsParams[flagsIndex] or GROUP_FLAG_SKIPPED)
+    }
+
+    /**
+     * Add a condition to be detected in the whole screen to the current group.
+     *
+     * @param conditionHandle the handle of the registered condition to detect in the screen.
+     * @param threshold the allowed error threshold allowed for the condition.
+     * @param shouldBeDetected true if the condition must be detected to be fulfilled, false if it must not.
+     * @param isMultiScale true to also search the condition at the scales set with
+     *                     [ImageDetector.setMatchingScales] when it is not found at its captured size.
+     * @param isTracked true to first search the condition around its position on the previous detection, moved by its
+     *                  last motion, and in the whole screen only if it isn't found there. The condition must be at the
+     *                  same index in the batch on each detection to be tracked.
+     *
+     * @return the index of the condition in the batch.
+     */
+    fun addCondition(
+        conditionHandle: Int,
+        threshold: Int,
+        shouldBeDetected: Boolean,
+        isMultiScale: Boolean = false,
+        isTracked: Boolean = false,
+    ): Int =
+        addCondition(
+            conditionHandle, 0, 0, 0, 0, threshold, shouldBeDetected, isWholeScreen = true, isMultiScale, isTracked,
+        )
+
+    /**
+     * Add a condition to be detected at a specific position to the current group.
+     *
+     * @param conditionHandle the handle of the registered condition to detect in the screen.
+     * @param position the position on the screen where the condition should be detected.
+     * @param threshold the allowed error threshold allowed for the condition.
+     * @param shouldBeDetected true if the condition must be detected to be fulfilled, false if it must not.
+     * @param isMultiScale true to also search the condition at the scales set with
+     *                     [ImageDetector.setMatchingScales] when it is not found at its captured size.
+     *
+     * @return the index of the condition in the batch.
+     */
+    fun addCondition(
+        conditionHandle: Int,
+        position: Rect,
+        threshold: Int,
+        shouldBeDetected: Boolean,
+        isMultiScale: Boolean = false,
+    ): Int =
+        addCondition(
+            conditionHandle, position.left, position.top, position.width(), position.height(), threshold,
+            shouldBeDetected, isWholeScreen = false, isMultiScale, isTracked = false,
+        )
+
+    /** @return the handle of the condition at the given index. */
+    fun getConditionHandle(conditionIndex: Int): Int =
+        conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_HANDLE]
+
+    /** @return true if the condition at the given index is also searched at the other matching scales. */
+    fun isConditionMultiScale(conditionIndex: Int): Boolean =
+        conditionsParams[conditionIndex * CONDITION_PARAMS_SIZE + CONDITION_PARAM_FLAGS] and CONDITION_FLAG_MULTI_SCALE != 0
+
+    /** @return true if the group at the given index has been evaluated and is fulfilled, false if not. */
+    fun isGroupFulfilled(groupIndex: Int): Boolean =
+        groupsResults[groupIndex] == GROUP_STATE_FULFILLED
+
+    /** @return the index of the first condition of the group at the given index. */
+    fun getGroupFirstCondition(groupIndex: Int): Int =
+        groupsParams[groupIndex * GROUP_PARAMS_SIZE + GROUP_PARAM_FIRST_CONDITION]
+
+    /** @return the number of conditions of the group at the given index. */
+    fun getGroupConditionCount(groupIndex: Int): Int =
+        groupsParams[groupIndex * GROUP_PARAMS_SIZE + GROUP_PARAM_CONDITION_COUNT]
+
+    /** @return true if all conditions of the group at the given index must be fulfilled, false if only one must be. */
+    fun isGroupRequiringAll(groupIndex: Int): Boolean =
+        groupsParams[groupIndex * GROUP_PARAMS_SIZE + GROUP_PARAM_FLAGS] and GROUP_FLAG_REQUIRE_ALL != 0
+
+    /** @return true if the group at the given index was skipped, false if not. */
+    fun isGroupSkipped(groupIndex: Int): Boolean =
+        groupsParams[groupIndex * GROUP_PARAMS_SIZE + GROUP_PARAM_FLAGS] and GROUP_FLAG_SKIPPED != 0
+
+    /** @return true if the condition at the given index has been evaluated during the last detection. */
+    fun isConditionEvaluated(conditionIndex: Int): Boolean =
+        conditionsResults[conditionIndex * CONDITION_RESULTS_SIZE + CONDITION_RESULT_STATE] != CONDITION_STATE_NOT_EVALUATED
+
+    /**
+     * Get the time spent to detect a condition during the last detection.
+     * Conditions sharing the result of an identical one, or not evaluated, have no detection time.
+     *
+     * @param conditionIndex the index of the condition in the batch.
+     * @return the detection time, in microseconds.
+     */
+    fun getConditionDuration(conditionIndex: Int): Int =
+        conditionsResults[conditionIndex * CONDITION_RESULTS_SIZE + CONDITION_RESULT_DURATION]
+
+    /**
+     * Get the results of the detection for a condition.
+     *
+     * @param conditionIndex the index of the condition in the batch.
+     * @param result the object to update with the results.
+     */
+    fun getConditionResult(conditionIndex: Int, result: DetectionResult) {
+        readConditionResult(conditionsResults, conditionsConfidences, conditionsScales, conditionIndex, result)
+    }
+
+    /**
+     * Set the results of the detection for a condition, as the native detection does.
+     * Only intended for the tests of the classes using a mocked [ImageDetector].
+     *
+     * @param conditionIndex the index of the condition in the batch.
+     * @param result the results of the detection of the condition.
+     */
+    @VisibleForTesting
+    fun setConditionResult(conditionIndex: Int, result: DetectionResult) {
+        val resultOffset = conditionIndex * CONDITION_RESULTS_SIZE
+        conditionsResults.put(
+            resultOffset + CONDITION_RESULT_STATE,
+            if (result.isDetected) CONDITION_STATE_DETECTED else CONDITION_STATE_NOT_DETECTED,
+        )
+        conditionsResults.put(resultOffset + CONDITION_RESULT_CENTER_X, result.position.x)
+        conditionsResults.put(resultOffset + CONDITION_RESULT_CENTER_Y, result.position.y)
+        conditionsResults.put(resultOffset + CONDITION_RESULT_DURATION, 0)
+        conditionsConfidences.put(conditionIndex, result.confidenceRate)
+        conditionsScales.put(conditionIndex, result.scale)
+    }
+
+    /**
+     * Set the result of the evaluation of a group, as the native detection does.
+     * Only intended for the tests of the classes using a mocked [ImageDetector].
+     *
+     * @param groupIndex the index of the group in the batch.
+     * @param isFulfilled true if the group is fulfilled, false if not.
+     */
+    @VisibleForTesting
+    fun setGroupResult(groupIndex: Int, isFulfilled: Boolean) {
+        groupsResults.put(groupIndex, if (isFulfilled) GROUP_STATE_FULFILLED else GROUP_STATE_NOT_FULFILLED)
+    }
+
+    private fun addCondition(
+        conditionHandle: Int,
+        x: Int,
+        y: Int,
+        width: Int,
+        height: Int,
+        threshold: Int,
+        shouldBeDetected: Boolean,
+        isWholeScreen: Boolean,
+        isMultiScale: Boolean,
+        isTracked: Boolean,
+    ): Int {
+        if (groupCount == 0) throw IllegalStateException("No group started")
+        if (conditionCount == conditionsConfidences.capacity()) growConditions()
+
+        val offset = conditionCount * CONDITION_PARAMS_SIZE
+        conditionsParams.put(offset + CONDITION_PARAM_X, x)
+        conditionsParams.put(offset + CONDITION_PARAM_Y, y)
+        conditionsParams.put(offset + CONDITION_PARAM_WIDTH, width)
+        conditionsParams.put(offset + CONDITION_PARAM_HEIGHT, height)
+        conditionsParams.put(offset + CONDITION_PARAM_THRESHOLD, threshold)
+        conditionsParams.put(
+            offset + CONDITION_PARAM_FLAGS,
+            (if (isWholeScreen) CONDITION_FLAG_WHOLE_SCREEN else 0) or
+                    (if (shouldBeDetected) CONDITION_FLAG_SHOULD_BE_DETECTED else 0) or
+                    (if (isMultiScale) CONDITION_FLAG_MULTI_SCALE else 0) or
+                    (if (isTracked) CONDITION_FLAG_TRACKED else 0),
+        )
+        conditionsParams.put(offset + CONDITION_PARAM_HANDLE, conditionHandle)
+        conditionsParams.put(offset + CONDITION_PARAM_SHARED_DETECTION, findSharedDetection(conditionCount))
+
+        val conditionCountIndex = (groupCount - 1) * GROUP_PARAMS_SIZE + GROUP_PARAM_CONDITION_COUNT
+        groupsParams.put(conditionCountIndex, groupsParams[conditionCountIndex] + 1)
+
+        return conditionCount++
+    }
+
+    /**
+     * Find the first condition of the batch with the same detection than the condition at the given index.
+     * Whether the conditions should be detected or not can differ, it is only used once the detection is made.
+     *
+     * @param conditionIndex the index of the condition to find the identical condition of.
+     * @return the index of the first identical condition, or the provided index if there is none.
+     */
+    private fun findSharedDetection(conditionIndex: Int): Int {
+        val offset = conditionIndex * CONDITION_PARAMS_SIZE
+        val flags = conditionsParams[offset + CONDITION_PARAM_FLAGS] and CONDITION_FLAG_SHOULD_BE_DETECTED.inv()
+
+        for (otherIndex in 0 until conditionIndex) {
+            val otherOffset = otherIndex * CONDITION_PARAMS_SIZE
+            if (conditionsParams[otherOffset + CONDITION_PARAM_HANDLE] != conditionsParams[offset + CONDITION_PARAM_HANDLE]
+                || conditionsParams[otherOffset + CONDITION_PARAM_SHARED_DETECTION] != otherIndex) continue
+
+            val otherFlags = conditionsParams[otherOffset + CONDITION_PARAM_FLAGS] and CONDITION_FLAG_SHOULD_BE_DETECTED.inv()
+            if (otherFlags == flags
+                && conditionsParams[otherOffset + CONDITION_PARAM_X] == conditionsParams[offset + CONDITION_PARAM_X]
+                && conditionsParams[otherOffset + CONDITION_PARAM_Y] == conditionsParams[offset + CONDITION_PARAM_Y]
+                && conditionsParams[otherOffset + CONDITION_PARAM_WIDTH] == conditionsParams[offset + CONDITION_PARAM_WIDTH]
+                && conditionsParams[otherOffset + CONDITION_PARAM_HEIGHT] == conditionsParams[offset + CONDITION_PARAM_HEIGHT]
+                && conditionsParams[otherOffset + CONDITION_PARAM_THRESHOLD] == conditionsParams[offset + CONDITION_PARAM_THRESHOLD]
+            ) return otherIndex
+        }
+
+        return conditionIndex
+    }
+
+    private fun growConditions() {
+        val newCapacity = conditionsConfidences.capacity() * 2
+        conditionsParams = conditionsParams.copyOf(newCapacity * CONDITION_PARAMS_SIZE)
+        conditionsResults = conditionsResults.copyOf(newCapacity * CONDITION_RESULTS_SIZE)
+        conditionsConfidences = conditionsConfidences.copyOf(newCapacity)
+        conditionsScales = conditionsScales.copyOf(newCapacity)
+    }
+
+    private fun growGroups() {
+        val newCapacity = groupsResults.capacity() * 2
+        groupsParams = groupsParams.copyOf(newCapacity * GROUP_PARAMS_SIZE)
+        groupsResults = groupsResults.copyOf(newCapacity)
+    }
+}
+
+/**
+ * Read the results of the detection of a condition from buffers using the layout of the batch conditions results.
+ *
+ * @param results the results of the conditions. See CONDITION_RESULT_* for the content.
+ * @param confidences the confidence rates of the conditions.
+ * @param scales the scales of the detected conditions.
+ * @param conditionIndex the index of the condition to read the results of.
+ * @param result the object to update with the results.
+ */
+internal fun readConditionResult(
+    results: IntBuffer,
+    confidences: DoubleBuffer,
+    scales: DoubleBuffer,
+    conditionIndex: Int,
+    result: DetectionResult,
+) {
+    val offset = conditionIndex * CONDITION_RESULTS_SIZE
+    result.setResults(
+        isDetected = results[offset + CONDITION_RESULT_STATE] == CONDITION_STATE_DETECTED,
+        centerX = results[offset + CONDITION_RESULT_CENTER_X],
+        centerY = results[offset + CONDITION_RESULT_CENTER_Y],
+        confidenceRate = confidences[conditionIndex],
+        scale = scales[conditionIndex],
+    )
+}
+
+/** @return a copy of this buffer content, with the new capacity. */
+private fun IntBuffer.copyOf(newCapacity: Int): IntBuffer =
+    allocateIntBuffer(newCapacity).also { copy ->
+        copy.put(duplicate().apply { clear() })
+        copy.clear()
+    }
+
+/** @return a copy of this buffer content, with the new capacity. */
+private fun DoubleBuffer.copyOf(newCapacity: Int): DoubleBuffer =
+    allocateDoubleBuffer(newCapacity).also { copy ->
+        copy.put(duplicate().apply { clear() })
+        copy.clear()
+    }
+
+/** @return a new direct buffer of ints in the native byte order, as expected by the native code. */
+internal fun allocateIntBuffer(capacity: Int): IntBuffer =
+    ByteBuffer.allocateDirect(capacity * Int.SIZE_BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+
+/** @return a new direct buffer of doubles in the native byte order, as expected by the native code. */
+internal fun allocateDoubleBuffer(capacity: Int): DoubleBuffer =
+    ByteBuffer.allocateDirect(capacity * Double.SIZE_BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer()
+
+/** Value returned by the batch detection when no group is fulfilled. */
+const val NO_GROUP_FULFILLED = -1
+
+/** The initial number of conditions and groups a batch can contain before growing. */
+private const val DEFAULT_CAPACITY = 16
+
+// The values below are shared with the native code, see types/detectionBatch.hpp.
+
+private const val CONDITION_PARAMS_SIZE = 8
+private const val CONDITION_PARAM_X = 0
+private const val CONDITION_PARAM_Y = 1
+private const val CONDITION_PARAM_WIDTH = 2
+private const val CONDITION_PARAM_HEIGHT = 3
+private const val CONDITION_PARAM_THRESHOLD = 4
+private const val CONDITION_PARAM_FLAGS = 5
+private const val CONDITION_PARAM_HANDLE = 6
+private const val CONDITION_PARAM_SHARED_DETECTION = 7
+
+private const val CONDITION_FLAG_WHOLE_SCREEN = 1
+private const val CONDITION_FLAG_SHOULD_BE_DETECTED = 1 shl 1
+private const val CONDITION_FLAG_MULTI_SCALE = 1 shl 2
+private const val CONDITION_FLAG_TRACKED = 1 shl 3
+
+internal const val CONDITION_RESULTS_SIZE = 4
+private const val CONDITION_RESULT_STATE = 0
+private const val CONDITION_RESULT_CENTER_X = 1
+private const val CONDITION_RESULT_CENTER_Y = 2
+private const val CONDITION_RESULT_DURATION = 3
+
+private const val CONDITION_STATE_NOT_EVALUATED = 0
+private const val CONDITION_STATE_NOT_DETECTED = 1
+private const val CONDITION_STATE_DETECTED = 2
+
+private const val GROUP_PARAMS_SIZE = 3
+private const val GROUP_PARAM_FIRST_CONDITION = 0
+private const val GROUP_PARAM_CONDITION_COUNT = 1
+private const val GROUP_PARAM_FLAGS = 2
+
+private const val GROUP_FLAG_REQUIRE_ALL = 1
+private const val GROUP_FLAG_SKIPPED = 1 shl 1
+
+private const val GROUP_STATE_NOT_EVALUATED = 0
+private const val GROUP_STATE_NOT_FULFILLED = 1
+private const val GROUP_STATE_FULFILLED = 2
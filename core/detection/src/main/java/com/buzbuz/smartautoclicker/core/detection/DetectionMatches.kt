@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.detection
+
+import android.graphics.Point
+
+import java.nio.DoubleBuffer
+import java.nio.IntBuffer
+
+/**
+ * All the matches of a condition on the current screen, found with [ImageDetector.detectAllMatches].
+ *
+ * The matches don't overlap each other and are sorted from the best to the worst confidence rate. Same as the
+ * [DetectionBatch], the values are kept in direct buffers written by the native code without any copy, allowing to
+ * reuse the same object for each detection without any allocation.
+ *
+ * @param capacity the maximum number of matches kept by a detection.
+ */
+class DetectionMatches(val capacity: Int = DEFAULT_MATCHES_CAPACITY) {
+
+    init {
+        if (capacity <= 0) throw IllegalArgumentException("Invalid matches capacity $capacity")
+    }
+
+    /** The center of each match on the screen, as x and y pairs. */
+    internal val positions: IntBuffer = allocateIntBuffer(capacity * 2)
+    /** The confidence rate of each match. */
+    internal val confidences: DoubleBuffer = allocateDoubleBuffer(capacity)
+
+    /** The number of matches found by the last detection. */
+    var count: Int = 0
+        internal set
+
+    /**
+     * Get the position of a match.
+     *
+     * @param matchIndex the index of the match. Must be lower than [count].
+     * @param position the object to update with the center of the match in screen coordinates.
+     *
+     * @return [position], updated with the center of the match.
+     */
+    fun getMatchPosition(matchIndex: Int, position: Point = Point()): Point {
+        checkIndex(matchIndex)
+        position.set(positions[matchIndex * 2], positions[matchIndex * 2 + 1])
+        return position
+    }
+
+    /**
+     * Get the confidence rate of a match.
+     *
+     * @param matchIndex the index of the match. Must be lower than [count].
+     *
+     * @return the confidence rate of the match.
+     */
+    fun getMatchConfidence(matchIndex: Int): Double {
+        checkIndex(matchIndex)
+        return confidences[matchIndex]
+    }
+
+    /** Remove all matches. */
+    fun clear() {
+        count = 0
+    }
+
+    private fun checkIndex(matchIndex: Int) {
+        if (matchIndex < 0 || matchIndex >= count)
+            throw IndexOutOfBoundsException("Invalid match index $matchIndex, count is $count")
+    }
+}
+
+/** The default maximum number of matches kept by a [DetectionMatches]. */
+const val DEFAULT_MATCHES_CAPACITY = 32
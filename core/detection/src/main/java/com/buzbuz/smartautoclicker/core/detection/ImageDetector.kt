@@ -19,7 +19,8 @@ package com.buzbuz.smartautoclicker.core.detection
 import android.graphics.Bitmap
 import android.graphics.Point
 import android.graphics.Rect
-import androidx.annotation.Keep
+
+import java.nio.ByteBuffer
 
 /**
  * Detects bitmaps within other bitmaps for conditions detection on the screen.
@@ -39,6 +40,17 @@ interface ImageDetector : AutoCloseable {
      */
     fun setScreenMetrics(screenBitmap: Bitmap, detectionQuality: Double)
 
+    /**
+     * Set the current metrics of the screen.
+     * Same as [setScreenMetrics], but using the size of the screen instead of its content.
+     *
+     * @param screenWidth the width of the screen, in pixels.
+     * @param screenHeight the height of the screen, in pixels.
+     * @param detectionQuality the quality of the detection. The higher the preciser, the lower the faster. Must be
+     *                         contained in [DETECTION_QUALITY_MIN] and [DETECTION_QUALITY_MAX].
+     */
+    fun setScreenMetrics(screenWidth: Int, screenHeight: Int, detectionQuality: Double)
+
     /**
      * Set the bitmap for the screen.
      * All following calls to [detectCondition] methods will be verified against this bitmap.
@@ -47,16 +59,43 @@ interface ImageDetector : AutoCloseable {
      */
     fun setupDetection(screenBitmap: Bitmap)
 
+    /**
+     * Set the content of the screen directly from the pixels buffer of a screen image, without any copy.
+     * All following calls to [detectCondition] methods will be verified against this content, so the buffer must
+     * remain valid until the detection of the screen image is over.
+     *
+     * @param screenBuffer the direct buffer containing the RGBA_8888 pixels of the screen.
+     * @param width the width of the screen content, in pixels.
+     * @param height the height of the screen content, in pixels.
+     * @param rowStride the size of a row of pixels in the buffer, in bytes.
+     */
+    fun setupDetection(screenBuffer: ByteBuffer, width: Int, height: Int, rowStride: Int)
+
+    /**
+     * Get how much the screen content has changed since the screen image of the last [detectConditions] call.
+     * The screen is compared by tiles, and this is the ratio of tiles with at least one changed pixel. The changes of
+     * the screen images provided to [setupDetection] without detecting a batch on them are accumulated, and are still
+     * taken into account by the next batch detection.
+     *
+     * @return the ratio of changed screen tiles, between 0 and 1. 1 if there is no previous screen content.
+     */
+    fun getScreenChangeRatio(): Double
+
     /**
      * Detect if the bitmap is in the whole current screen bitmap.
      * [setupDetection] must have been called first with the content of the screen.
      *
      * @param conditionBitmap the condition to detect in the screen.
      * @param threshold the allowed error threshold allowed for the condition.
+     * @param result the object to update with the results. Reuse the same one to detect without allocation.
      *
-     * @return the results of the detection.
+     * @return [result], updated with the results of the detection.
      */
-    fun detectCondition(conditionBitmap: Bitmap, threshold: Int): DetectionResult
+    fun detectCondition(
+        conditionBitmap: Bitmap,
+        threshold: Int,
+        result: DetectionResult = DetectionResult(),
+    ): DetectionResult
 
     /**
      * Detect if the bitmap is at a specific position in the current screen bitmap.
@@ -65,37 +104,163 @@ interface ImageDetector : AutoCloseable {
      * @param conditionBitmap the condition to detect in the screen.
      * @param position the position on the screen where the condition should be detected.
      * @param threshold the allowed error threshold allowed for the condition.
+     * @param result the object to update with the results. Reuse the same one to detect without allocation.
      *
-     * @return the results of the detection.
+     * @return [result], updated with the results of the detection.
      */
-    fun detectCondition(conditionBitmap: Bitmap, position: Rect, threshold: Int): DetectionResult
+    fun detectCondition(
+        conditionBitmap: Bitmap,
+        position: Rect,
+        threshold: Int,
+        result: DetectionResult = DetectionResult(),
+    ): DetectionResult
+
+    /**
+     * Register a condition for the batch detections.
+     * The condition image is pre-processed once and kept until [clearConditions] is called, or the detector is closed.
+     *
+     * @param conditionBitmap the condition to register.
+     *
+     * @return the handle of the condition, to be used in a [DetectionBatch], or [INVALID_CONDITION_HANDLE] if the
+     *         bitmap can't be registered.
+     */
+    fun registerCondition(conditionBitmap: Bitmap): Int
+
+    /** Release all conditions registered with [registerCondition]. Their handles can no longer be used. */
+    fun clearConditions()
+
+    /**
+     * Detect a batch of conditions in the current screen bitmap.
+     * [setupDetection] must have been called first with the content of the screen.
+     *
+     * @param batch the conditions to detect. Its results will be updated with the results of this detection.
+     *
+     * @return the index of the first fulfilled group of the batch, or [NO_GROUP_FULFILLED] if none are.
+     */
+    fun detectConditions(batch: DetectionBatch): Int
+
+    /**
+     * Detect all matches of a registered condition in the whole current screen bitmap.
+     * [setupDetection] must have been called first with the content of the screen.
+     *
+     * The condition is matched once on the screen, and the non overlapping matches are kept from the best to the
+     * worst, until [DetectionMatches.capacity] is reached.
+     *
+     * @param conditionHandle the handle of the condition, as returned by [registerCondition].
+     * @param threshold the allowed error threshold allowed for the condition.
+     * @param matches the object to update with the matches. Reuse the same one to detect without allocation.
+     *
+     * @return the number of matches found.
+     */
+    fun detectAllMatches(conditionHandle: Int, threshold: Int, matches: DetectionMatches): Int
+
+    /**
+     * Detect all matches of a registered condition in an area of the current screen bitmap.
+     * Same as [detectAllMatches], but only in the provided area.
+     *
+     * @param conditionHandle the handle of the condition, as returned by [registerCondition].
+     * @param position the area on the screen where the condition should be detected.
+     * @param threshold the allowed error threshold allowed for the condition.
+     * @param matches the object to update with the matches. Reuse the same one to detect without allocation.
+     *
+     * @return the number of matches found.
+     */
+    fun detectAllMatches(conditionHandle: Int, position: Rect, threshold: Int, matches: DetectionMatches): Int
+
+    /**
+     * Set the number of workers matching the conditions of a [DetectionBatch] in parallel.
+     * The results of [detectConditions] are identical whatever the worker count: the groups are still evaluated in
+     * order, and a condition not required to find the first fulfilled group is never reported as evaluated.
+     *
+     * @param workerCount the number of workers, including the calling thread. 1 for a sequential detection, which is
+     *                    the default. Must be contained in [DETECTION_WORKER_COUNT_MIN] and [DETECTION_WORKER_COUNT_MAX].
+     */
+    fun setDetectionWorkerCount(workerCount: Int)
+
+    /**
+     * Set the maximum number of candidates verified for the detection of a condition.
+     * The candidates are the best matches of the condition image in the screen, from the best to the worst, and a
+     * candidate is verified by comparing its colors with the ones of the condition.
+     *
+     * @param count the maximum number of verified candidates. [DEFAULT_COLOR_VERIFICATION_COUNT] by default. Must be
+     *              contained in [COLOR_VERIFICATION_COUNT_MIN] and [COLOR_VERIFICATION_COUNT_MAX].
+     */
+    fun setMaxColorVerificationCount(count: Int)
+
+    /**
+     * Enable or disable the color prefilter of the exact detections.
+     * When enabled, a condition searched in an area of its own size first have the mean color of a part of its pixels
+     * compared with the same pixels of the screen. If they are obviously different, the condition is reported as not
+     * detected without matching it. This is faster for the conditions that are usually absent from the screen.
+     *
+     * @param enabled true to enable the prefilter, false to disable it. Enabled by default.
+     */
+    fun setColorPrefilterEnabled(enabled: Boolean)
+
+    /**
+     * Set the scales of the conditions searched by the multi-scale detections.
+     * A condition added to a [DetectionBatch] as multi-scale is first searched at its captured size. If it is not
+     * found, it is then searched at each of those scales on the same screen image, from the closest to the farthest of
+     * its captured size, and the scale of the match is reported in [DetectionResult.scale]. This allows a single
+     * condition to be detected on screens with a different density than the one it was captured on.
+     *
+     * The registered conditions are resized once at each scale by this call, it should not be called between each
+     * detection.
+     *
+     * @param scales the additional scales of the conditions, relatively to their captured size. Empty by default. Must
+     *               contains at most [MATCHING_SCALE_COUNT_MAX] values, each contained in [MATCHING_SCALE_MIN] and
+     *               [MATCHING_SCALE_MAX].
+     */
+    fun setMatchingScales(scales: DoubleArray)
 }
 
+/** Value returned by [ImageDetector.registerCondition] when the condition can't be registered. */
+const val INVALID_CONDITION_HANDLE = -1
+
 /** The maximum detection quality for the algorithm. */
 const val DETECTION_QUALITY_MAX = 3216L
 /** The minimum detection quality for the algorithm. */
 const val DETECTION_QUALITY_MIN = 400L
 
+/** The maximum number of workers for the batch detection. */
+const val DETECTION_WORKER_COUNT_MAX = 8
+/** The minimum number of workers for the batch detection. */
+const val DETECTION_WORKER_COUNT_MIN = 1
+
+/** The default maximum number of candidates verified for a condition detection. */
+const val DEFAULT_COLOR_VERIFICATION_COUNT = 8
+/** The maximum value for the maximum number of candidates verified for a condition detection. */
+const val COLOR_VERIFICATION_COUNT_MAX = 64
+/** The minimum value for the maximum number of candidates verified for a condition detection. */
+const val COLOR_VERIFICATION_COUNT_MIN = 1
+
+/** The maximum number of additional scales of the multi-scale detections. */
+const val MATCHING_SCALE_COUNT_MAX = 8
+/** The maximum additional scale of the multi-scale detections. */
+const val MATCHING_SCALE_MAX = 4.0
+/** The minimum additional scale of the multi-scale detections. */
+const val MATCHING_SCALE_MIN = 0.25
+
 /**
  * The results of a condition detection.
  * @param isDetected true if the condition have been detected. false if not.
  * @param position contains the center of the detected condition in screen coordinates.
  * @param confidenceRate
+ * @param scale the scale of the detected condition, relatively to its captured size. Always 1 if it isn't detected,
+ *              or if it isn't a multi-scale detection.
  */
 data class DetectionResult(
     var isDetected: Boolean = false,
     val position: Point = Point(),
-    var confidenceRate: Double = 0.0
+    var confidenceRate: Double = 0.0,
+    var scale: Double = 1.0,
 ) {
 
-    /**
-     * Set the results of the detection.
-     * Used by native code only.
-     */
-    @Keep
-    fun setResults(isDetected: Boolean, centerX: Int, centerY: Int, confidenceRate: Double) {
+    /** Set the results of the detection. */
+    fun setResults(isDetected: Boolean, centerX: Int, centerY: Int, confidenceRate: Double, scale: Double = 1.0) {
         this.isDetected = isDetected
         position.set(centerX, centerY)
         this.confidenceRate = confidenceRate
+        this.scale = scale
     }
 }
\ No newline at end of file
@@ -18,7 +18,10 @@ package com.buzbuz.smartautoclicker.core.detection
 
 import android.graphics.Bitmap
 import android.graphics.Rect
-import androidx.annotation.Keep
+
+import java.nio.ByteBuffer
+import java.nio.DoubleBuffer
+import java.nio.IntBuffer
 
 /**
  * Native implementation of the image detector.
@@ -34,14 +37,284 @@ class NativeDetector : ImageDetector {
         init {
             System.loadLibrary("smartautoclicker")
         }
+
+        /**
+         * Creates the detector. Must be called before any other methods.
+         * Call [close] to release resources once the detection process is finished.
+         *
+         * @return the pointer of the native detector object.
+         */
+        @JvmStatic
+        private external fun newDetector(): Long
+
+        /**
+         * Deletes the native detector.
+         * Once called, this object can't be used anymore.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         */
+        @JvmStatic
+        private external fun deleteDetector(nativePtr: Long)
+
+        /**
+         * Native method for screen metrics setup.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param screenBitmap the content of the screen as a bitmap.
+         * @param detectionQuality the quality of the detection. The higher the preciser, the lower the faster. Must be
+         *                         contained in [DETECTION_QUALITY_MIN] and [DETECTION_QUALITY_MAX].
+         */
+        @JvmStatic
+        private external fun updateScreenMetrics(nativePtr: Long, screenBitmap: Bitmap, detectionQuality: Double)
+
+        /**
+         * Native method for screen metrics setup from the screen size.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param screenWidth the width of the screen, in pixels.
+         * @param screenHeight the height of the screen, in pixels.
+         * @param detectionQuality the quality of the detection. The higher the preciser, the lower the faster. Must be
+         *                         contained in [DETECTION_QUALITY_MIN] and [DETECTION_QUALITY_MAX].
+         */
+        @JvmStatic
+        private external fun updateScreenSizeMetrics(
+            nativePtr: Long,
+            screenWidth: Int,
+            screenHeight: Int,
+            detectionQuality: Double,
+        )
+
+        /**
+         * Native method for detection setup.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param screenBitmap the content of the screen as a bitmap.
+         */
+        @JvmStatic
+        private external fun setScreenImage(nativePtr: Long, screenBitmap: Bitmap)
+
+        /**
+         * Native method for detection setup from the pixels buffer of a screen image.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param screenBuffer the direct buffer containing the RGBA_8888 pixels of the screen.
+         * @param width the width of the screen content, in pixels.
+         * @param height the height of the screen content, in pixels.
+         * @param rowStride the size of a row of pixels in the buffer, in bytes.
+         */
+        @JvmStatic
+        private external fun setScreenImageBuffer(
+            nativePtr: Long,
+            screenBuffer: ByteBuffer,
+            width: Int,
+            height: Int,
+            rowStride: Int,
+        )
+
+        /**
+         * Native method for getting the ratio of the screen that has changed with the last detection setup.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         *
+         * @return the ratio of changed screen tiles, between 0 and 1.
+         */
+        @JvmStatic
+        private external fun getScreenChangeRatio(nativePtr: Long): Double
+
+        /**
+         * Native method for detecting if the bitmap is in the whole current screen bitmap.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionBitmap the condition to detect in the screen.
+         * @param threshold the allowed error threshold allowed for the condition.
+         * @param results stores the results on this detection.
+         * @param confidence stores the confidence rate of this detection.
+         * @param scale stores the scale of the detected condition.
+         */
+        @JvmStatic
+        private external fun detect(
+            nativePtr: Long,
+            conditionBitmap: Bitmap,
+            threshold: Int,
+            results: IntBuffer,
+            confidence: DoubleBuffer,
+            scale: DoubleBuffer,
+        )
+
+        /**
+         * Native method for detecting if the bitmap is at a specific position in the current screen bitmap.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionBitmap the condition to detect in the screen.
+         * @param x the horizontal position of the condition.
+         * @param y the vertical position of the condition.
+         * @param width the width of the condition.
+         * @param height the height of the condtion.
+         * @param threshold the allowed error threshold allowed for the condition.
+         * @param results stores the results on this detection.
+         * @param confidence stores the confidence rate of this detection.
+         * @param scale stores the scale of the detected condition.
+         */
+        @JvmStatic
+        private external fun detectAt(
+            nativePtr: Long,
+            conditionBitmap: Bitmap,
+            x: Int,
+            y: Int,
+            width: Int,
+            height: Int,
+            threshold: Int,
+            results: IntBuffer,
+            confidence: DoubleBuffer,
+            scale: DoubleBuffer,
+        )
+
+        /**
+         * Native method for registering a condition for the batch detections.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionBitmap the condition to register.
+         *
+         * @return the handle of the condition, or [INVALID_CONDITION_HANDLE] if it can't be registered.
+         */
+        @JvmStatic
+        private external fun registerConditionBitmap(nativePtr: Long, conditionBitmap: Bitmap): Int
+
+        /**
+         * Native method releasing all registered conditions.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         */
+        @JvmStatic
+        private external fun clearRegisteredConditions(nativePtr: Long)
+
+        /**
+         * Native method for detecting a batch of registered conditions in the current screen bitmap.
+         * See [DetectionBatch] for the content of the buffers, accessed directly by the native code.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionsParams the detection parameters of the conditions.
+         * @param conditionCount the number of conditions in the batch.
+         * @param groupsParams the parameters of the groups of conditions.
+         * @param groupCount the number of groups in the batch.
+         * @param conditionsResults stores the results of the detection of each condition.
+         * @param conditionsConfidences stores the confidence rate of the detection of each condition.
+         * @param conditionsScales stores the scale of each detected condition.
+         * @param groupsResults stores the results of each group.
+         *
+         * @return the index of the first fulfilled group, or [NO_GROUP_FULFILLED] if none are.
+         */
+        @JvmStatic
+        private external fun detectBatch(
+            nativePtr: Long,
+            conditionsParams: IntBuffer,
+            conditionCount: Int,
+            groupsParams: IntBuffer,
+            groupCount: Int,
+            conditionsResults: IntBuffer,
+            conditionsConfidences: DoubleBuffer,
+            conditionsScales: DoubleBuffer,
+            groupsResults: IntBuffer,
+        ): Int
+
+        /**
+         * Native method for detecting all matches of a registered condition in the whole current screen bitmap.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionHandle the handle of the registered condition.
+         * @param threshold the allowed error threshold allowed for the condition.
+         * @param maxCount the maximum number of matches to be found.
+         * @param positions stores the center of each match, as x and y pairs.
+         * @param confidences stores the confidence rate of each match.
+         *
+         * @return the number of matches found.
+         */
+        @JvmStatic
+        private external fun detectMatches(
+            nativePtr: Long,
+            conditionHandle: Int,
+            threshold: Int,
+            maxCount: Int,
+            positions: IntBuffer,
+            confidences: DoubleBuffer,
+        ): Int
+
+        /**
+         * Native method for detecting all matches of a registered condition in an area of the current screen bitmap.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param conditionHandle the handle of the registered condition.
+         * @param x the horizontal position of the detection area.
+         * @param y the vertical position of the detection area.
+         * @param width the width of the detection area.
+         * @param height the height of the detection area.
+         * @param threshold the allowed error threshold allowed for the condition.
+         * @param maxCount the maximum number of matches to be found.
+         * @param positions stores the center of each match, as x and y pairs.
+         * @param confidences stores the confidence rate of each match.
+         *
+         * @return the number of matches found.
+         */
+        @JvmStatic
+        private external fun detectMatchesAt(
+            nativePtr: Long,
+            conditionHandle: Int,
+            x: Int,
+            y: Int,
+            width: Int,
+            height: Int,
+            threshold: Int,
+            maxCount: Int,
+            positions: IntBuffer,
+            confidences: DoubleBuffer,
+        ): Int
+
+        /**
+         * Native method for the number of workers of the batch detection.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param workerCount the number of workers, including the calling thread.
+         */
+        @JvmStatic
+        private external fun updateDetectionWorkerCount(nativePtr: Long, workerCount: Int)
+
+        /**
+         * Native method for the maximum number of candidates verified for a condition detection.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param count the maximum number of verified candidates.
+         */
+        @JvmStatic
+        private external fun updateMaxColorVerificationCount(nativePtr: Long, count: Int)
+
+        /**
+         * Native method for the state of the color prefilter of the exact detections.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param enabled true to enable the prefilter, false to disable it.
+         */
+        @JvmStatic
+        private external fun updateColorPrefilterEnabled(nativePtr: Long, enabled: Boolean)
+
+        /**
+         * Native method for the additional scales of the multi-scale detections.
+         *
+         * @param nativePtr the pointer of the native detector object.
+         * @param scales the additional scales of the conditions.
+         */
+        @JvmStatic
+        private external fun updateMatchingScales(nativePtr: Long, scales: DoubleArray)
     }
 
-    /** The results of the detection. Modified by native code. */
-    private val detectionResult = DetectionResult()
+    /** The results of the single condition detection, in a [DetectionBatch] result layout. Modified by native code. */
+    private val detectionResults = allocateIntBuffer(CONDITION_RESULTS_SIZE)
+    /** The confidence rate of the single condition detection. Modified by native code. */
+    private val detectionConfidence = allocateDoubleBuffer(1)
+    /** The scale of the condition of the single condition detection. Modified by native code. */
+    private val detectionScale = allocateDoubleBuffer(1)
 
-    /** Native pointer of the detector object. */
-    @Keep
-    private var nativePtr: Long = newDetector()
+    /** Native pointer of the detector object, provided to each native method. */
+    private val nativePtr: Long = newDetector()
 
     private var isClosed: Boolean = false
 
@@ -49,7 +322,7 @@ class NativeDetector : ImageDetector {
         if (isClosed) return
 
         isClosed = true
-        deleteDetector()
+        deleteDetector(nativePtr)
     }
 
     override fun setScreenMetrics(screenBitmap: Bitmap, detectionQuality: Double) {
@@ -58,86 +331,147 @@ class NativeDetector : ImageDetector {
         if (detectionQuality < DETECTION_QUALITY_MIN || detectionQuality > DETECTION_QUALITY_MAX)
             throw IllegalArgumentException("Invalid detection quality")
 
-        updateScreenMetrics(screenBitmap, detectionQuality)
+        updateScreenMetrics(nativePtr, screenBitmap, detectionQuality)
+    }
+
+    override fun setScreenMetrics(screenWidth: Int, screenHeight: Int, detectionQuality: Double) {
+        if (isClosed) return
+
+        if (detectionQuality < DETECTION_QUALITY_MIN || detectionQuality > DETECTION_QUALITY_MAX)
+            throw IllegalArgumentException("Invalid detection quality")
+
+        updateScreenSizeMetrics(nativePtr, screenWidth, screenHeight, detectionQuality)
     }
 
     override fun setupDetection(screenBitmap: Bitmap) {
         if (isClosed) return
 
-        setScreenImage(screenBitmap)
-    }
-
-    override fun detectCondition(conditionBitmap: Bitmap, threshold: Int): DetectionResult {
-        if (isClosed) return detectionResult.copy()
-
-        detect(conditionBitmap, threshold, detectionResult)
-        return detectionResult.copy()
-    }
-
-    override fun detectCondition(conditionBitmap: Bitmap, position: Rect, threshold: Int): DetectionResult {
-        if (isClosed) return detectionResult.copy()
-
-        detectAt(conditionBitmap, position.left, position.top, position.width(), position.height(), threshold, detectionResult)
-        return detectionResult.copy()
-    }
-
-    /**
-     * Creates the detector. Must be called before any other methods.
-     * Call [close] to release resources once the detection process is finished.
-     *
-     * @return the pointer of the native detector object.
-     */
-    private external fun newDetector(): Long
-
-    /**
-     * Deletes the native detector.
-     * Once called, this object can't be used anymore.
-     */
-    private external fun deleteDetector()
-
-    /**
-     * Native method for screen metrics setup.
-     *
-     * @param screenBitmap the content of the screen as a bitmap.
-     * @param detectionQuality the quality of the detection. The higher the preciser, the lower the faster. Must be
-     *                         contained in [DETECTION_QUALITY_MIN] and [DETECTION_QUALITY_MAX].
-     */
-    private external fun updateScreenMetrics(screenBitmap: Bitmap, detectionQuality: Double)
-
-    /**
-     * Native method for detection setup.
-     *
-     * @param screenBitmap the content of the screen as a bitmap.
-     */
-    private external fun setScreenImage(screenBitmap: Bitmap)
-
-    /**
-     * Native method for detecting if the bitmap is in the whole current screen bitmap.
-     *
-     * @param conditionBitmap the condition to detect in the screen.
-     * @param threshold the allowed error threshold allowed for the condition.
-     * @param result stores the results on this detection.
-     */
-    private external fun detect(conditionBitmap: Bitmap, threshold: Int, result: DetectionResult)
-
-    /**
-     * Native method for detecting if the bitmap is at a specific position in the current screen bitmap.
-     *
-     * @param conditionBitmap the condition to detect in the screen.
-     * @param x the horizontal position of the condition.
-     * @param y the vertical position of the condition.
-     * @param width the width of the condition.
-     * @param height the height of the condtion.
-     * @param threshold the allowed error threshold allowed for the condition.
-     * @param result stores the results on this detection.
-     */
-    private external fun detectAt(
+        setScreenImage(nativePtr, screenBitmap)
+    }
+
+    override fun setupDetection(screenBuffer: ByteBuffer, width: Int, height: Int, rowStride: Int) {
+        if (isClosed) return
+
+        if (!screenBuffer.isDirect) throw IllegalArgumentException("Screen buffer must be a direct buffer")
+
+        setScreenImageBuffer(nativePtr, screenBuffer, width, height, rowStride)
+    }
+
+    override fun getScreenChangeRatio(): Double {
+        if (isClosed) return 0.0
+
+        return getScreenChangeRatio(nativePtr)
+    }
+
+    override fun detectCondition(conditionBitmap: Bitmap, threshold: Int, result: DetectionResult): DetectionResult {
+        if (isClosed) return result.apply { setResults(false, 0, 0, 0.0) }
+
+        detect(nativePtr, conditionBitmap, threshold, detectionResults, detectionConfidence, detectionScale)
+        readConditionResult(detectionResults, detectionConfidence, detectionScale, 0, result)
+        return result
+    }
+
+    override fun detectCondition(
         conditionBitmap: Bitmap,
-        x: Int,
-        y: Int,
-        width: Int,
-        height: Int,
+        position: Rect,
         threshold: Int,
-        result: DetectionResult
-    )
-}
\ No newline at end of file
+        result: DetectionResult,
+    ): DetectionResult {
+        if (isClosed) return result.apply { setResults(false, 0, 0, 0.0) }
+
+        detectAt(
+            nativePtr, conditionBitmap, position.left, position.top, position.width(), position.height(), threshold,
+            detectionResults, detectionConfidence, detectionScale,
+        )
+        readConditionResult(detectionResults, detectionConfidence, detectionScale, 0, result)
+        return result
+    }
+
+    override fun registerCondition(conditionBitmap: Bitmap): Int {
+        if (isClosed) return INVALID_CONDITION_HANDLE
+
+        return registerConditionBitmap(nativePtr, conditionBitmap)
+    }
+
+    override fun clearConditions() {
+        if (isClosed) return
+
+        clearRegisteredConditions(nativePtr)
+    }
+
+    override fun detectConditions(batch: DetectionBatch): Int {
+        if (isClosed) return NO_GROUP_FULFILLED
+
+        return detectBatch(
+            nativePtr,
+            batch.conditionsParams,
+            batch.conditionCount,
+            batch.groupsParams,
+            batch.groupCount,
+            batch.conditionsResults,
+            batch.conditionsConfidences,
+            batch.conditionsScales,
+            batch.groupsResults,
+        )
+    }
+
+    override fun detectAllMatches(conditionHandle: Int, threshold: Int, matches: DetectionMatches): Int {
+        matches.clear()
+        if (isClosed) return 0
+
+        matches.count = detectMatches(
+            nativePtr, conditionHandle, threshold, matches.capacity, matches.positions, matches.confidences,
+        )
+        return matches.count
+    }
+
+    override fun detectAllMatches(
+        conditionHandle: Int,
+        position: Rect,
+        threshold: Int,
+        matches: DetectionMatches,
+    ): Int {
+        matches.clear()
+        if (isClosed) return 0
+
+        matches.count = detectMatchesAt(
+            nativePtr, conditionHandle, position.left, position.top, position.width(), position.height(), threshold,
+            matches.capacity, matches.positions, matches.confidences,
+        )
+        return matches.count
+    }
+
+    override fun setDetectionWorkerCount(workerCount: Int) {
+        if (isClosed) return
+
+        if (workerCount < DETECTION_WORKER_COUNT_MIN || workerCount > DETECTION_WORKER_COUNT_MAX)
+            throw IllegalArgumentException("Invalid detection worker count")
+
+        updateDetectionWorkerCount(nativePtr, workerCount)
+    }
+
+    override fun setMaxColorVerificationCount(count: Int) {
+        if (isClosed) return
+
+        if (count < COLOR_VERIFICATION_COUNT_MIN || count > COLOR_VERIFICATION_COUNT_MAX)
+            throw IllegalArgumentException("Invalid color verification count")
+
+        updateMaxColorVerificationCount(nativePtr, count)
+    }
+
+    override fun setColorPrefilterEnabled(enabled: Boolean) {
+        if (isClosed) return
+        updateColorPrefilterEnabled(nativePtr, enabled)
+    }
+
+    override fun setMatchingScales(scales: DoubleArray) {
+        if (isClosed) return
+
+        if (scales.size > MATCHING_SCALE_COUNT_MAX)
+            throw IllegalArgumentException("Too many matching scales")
+        if (scales.any { scale -> scale < MATCHING_SCALE_MIN || scale > MATCHING_SCALE_MAX })
+            throw IllegalArgumentException("Invalid matching scale")
+
+        updateMatchingScales(nativePtr, scales)
+    }
+}
@@ -30,11 +30,13 @@ import android.media.ImageReader
 import android.media.projection.MediaProjection
 import android.media.projection.MediaProjectionManager
 import android.os.Handler
+import android.os.HandlerThread
 import android.os.Looper
 import android.util.Log
 
 import androidx.annotation.MainThread
 import androidx.annotation.WorkerThread
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
 
@@ -60,6 +62,14 @@ class DisplayRecorder internal constructor() {
         private const val TAG = "ScreenRecorder"
         /** Name of the virtual display generating [Image]. */
         internal const val VIRTUAL_DISPLAY_NAME = "SmartAutoClicker"
+        /** Name of the thread notifying the new [Image]. */
+        private const val IMAGE_AVAILABLE_THREAD_NAME = "ImageAvailable"
+        /**
+         * Maximum number of [Image] acquired at the same time from the [ImageReader].
+         * [ImageReader.acquireLatestImage] holds two images while dropping the older ones, on top of the one kept open
+         * by [peekLatestImage]. With less, it can't drain the queue and returns an older image instead of the latest.
+         */
+        private const val IMAGE_READER_MAX_IMAGES = 3
 
         /** Singleton preventing multiple instances of the ScreenRecorder at the same time. */
         @Volatile
@@ -94,9 +104,23 @@ class DisplayRecorder internal constructor() {
     private var stopListener: (() -> Unit)? = null
     /** Allow access to [Image] rendered into the surface view of the [VirtualDisplay] */
     private var imageReader: ImageReader? = null
+    /** Thread receiving the new image notifications from the [imageReader]. */
+    private var imageAvailableThread: HandlerThread? = null
+    /**
+     * Signals a new [Image] in the [imageReader].
+     * Conflated, as all images but the latest one are dropped by [ImageReader.acquireLatestImage].
+     */
+    private val imageAvailableChannel = Channel<Unit>(Channel.CONFLATED)
 
     /** Cache for the current frame. Interpreted from an [Image]. */
     private var latestAcquiredFrameBitmap: Bitmap? = null
+    /** The latest image provided by [peekLatestImage], kept open until it is processed by [processLatestImage]. */
+    private var peekedImage: Image? = null
+
+    /** Tells if an image provided by [peekLatestImage] is waiting to be processed by [processLatestImage]. */
+    @Volatile
+    var hasPeekedImage: Boolean = false
+        private set
 
     /**
      * Start the media projection.
@@ -140,7 +164,8 @@ class DisplayRecorder internal constructor() {
      * This method should not be called from the main thread, but the processing thread.
      *
      * @param context the Android context.
-     * @param displaySize the size of the display, in pixels.
+     * @param displaySize the size of the recorded images, in pixels. The screen content is scaled to fit in it, so a
+     *                    size smaller than the screen one gives downscaled images.
      */
     suspend fun startScreenRecord(context: Context, displaySize: Point): Unit = mutex.withLock {
         if (projection == null || imageReader != null) {
@@ -150,8 +175,13 @@ class DisplayRecorder internal constructor() {
 
         Log.d(TAG, "Start screen record")
 
+        val imageThread = HandlerThread(IMAGE_AVAILABLE_THREAD_NAME).apply { start() }
+        imageAvailableThread = imageThread
+
         @SuppressLint("WrongConstant")
-        imageReader = ImageReader.newInstance(displaySize.x, displaySize.y, PixelFormat.RGBA_8888, 2)
+        imageReader = ImageReader.newInstance(displaySize.x, displaySize.y, PixelFormat.RGBA_8888, IMAGE_READER_MAX_IMAGES).apply {
+            setOnImageAvailableListener({ imageAvailableChannel.trySend(Unit) }, Handler(imageThread.looper))
+        }
         try {
             virtualDisplay = projection!!.createVirtualDisplay(
                 VIRTUAL_DISPLAY_NAME, displaySize.x, displaySize.y, context.resources.configuration.densityDpi,
@@ -171,6 +201,61 @@ class DisplayRecorder internal constructor() {
         }
     }
 
+    /**
+     * Suspend until a new image of the screen is available.
+     * The image can then be retrieved with [processLatestImage], [peekLatestImage] or [acquireLatestBitmap]. As a
+     * signal can be sent for an image that have already been retrieved, those methods can still return no image.
+     */
+    suspend fun awaitNewImage() {
+        imageAvailableChannel.receive()
+    }
+
+    /**
+     * Process the last image of the screen, without converting it into a [Bitmap].
+     * The image is closed once [block] returns, and must not be used after that. The screen record can't be stopped
+     * while the image is processed. If there is no new image, the one provided by [peekLatestImage] is processed.
+     *
+     * @param block the processing of the image.
+     *
+     * @return true if an image has been processed, false if they have all been processed already.
+     */
+    suspend fun processLatestImage(block: suspend (Image) -> Unit): Boolean = mutex.withLock {
+        (acquireLatestImage() ?: takePeekedImage())?.use { image ->
+            block(image)
+            true
+        } ?: false
+    }
+
+    /**
+     * Look at the last image of the screen, without processing it.
+     * The image is kept open after [block] returns, and will be the one provided to the next [processLatestImage] call,
+     * unless a newer image is available at this time. Only a single image is kept, the previously peeked one is closed.
+     *
+     * @param block the inspection of the image.
+     *
+     * @return true if a new image has been peeked, false if they have all been retrieved already.
+     */
+    suspend fun peekLatestImage(block: suspend (Image) -> Unit): Boolean = mutex.withLock {
+        val image = acquireLatestImage() ?: return false
+        peekedImage = image
+        hasPeekedImage = true
+
+        block(image)
+        true
+    }
+
+    /** @return the latest image in the [imageReader], closing the peeked image if there is a newer one. */
+    private fun acquireLatestImage(): Image? =
+        imageReader?.acquireLatestImage()?.also { takePeekedImage()?.close() }
+
+    /** @return the peeked image, now owned by the caller, or null if there is none. */
+    private fun takePeekedImage(): Image? {
+        val image = peekedImage
+        peekedImage = null
+        hasPeekedImage = false
+        return image
+    }
+
     suspend fun takeScreenshot(area: Rect, completion: suspend (Bitmap) -> Unit) {
         var screenFrame: Bitmap?
         do {
@@ -200,10 +285,16 @@ class DisplayRecorder internal constructor() {
             release()
             virtualDisplay = null
         }
+        takePeekedImage()?.close()
         imageReader?.apply {
+            setOnImageAvailableListener(null, null)
             close()
             imageReader = null
         }
+        imageAvailableThread?.apply {
+            quitSafely()
+            imageAvailableThread = null
+        }
     }
 
     /**
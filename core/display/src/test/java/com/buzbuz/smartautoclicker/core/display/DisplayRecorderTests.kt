@@ -36,16 +36,22 @@ import com.buzbuz.smartautoclicker.core.display.shadows.ShadowImageReader
 import com.buzbuz.smartautoclicker.core.display.utils.anyNotNull
 
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
 
 import org.junit.After
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 
 import org.mockito.ArgumentCaptor
 import org.mockito.Mock
+import org.mockito.Mockito.doAnswer
 import org.mockito.Mockito.inOrder
+import org.mockito.Mockito.mock
 import org.mockito.Mockito.never
 import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
@@ -69,6 +75,8 @@ class DisplayRecorderTests {
         private const val TEST_DATA_DISPLAY_SIZE_WIDTH = 800
         private const val TEST_DATA_DISPLAY_SIZE_HEIGHT = 600
         private val TEST_DATA_DISPLAY_SIZE = Point(TEST_DATA_DISPLAY_SIZE_WIDTH, TEST_DATA_DISPLAY_SIZE_HEIGHT)
+
+        private const val TEST_DATA_IMAGE_TIMEOUT_MS = 1000L
     }
 
     /** Interface to be mocked in order to verify the calls to the stop listener. */
@@ -89,6 +97,41 @@ class DisplayRecorderTests {
     /** The object under tests. */
     private lateinit var displayRecorder: DisplayRecorder
 
+    /**
+     * Emulates the queue of images of an [ImageReader], with an [ImageReader.acquireLatestImage] dropping the older
+     * images as the Android one, within the maximum number of images acquired at the same time.
+     *
+     * @return the queue of images not acquired yet.
+     */
+    private fun mockImageQueue(): ArrayDeque<Image> {
+        val queue = ArrayDeque<Image>()
+        var acquiredCount = 0
+
+        fun acquireNextImage(): Image? {
+            if (queue.isEmpty() || acquiredCount >= ShadowImageReader.getMaxImages()) return null
+
+            val image = queue.removeFirst()
+            acquiredCount++
+            doAnswer { acquiredCount--; null }.`when`(image).close()
+            return image
+        }
+
+        mockWhen(mockImageReader.acquireLatestImage()).thenAnswer {
+            if (queue.isNotEmpty() && acquiredCount >= ShadowImageReader.getMaxImages())
+                throw IllegalStateException("maxImages has already been acquired")
+
+            var image = acquireNextImage() ?: return@thenAnswer null
+            while (true) {
+                val nextImage = acquireNextImage() ?: break
+                image.close()
+                image = nextImage
+            }
+            image
+        }
+
+        return queue
+    }
+
     @Before
     fun setUp() {
         MockitoAnnotations.openMocks(this)
@@ -200,6 +243,7 @@ class DisplayRecorderTests {
 
         inOrder(mockVirtualDisplay, mockImageReader, mockMediaProjection).apply {
             verify(mockVirtualDisplay).release()
+            verify(mockImageReader).setOnImageAvailableListener(null, null)
             verify(mockImageReader).close()
         }
         Unit
@@ -214,6 +258,72 @@ class DisplayRecorderTests {
         verify(mockImageReader, never()).close()
     }
 
+    @Test
+    fun awaitNewImage() = runBlocking {
+        displayRecorder.startProjection(mockContext, TEST_DATA_RESULT_CODE, TEST_DATA_PROJECTION_DATA_INTENT,
+            mockStoppedListener::onStopped)
+        displayRecorder.startScreenRecord(mockContext, TEST_DATA_DISPLAY_SIZE)
+
+        val imageListenerCaptor = ArgumentCaptor.forClass(ImageReader.OnImageAvailableListener::class.java)
+        verify(mockImageReader).setOnImageAvailableListener(imageListenerCaptor.capture(), anyNotNull())
+        imageListenerCaptor.value.onImageAvailable(mockImageReader)
+
+        withTimeout(TEST_DATA_IMAGE_TIMEOUT_MS) {
+            displayRecorder.awaitNewImage()
+        }
+    }
+
+    @Test
+    fun processLatestImage() = runBlocking {
+        displayRecorder.startProjection(mockContext, TEST_DATA_RESULT_CODE, TEST_DATA_PROJECTION_DATA_INTENT,
+            mockStoppedListener::onStopped)
+        displayRecorder.startScreenRecord(mockContext, TEST_DATA_DISPLAY_SIZE)
+
+        var processedImage: Image? = null
+        val isProcessed = displayRecorder.processLatestImage { image -> processedImage = image }
+
+        assertTrue(isProcessed)
+        assertEquals(mockScreenImage, processedImage)
+        verify(mockScreenImage).close()
+    }
+
+    @Test
+    fun processLatestImage_noImage() = runBlocking {
+        mockWhen(mockImageReader.acquireLatestImage()).thenReturn(null)
+        displayRecorder.startProjection(mockContext, TEST_DATA_RESULT_CODE, TEST_DATA_PROJECTION_DATA_INTENT,
+            mockStoppedListener::onStopped)
+        displayRecorder.startScreenRecord(mockContext, TEST_DATA_DISPLAY_SIZE)
+
+        var processedImage: Image? = null
+        val isProcessed = displayRecorder.processLatestImage { image -> processedImage = image }
+
+        assertFalse(isProcessed)
+        assertNull(processedImage)
+    }
+
+    @Test
+    fun processLatestImage_peekedImage_newerImagesQueued() = runBlocking {
+        val imageQueue = mockImageQueue()
+        displayRecorder.startProjection(mockContext, TEST_DATA_RESULT_CODE, TEST_DATA_PROJECTION_DATA_INTENT,
+            mockStoppedListener::onStopped)
+        displayRecorder.startScreenRecord(mockContext, TEST_DATA_DISPLAY_SIZE)
+
+        val peekedImage = mock(Image::class.java)
+        imageQueue.add(peekedImage)
+        displayRecorder.peekLatestImage { }
+        val newerImages = List(3) { mock(Image::class.java) }
+        imageQueue.addAll(newerImages)
+
+        var processedImage: Image? = null
+        val isProcessed = displayRecorder.processLatestImage { image -> processedImage = image }
+
+        assertTrue(isProcessed)
+        assertEquals(newerImages.last(), processedImage)
+        assertTrue(imageQueue.isEmpty())
+        verify(peekedImage).close()
+        newerImages.forEach { image -> verify(image).close() }
+    }
+
     @Test
     fun onStoppedCallback() = runBlocking {
         displayRecorder.startProjection(mockContext, TEST_DATA_RESULT_CODE, TEST_DATA_PROJECTION_DATA_INTENT,
@@ -36,6 +36,9 @@ public class ShadowImageReader {
     /** The number of time [newInstance] have been called before the reset. */
     private static int sInstanceCreationCount = 0;
 
+    /** The maximum number of images of the last [newInstance] call. */
+    private static int sMaxImages = 0;
+
     /**
      * Method to be called from the tests to set the mock returned by the [ImageReader.newInstance] method.
      *
@@ -50,6 +53,11 @@ public class ShadowImageReader {
         return sInstanceCreationCount;
     }
 
+    /** @return the maximum number of images of the last [newInstance] call. */
+    public static int getMaxImages() {
+        return sMaxImages;
+    }
+
     @NonNull
     @Implementation
     public static ImageReader newInstance(int width, int height, int format, int maxImages) {
@@ -57,6 +65,7 @@ public class ShadowImageReader {
             throw new IllegalStateException("Image reader is not mocked");
         }
         sInstanceCreationCount++;
+        sMaxImages = maxImages;
         return mockImageReader;
     }
 
@@ -65,5 +74,6 @@ public class ShadowImageReader {
     public static void reset() {
         mockImageReader = null;
         sInstanceCreationCount = 0;
+        sMaxImages = 0;
     }
 }
@@ -71,7 +71,15 @@ sealed class Action {
              * When the condition operator is AND, click on the condition specified by the user.
              * When the condition operator is OR, click on the condition detected condition.
              */
-            ON_DETECTED_CONDITION;
+            ON_DETECTED_CONDITION,
+            /**
+             * Click on each match of the detected condition on the screen, from the best to the worst one.
+             * The condition is selected the same way as for [ON_DETECTED_CONDITION].
+             */
+            ON_EACH_DETECTED_CONDITION;
+
+            /** @return true if the click position depends on the detected condition, false if not. */
+            fun isOnCondition(): Boolean = this == ON_DETECTED_CONDITION || this == ON_EACH_DETECTED_CONDITION
 
             fun toEntity(): ClickPositionType = ClickPositionType.valueOf(name)
         }
@@ -83,7 +91,7 @@ sealed class Action {
         override fun deepCopy(): Click = copy(name = "" + name)
 
         private fun isPositionValid(): Boolean =
-            (positionType == PositionType.USER_SELECTED && x != null && y != null) || positionType == PositionType.ON_DETECTED_CONDITION
+            (positionType == PositionType.USER_SELECTED && x != null && y != null) || positionType.isOnCondition()
     }
 
     /**
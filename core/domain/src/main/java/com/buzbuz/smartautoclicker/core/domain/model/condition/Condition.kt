@@ -20,6 +20,7 @@ import android.graphics.Bitmap
 import android.graphics.Rect
 
 import com.buzbuz.smartautoclicker.core.domain.model.DetectionType
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
 import com.buzbuz.smartautoclicker.core.domain.model.Identifier
 
 /**
@@ -32,6 +33,7 @@ import com.buzbuz.smartautoclicker.core.domain.model.Identifier
  * @param area the area of the screen to detect.
  * @param threshold the accepted difference between the conditions and the screen content, in percent (0-100%).
  * @param detectionType the type of detection for this condition. Must be one of [DetectionType].
+ * @param detectionArea the area of the screen to search the condition in. Only used by the [IN_AREA] detection type.
  * @param bitmap the bitmap for the condition. Not set when fetched from the repository.
  */
 data class Condition(
@@ -44,14 +46,22 @@ data class Condition(
     @DetectionType val detectionType: Int,
     val shouldBeDetected: Boolean,
     val bitmap: Bitmap? = null,
+    val detectionArea: Rect? = null,
 ) {
 
     /** @return creates a deep copy of this condition. */
     fun deepCopy(): Condition = copy(
         path = "" + path,
         area = Rect(area),
+        detectionArea = detectionArea?.let { Rect(it) },
     )
 
     /** Tells if this condition is complete and valid to be saved. */
-    fun isComplete(): Boolean = name.isNotEmpty() && (path != null || bitmap != null)
+    fun isComplete(): Boolean = name.isNotEmpty() && (path != null || bitmap != null) && isDetectionAreaValid()
+
+    /** Tells if the detection area can contains this condition, if it is required by the detection type. */
+    fun isDetectionAreaValid(): Boolean =
+        detectionType != IN_AREA || detectionArea?.let { detectionArea ->
+            detectionArea.width() >= area.width() && detectionArea.height() >= area.height()
+        } ?: false
 }
@@ -34,6 +34,10 @@ internal fun Condition.toEntity() = ConditionEntity(
     threshold = threshold,
     detectionType = detectionType,
     shouldBeDetected = shouldBeDetected,
+    detectionAreaLeft = detectionArea?.left,
+    detectionAreaTop = detectionArea?.top,
+    detectionAreaRight = detectionArea?.right,
+    detectionAreaBottom = detectionArea?.bottom,
 )
 
 /** @return the condition for this entity. */
@@ -46,4 +50,15 @@ internal fun ConditionEntity.toCondition(asDomain: Boolean = false) = Condition(
     threshold = threshold,
     detectionType = detectionType,
     shouldBeDetected = shouldBeDetected,
-)
\ No newline at end of file
+    detectionArea = getDetectionArea(),
+)
+
+/** @return the detection area of this entity, or null if it is not defined. */
+private fun ConditionEntity.getDetectionArea(): Rect? {
+    val left = detectionAreaLeft ?: return null
+    val top = detectionAreaTop ?: return null
+    val right = detectionAreaRight ?: return null
+    val bottom = detectionAreaBottom ?: return null
+
+    return Rect(left, top, right, bottom)
+}
\ No newline at end of file
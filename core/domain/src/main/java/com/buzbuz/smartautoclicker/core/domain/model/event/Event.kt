@@ -57,7 +57,7 @@ data class Event(
             if (!action.isComplete()) return false
             if (conditionOperator == AND
                 && action is Action.Click
-                && action.positionType == Action.Click.PositionType.ON_DETECTED_CONDITION
+                && action.positionType.isOnCondition()
                 && action.clickOnConditionId == null) return false
         }
 
@@ -31,6 +31,15 @@ import com.buzbuz.smartautoclicker.core.domain.model.Identifier
  *                             value of [com.buzbuz.smartautoclicker.domain.ConditionOperator].
  * @param randomize tells if the actions values should be randomized a bit.
  * @param eventCount the number of events in this scenario. Default value is 0.
+ * @param maxFps the maximum number of screen images processed per second during the detection. 0 for no limit.
+ * @param backoffFrameCount the number of consecutive images without fulfilled event or screen change before slowing
+ *                          down the detection. 0 to never slow it down.
+ * @param backoffMaxDelay the maximum delay between two processed images when the detection is slowed down, in
+ *                        milliseconds.
+ * @param downscaleCapture if true, the screen is recorded directly at the detection resolution during the detection,
+ *                         instead of being recorded at full size and downscaled for each image.
+ * @param multiScaleMatching if true, the conditions not found at their captured size are also searched at several other
+ *                           sizes, allowing to detect them on screens with a different density.
  */
 data class Scenario(
     val id: Identifier,
@@ -39,4 +48,9 @@ data class Scenario(
     @ConditionOperator val endConditionOperator: Int,
     val randomize: Boolean = false,
     val eventCount: Int = 0,
+    val maxFps: Int = 0,
+    val backoffFrameCount: Int = 0,
+    val backoffMaxDelay: Long = 0,
+    val downscaleCapture: Boolean = false,
+    val multiScaleMatching: Boolean = false,
 )
@@ -27,6 +27,11 @@ internal fun Scenario.toEntity() = ScenarioEntity(
     detectionQuality = detectionQuality,
     endConditionOperator = endConditionOperator,
     randomize = randomize,
+    maxFps = maxFps,
+    backoffFrameCount = backoffFrameCount,
+    backoffMaxDelay = backoffMaxDelay,
+    downscaleCapture = downscaleCapture,
+    multiScaleMatching = multiScaleMatching,
 )
 
 /** @return the scenario for this entity. */
@@ -36,6 +41,11 @@ internal fun ScenarioEntity.toScenario(asDomain: Boolean = false) = Scenario(
     detectionQuality = detectionQuality,
     endConditionOperator = endConditionOperator,
     randomize = randomize,
+    maxFps = maxFps,
+    backoffFrameCount = backoffFrameCount,
+    backoffMaxDelay = backoffMaxDelay,
+    downscaleCapture = downscaleCapture,
+    multiScaleMatching = multiScaleMatching,
 )
 
 /** @return the scenario for this entity. */
@@ -46,4 +56,9 @@ internal fun ScenarioWithEvents.toScenario() = Scenario(
     endConditionOperator = scenario.endConditionOperator,
     randomize = scenario.randomize,
     eventCount = events.size,
+    maxFps = scenario.maxFps,
+    backoffFrameCount = scenario.backoffFrameCount,
+    backoffMaxDelay = scenario.backoffMaxDelay,
+    downscaleCapture = scenario.downscaleCapture,
+    multiScaleMatching = scenario.multiScaleMatching,
 )
\ No newline at end of file
@@ -21,15 +21,9 @@ import android.accessibilityservice.GestureDescription
 import android.content.Intent
 import android.graphics.Path
 import android.util.Log
-import com.buzbuz.smartautoclicker.core.domain.model.OR
-import com.buzbuz.smartautoclicker.core.domain.model.action.Action
-import com.buzbuz.smartautoclicker.core.domain.model.action.Action.Click
-import com.buzbuz.smartautoclicker.core.domain.model.action.Action.Pause
-import com.buzbuz.smartautoclicker.core.domain.model.action.Action.Swipe
 import com.buzbuz.smartautoclicker.core.domain.model.action.Action.ToggleEvent
 import com.buzbuz.smartautoclicker.core.domain.model.action.GESTURE_DURATION_MAX_VALUE
-import com.buzbuz.smartautoclicker.core.domain.model.action.putDomainExtra
-import com.buzbuz.smartautoclicker.core.domain.model.event.Event
+import com.buzbuz.smartautoclicker.core.processing.data.processor.ConditionProcessingResult
 import com.buzbuz.smartautoclicker.core.processing.data.processor.ProcessingResults
 import com.buzbuz.smartautoclicker.core.processing.my.IScenarioTransmit
 import com.buzbuz.smartautoclicker.core.processing.my.ScenarioTransmit
@@ -65,57 +59,101 @@ internal class ActionExecutor(
 
     /**
      * Execute the provided actions.
-     * @param actions the actions to be executed.
+     * @param actions the compiled actions to be executed.
      * @param processingResults contains the detection results for actions that needs context.
      */
-    suspend fun executeActions(event: Event, actions: List<Action>, processingResults: ProcessingResults) {
-        actions.forEach { action ->
-            when (action) {
-                is Click -> executeClick(event, action, processingResults)
-                is Swipe -> executeSwipe(action)
-                is Pause -> executePause(action)
-                is Action.Intent -> executeIntent(action)
-                is ToggleEvent -> executeToggleEvent(action)
-                else -> {}
+    suspend fun executeActions(actions: ActionsPlan, processingResults: ProcessingResults) {
+        for (actionIndex in 0 until actions.actionCount) {
+            when (actions.getType(actionIndex)) {
+                ACTION_CLICK -> executeClickGesture(
+                    actions.getDuration(actionIndex),
+                    actions.getX(actionIndex),
+                    actions.getY(actionIndex),
+                )
+                ACTION_CLICK_ON_CONDITION -> executeClickOnCondition(actions, actionIndex, processingResults)
+                ACTION_CLICK_ON_EACH_CONDITION -> executeClickOnEachCondition(actions, actionIndex, processingResults)
+                ACTION_SWIPE -> executeSwipe(actions, actionIndex)
+                ACTION_PAUSE -> executePause(actions.getDuration(actionIndex))
+                ACTION_START_ACTIVITY, ACTION_BROADCAST -> executeIntent(actions, actionIndex)
+                ACTION_TOGGLE_EVENT -> scenarioEditor.changeEventState(
+                    actions.getToggledEventId(actionIndex),
+                    actions.getToggleType(actionIndex),
+                )
             }
         }
     }
 
     /**
-     * Execute the provided click.
-     * @param click the click to be executed.
+     * Execute the provided click on the detected condition.
+     * @param actions the compiled actions.
+     * @param actionIndex the index of the click in the actions.
      */
-    private suspend fun executeClick(event: Event, click: Click, processingResults: ProcessingResults) {
-        val clickPath = Path()
-        val clickBuilder = GestureDescription.Builder()
-
-        when (click.positionType) {
-            Click.PositionType.USER_SELECTED ->
-                clickPath.moveTo(click.x!!, click.y!!, randomize)
-
-            Click.PositionType.ON_DETECTED_CONDITION -> {
-                val result = when {
-                    event.conditionOperator == OR ->
-                        processingResults.getFirstMatchResult()
-                    click.clickOnConditionId != null ->
-                        processingResults.getResult(click.eventId.databaseId, click.clickOnConditionId!!.databaseId)
-                    else -> null
-                }
+    private suspend fun executeClickOnCondition(
+        actions: ActionsPlan,
+        actionIndex: Int,
+        processingResults: ProcessingResults,
+    ) {
+        val result = getClickedConditionResult(actions, actionIndex, processingResults) ?: return
+        executeClickGesture(actions.getDuration(actionIndex), result.position.x, result.position.y)
+    }
 
-                if (result == null) {
-                    Log.w(TAG, "Click is invalid, can't execute")
-                    return
-                }
+    /**
+     * Execute the provided click on each match of the detected condition.
+     * @param actions the compiled actions.
+     * @param actionIndex the index of the click in the actions.
+     */
+    private suspend fun executeClickOnEachCondition(
+        actions: ActionsPlan,
+        actionIndex: Int,
+        processingResults: ProcessingResults,
+    ) {
+        val result = getClickedConditionResult(actions, actionIndex, processingResults) ?: return
+        val duration = actions.getDuration(actionIndex)
+
+        // The matches haven't been detected, click on the detected one only.
+        if (result.matchCount == 0) {
+            executeClickGesture(duration, result.position.x, result.position.y)
+            return
+        }
 
-                clickPath.moveTo(result.position.x, result.position.y, randomize)
-            }
+        for (matchIndex in 0 until result.matchCount) {
+            executeClickGesture(duration, result.getMatchX(matchIndex), result.getMatchY(matchIndex))
         }
+    }
+
+    /**
+     * Get the detection results of the condition to be clicked on.
+     * @param actions the compiled actions.
+     * @param actionIndex the index of the click on a condition in the actions.
+     * @return the results of the condition, or null if the click is invalid.
+     */
+    private fun getClickedConditionResult(
+        actions: ActionsPlan,
+        actionIndex: Int,
+        processingResults: ProcessingResults,
+    ): ConditionProcessingResult? {
+        val result = actions.getClickedConditionResult(actionIndex, processingResults)
+
+        if (result == null) Log.w(TAG, "Click is invalid, can't execute")
+        return result
+    }
 
+    /**
+     * Execute the gesture of a click at the provided position.
+     * @param pressDuration the duration of the click.
+     * @param x the horizontal position of the click.
+     * @param y the vertical position of the click.
+     */
+    private suspend fun executeClickGesture(pressDuration: Long, x: Int, y: Int) {
+        val clickPath = Path()
+        val clickBuilder = GestureDescription.Builder()
+
+        clickPath.moveTo(x, y, randomize)
         clickBuilder.addStroke(
             GestureDescription.StrokeDescription(
                 clickPath,
                 0,
-                if (randomize) random.getRandomizedGestureDuration(click.pressDuration!!) else click.pressDuration!!,
+                if (randomize) random.getRandomizedGestureDuration(pressDuration) else pressDuration,
             )
         )
 
@@ -126,22 +164,29 @@ internal class ActionExecutor(
 
     /**
      * Execute the provided swipe.
-     * @param swipe the swipe to be executed.
+     * @param actions the compiled actions.
+     * @param actionIndex the index of the swipe in the actions.
      */
 
-    private suspend fun executeSwipe(swipe: Swipe) {
+    private suspend fun executeSwipe(actions: ActionsPlan, actionIndex: Int) {
+        val fromX = actions.getX(actionIndex)
+        val fromY = actions.getY(actionIndex)
+        val toX = actions.getToX(actionIndex)
+        val toY = actions.getToY(actionIndex)
+        val swipeDuration = actions.getDuration(actionIndex)
+
         val swipePath = Path()
         val swipeBuilder = GestureDescription.Builder()
 
 
         if (transmiter.state == 1) {
-            swipePath.moveTo(swipe.fromX!!, swipe.fromY!!, randomize)
-            swipePath.lineTo(swipe.toX!!, swipe.toY!!, randomize)
+            swipePath.moveTo(fromX, fromY, randomize)
+            swipePath.lineTo(toX, toY, randomize)
         }
         if (transmiter.state == 2) {
             //противоположное по вертикали направление свайпа
-            swipePath.moveTo(swipe.toX!!, swipe.toY!!, randomize)
-            swipePath.lineTo(swipe.fromX!!, swipe.fromY!!, randomize)
+            swipePath.moveTo(toX, toY, randomize)
+            swipePath.lineTo(fromX, fromY, randomize)
         }
         if (transmiter.state != 1 && transmiter.state != 2) {
             //противоположное по вертикали направление свайпа
@@ -153,7 +198,7 @@ internal class ActionExecutor(
             GestureDescription.StrokeDescription(
                 swipePath,
                 0,
-                if (randomize) random.getRandomizedGestureDuration(swipe.swipeDuration!!) else swipe.swipeDuration!!
+                if (randomize) random.getRandomizedGestureDuration(swipeDuration) else swipeDuration
             )
         )
 
@@ -179,29 +224,21 @@ internal class ActionExecutor(
 
     /**
      * Execute the provided pause.
-     * @param pause the pause to be executed.
+     * @param pauseDuration the duration of the pause.
      */
-    private suspend fun executePause(pause: Pause) {
-        delay(if (randomize) random.getRandomizedDuration(pause.pauseDuration!!) else pause.pauseDuration!!)
+    private suspend fun executePause(pauseDuration: Long) {
+        delay(if (randomize) random.getRandomizedDuration(pauseDuration) else pauseDuration)
     }
 
     /**
      * Execute the provided intent.
-     * @param intent the intent to be executed.
+     * @param actions the compiled actions.
+     * @param actionIndex the index of the intent in the actions.
      */
-    private suspend fun executeIntent(intent: Action.Intent) {
-        val androidIntent = Intent().apply {
-            action = intent.intentAction!!
-            flags = intent.flags!!
-
-            intent.componentName?.let {
-                component = intent.componentName
-            }
-
-            intent.extras?.forEach { putDomainExtra(it) }
-        }
+    private suspend fun executeIntent(actions: ActionsPlan, actionIndex: Int) {
+        val androidIntent = actions.getIntent(actionIndex) ?: return
 
-        if (intent.isBroadcast!!) {
+        if (actions.getType(actionIndex) == ACTION_BROADCAST) {
             withContext(Dispatchers.Main) {
                 androidExecutor.executeSendBroadcast(androidIntent)
             }
@@ -214,14 +251,6 @@ internal class ActionExecutor(
         }
     }
 
-    /**
-     * Execute the provided toggle event.
-     * @param toggleEvent the toggleEvent to be executed.
-     */
-    private fun executeToggleEvent(toggleEvent: ToggleEvent) {
-        scenarioEditor.changeEventState(toggleEvent.toggleEventId!!.databaseId, toggleEvent.toggleEventType!!)
-    }
-
     private fun Path.moveTo(x: Int, y: Int, randomize: Boolean) {
         if (!randomize) moveTo(x.toFloat(), y.toFloat())
         else moveTo(random.getRandomizedPosition(x), random.getRandomizedPosition(y))
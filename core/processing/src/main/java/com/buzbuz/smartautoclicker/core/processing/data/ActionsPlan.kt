@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data
+
+import android.content.Intent
+import android.util.Log
+
+import com.buzbuz.smartautoclicker.core.domain.model.OR
+import com.buzbuz.smartautoclicker.core.domain.model.action.Action
+import com.buzbuz.smartautoclicker.core.domain.model.action.putDomainExtra
+import com.buzbuz.smartautoclicker.core.domain.model.event.Event
+import com.buzbuz.smartautoclicker.core.processing.data.processor.ConditionProcessingResult
+import com.buzbuz.smartautoclicker.core.processing.data.processor.ProcessingResults
+
+/**
+ * The actions of an event, compiled once when the detection starts into flat arrays of primitives.
+ *
+ * Each action is referenced by its index, and is described by its type, one of the ACTION_* values, and the values
+ * of its type in the arrays at its index: the position of a click or the start of a swipe in [xs] and [ys], the end of a
+ * swipe in [toXs] and [toYs], the duration of a click, a swipe or a pause in [durations]... The Android intents are
+ * also built at compile time, and reused for each execution. The incomplete actions can't be executed and are not compiled.
+ *
+ * @param event the event of the actions.
+ * @param actions the actions to compile, the ones of the event by default.
+ */
+internal class ActionsPlan(event: Event, actions: List<Action> = event.actions) {
+
+    /** The database id of the event. */
+    private val eventId: Long = event.id.databaseId
+    /** Tells if the clicks on a condition are on the first fulfilled condition of the event. */
+    private val isClickingFirstMatch: Boolean = event.conditionOperator == OR
+
+    /** The type of each action. */
+    private val types = IntArray(actions.size)
+    /** The horizontal position of each click, or the start of each swipe. */
+    private val xs = IntArray(actions.size)
+    /** The vertical position of each click, or the start of each swipe. */
+    private val ys = IntArray(actions.size)
+    /** The horizontal position of the end of each swipe. */
+    private val toXs = IntArray(actions.size)
+    /** The vertical position of the end of each swipe. */
+    private val toYs = IntArray(actions.size)
+    /** The duration of each click, swipe or pause, in milliseconds. */
+    private val durations = LongArray(actions.size)
+    /** The database id of the condition clicked by each click on a condition, or [NO_ID] to click on none. */
+    private val conditionsIds = LongArray(actions.size)
+    /** The database id of the event toggled by each toggle event. */
+    private val toggledEventsIds = LongArray(actions.size)
+    /** The type of each toggle event. */
+    private val toggleTypes = Array(actions.size) { Action.ToggleEvent.ToggleType.TOGGLE }
+    /** The Android intent of each intent, null for the other actions. */
+    private val intents = arrayOfNulls<Intent>(actions.size)
+
+    /** The number of actions compiled. */
+    var actionCount: Int = 0
+        private set
+    /** Tells if one of the actions clicks on each match of a condition. */
+    var isClickingEachMatch: Boolean = false
+        private set
+
+    init {
+        actions.forEach { action ->
+            if (compileAction(actionCount, action)) actionCount++
+            else Log.w(TAG, "Action ${action.id} is incomplete, it is not executed.")
+        }
+    }
+
+    /** @return the type of the action, one of the ACTION_* values. */
+    fun getType(actionIndex: Int): Int = types[actionIndex]
+
+    /** @return the horizontal position of the click, or of the start of the swipe. */
+    fun getX(actionIndex: Int): Int = xs[actionIndex]
+
+    /** @return the vertical position of the click, or of the start of the swipe. */
+    fun getY(actionIndex: Int): Int = ys[actionIndex]
+
+    /** @return the horizontal position of the end of the swipe. */
+    fun getToX(actionIndex: Int): Int = toXs[actionIndex]
+
+    /** @return the vertical position of the end of the swipe. */
+    fun getToY(actionIndex: Int): Int = toYs[actionIndex]
+
+    /** @return the duration of the click, the swipe or the pause, in milliseconds. */
+    fun getDuration(actionIndex: Int): Long = durations[actionIndex]
+
+    /** @return the database id of the event toggled by the toggle event. */
+    fun getToggledEventId(actionIndex: Int): Long = toggledEventsIds[actionIndex]
+
+    /** @return the type of the toggle event. */
+    fun getToggleType(actionIndex: Int): Action.ToggleEvent.ToggleType = toggleTypes[actionIndex]
+
+    /** @return the Android intent of the intent, or null if the action is not an intent. */
+    fun getIntent(actionIndex: Int): Intent? = intents[actionIndex]
+
+    /**
+     * Get the detection results of the condition to be clicked on by a click on a condition.
+     *
+     * @param actionIndex the index of the click.
+     * @param processingResults the detection results of the event.
+     *
+     * @return the results of the condition, or null if the click is invalid.
+     */
+    fun getClickedConditionResult(actionIndex: Int, processingResults: ProcessingResults): ConditionProcessingResult? =
+        when {
+            isClickingFirstMatch -> processingResults.getFirstMatchResult()
+            conditionsIds[actionIndex] != NO_ID -> processingResults.getResult(eventId, conditionsIds[actionIndex])
+            else -> null
+        }
+
+    /**
+     * Compile an action at the given index.
+     *
+     * @param actionIndex the index of the action in the plan.
+     * @param action the action to compile.
+     *
+     * @return true if the action has been compiled, false if it is incomplete.
+     */
+    private fun compileAction(actionIndex: Int, action: Action): Boolean {
+        when (action) {
+            is Action.Click -> {
+                types[actionIndex] = when (action.positionType) {
+                    Action.Click.PositionType.USER_SELECTED -> {
+                        xs[actionIndex] = action.x ?: return false
+                        ys[actionIndex] = action.y ?: return false
+                        ACTION_CLICK
+                    }
+                    Action.Click.PositionType.ON_DETECTED_CONDITION -> ACTION_CLICK_ON_CONDITION
+                    Action.Click.PositionType.ON_EACH_DETECTED_CONDITION -> ACTION_CLICK_ON_EACH_CONDITION
+                }
+                durations[actionIndex] = action.pressDuration ?: return false
+                conditionsIds[actionIndex] = action.clickOnConditionId?.databaseId ?: NO_ID
+                if (types[actionIndex] == ACTION_CLICK_ON_EACH_CONDITION) isClickingEachMatch = true
+            }
+
+            is Action.Swipe -> {
+                types[actionIndex] = ACTION_SWIPE
+                xs[actionIndex] = action.fromX ?: return false
+                ys[actionIndex] = action.fromY ?: return false
+                toXs[actionIndex] = action.toX ?: return false
+                toYs[actionIndex] = action.toY ?: return false
+                durations[actionIndex] = action.swipeDuration ?: return false
+            }
+
+            is Action.Pause -> {
+                types[actionIndex] = ACTION_PAUSE
+                durations[actionIndex] = action.pauseDuration ?: return false
+            }
+
+            is Action.Intent -> {
+                val intentAction = action.intentAction ?: return false
+                val intentFlags = action.flags ?: return false
+                val intentComponent = action.componentName
+                val intentExtras = action.extras
+
+                types[actionIndex] = if (action.isBroadcast ?: return false) ACTION_BROADCAST else ACTION_START_ACTIVITY
+                intents[actionIndex] = Intent().apply {
+                    this.action = intentAction
+                    flags = intentFlags
+                    intentComponent?.let { component = it }
+                    intentExtras?.forEach { putDomainExtra(it) }
+                }
+            }
+
+            is Action.ToggleEvent -> {
+                types[actionIndex] = ACTION_TOGGLE_EVENT
+                toggledEventsIds[actionIndex] = action.toggleEventId?.databaseId ?: return false
+                toggleTypes[actionIndex] = action.toggleEventType ?: return false
+            }
+        }
+
+        return true
+    }
+}
+
+/** Type of a click on a position selected by the user. */
+internal const val ACTION_CLICK = 1
+/** Type of a click on the detected condition. */
+internal const val ACTION_CLICK_ON_CONDITION = 2
+/** Type of a click on each match of the detected condition. */
+internal const val ACTION_CLICK_ON_EACH_CONDITION = 3
+/** Type of a swipe. */
+internal const val ACTION_SWIPE = 4
+/** Type of a pause. */
+internal const val ACTION_PAUSE = 5
+/** Type of an intent starting an activity. */
+internal const val ACTION_START_ACTIVITY = 6
+/** Type of an intent sending a broadcast. */
+internal const val ACTION_BROADCAST = 7
+/** Type of a toggle event. */
+internal const val ACTION_TOGGLE_EVENT = 8
+
+/** Value of [ActionsPlan.conditionsIds] for a click on no specific condition. */
+private const val NO_ID = -1L
+/** Tag for logs. */
+private const val TAG = "ActionsPlan"
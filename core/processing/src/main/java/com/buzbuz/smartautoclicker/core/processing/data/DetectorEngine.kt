@@ -19,12 +19,16 @@ package com.buzbuz.smartautoclicker.core.processing.data
 import android.content.Context
 import android.content.Intent
 import android.graphics.Bitmap
+import android.graphics.Point
 import android.media.Image
 import android.media.projection.MediaProjectionManager
+import android.os.SystemClock
 import android.util.Log
 
 import com.buzbuz.smartautoclicker.core.display.DisplayRecorder
 import com.buzbuz.smartautoclicker.core.display.DisplayMetrics
+import com.buzbuz.smartautoclicker.core.detection.DETECTION_WORKER_COUNT_MAX
+import com.buzbuz.smartautoclicker.core.detection.DETECTION_WORKER_COUNT_MIN
 import com.buzbuz.smartautoclicker.core.detection.ImageDetector
 import com.buzbuz.smartautoclicker.core.detection.NativeDetector
 import com.buzbuz.smartautoclicker.core.domain.Repository
@@ -35,14 +39,21 @@ import com.buzbuz.smartautoclicker.core.domain.model.scenario.Scenario
 import com.buzbuz.smartautoclicker.core.processing.data.processor.ProgressListener
 import com.buzbuz.smartautoclicker.core.processing.data.processor.ScenarioProcessor
 
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.cancel
 import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 
@@ -58,20 +69,31 @@ import kotlinx.coroutines.flow.StateFlow
  */
 internal class DetectorEngine(context: Context) {
 
+    /** The application context, to restart the screen record when the detection is stopped. */
+    private val applicationContext: Context = context.applicationContext
+
     /** Monitors the state of the screen. */
     private val displayMetrics = DisplayMetrics.getInstance(context)
     /** Listener upon orientation changes. */
     private val orientationListener = ::onOrientationChanged
 
-    /** Record the screen and provide images via [DisplayRecorder.acquireLatestBitmap]. */
+    /** Record the screen and provide images via [DisplayRecorder.processLatestImage]. */
     private val displayRecorder = DisplayRecorder.getInstance()
     /** Process the events conditions to detect them on the screen. */
     private var scenarioProcessor: ScenarioProcessor? = null
     /** Detect the condition images on the screen image. */
     private var imageDetector: ImageDetector? = null
+    /** Delays the processing of the screen frames according to the frame pacing policy of the scenario. */
+    private var framePacer: FramePacer? = null
     /** The executor for the actions requiring an interaction with Android. */
     private var androidExecutor: AndroidExecutor? = null
 
+    /**
+     * The ratio between the size of the recorded images and the size of the screen.
+     * Lower than 1 when the screen is recorded at the detection resolution, see [startDetection].
+     */
+    private var captureScale: Double = FULL_SIZE_CAPTURE_SCALE
+
     /** Coroutine scope for the image processing. */
     private var processingScope: CoroutineScope? = null
     /** Coroutine job for the image currently processed. */
@@ -130,7 +152,7 @@ internal class DetectorEngine(context: Context) {
                 startProjection(context, resultCode, data) {
                     this@DetectorEngine.stopScreenRecord()
                 }
-                startScreenRecord(context, displayMetrics.screenSize)
+                startScreenRecord(context, getCaptureSize())
             }
 
             _state.emit(DetectorState.RECORDING)
@@ -145,6 +167,10 @@ internal class DetectorEngine(context: Context) {
      * callback.
      * [state] should be RECORDING to capture. Detection can be stopped with [stopDetection] or [stopScreenRecord].
      *
+     * If [Scenario.downscaleCapture] is set, the screen is recorded directly at the detection resolution of the scenario
+     * during the detection, instead of being recorded at full size and downscaled for each image. The positions of the
+     * conditions and of the results are still in screen coordinates.
+     *
      * @param bitmapSupplier provides the conditions bitmaps.
      * @param progressListener object to notify upon start/completion of detections steps.
      */
@@ -168,8 +194,18 @@ internal class DetectorEngine(context: Context) {
 
 
         processingScope?.launchProcessingJob {
+            if (scenario.downscaleCapture) {
+                captureScale = getDetectionCaptureScale(scenario.detectionQuality)
+                if (captureScale != FULL_SIZE_CAPTURE_SCALE) restartScreenRecord(context)
+            }
+
             val detector = NativeDetector()
+            detector.setDetectionWorkerCount(
+                DETECTION_WORKER_COUNT.coerceAtMost(Runtime.getRuntime().availableProcessors())
+                    .coerceIn(DETECTION_WORKER_COUNT_MIN, DETECTION_WORKER_COUNT_MAX)
+            )
             imageDetector = detector
+            framePacer = FramePacer(scenario.maxFps, scenario.backoffFrameCount, scenario.backoffMaxDelay)
 
             detectionProgressListener = progressListener
             progressListener?.onSessionStarted(context, scenario, events)
@@ -185,6 +221,8 @@ internal class DetectorEngine(context: Context) {
                 endConditions =  endConditions,
                 onStopRequested = { stopDetection() },
                 progressListener  = progressListener,
+                captureScale = captureScale,
+                isMultiScaleMatching = scenario.multiScaleMatching,
             )
 
             processScreenImages()
@@ -205,9 +243,8 @@ internal class DetectorEngine(context: Context) {
                 processingJob?.cancelAndJoin()
             }
 
-            displayRecorder.stopScreenRecord()
             detectionProgressListener?.cancelCurrentProcessing()
-            displayRecorder.startScreenRecord(context, displayMetrics.screenSize)
+            restartScreenRecord(context)
 
             if (_state.value == DetectorState.DETECTING) {
                 processingScope?.launchProcessingJob {
@@ -217,6 +254,37 @@ internal class DetectorEngine(context: Context) {
         }
     }
 
+    /**
+     * Restart the screen record with the current screen size and [captureScale].
+     *
+     * @param context the Android context.
+     */
+    private suspend fun restartScreenRecord(context: Context) {
+        displayRecorder.stopScreenRecord()
+        displayRecorder.startScreenRecord(context, getCaptureSize())
+    }
+
+    /** @return the size of the recorded images, according to the current screen size and [captureScale]. */
+    private fun getCaptureSize(): Point {
+        val screenSize = displayMetrics.screenSize
+        if (captureScale == FULL_SIZE_CAPTURE_SCALE) return screenSize
+
+        return Point((screenSize.x * captureScale).roundToInt(), (screenSize.y * captureScale).roundToInt())
+    }
+
+    /**
+     * Get the capture scale recording the screen at the detection resolution.
+     * This is the same ratio than the one used by the [ImageDetector] to downscale the screen images.
+     *
+     * @param detectionQuality the detection quality of the scenario.
+     *
+     * @return the capture scale, [FULL_SIZE_CAPTURE_SCALE] if the screen is smaller than the detection resolution.
+     */
+    private fun getDetectionCaptureScale(detectionQuality: Int): Double {
+        val screenSize = displayMetrics.screenSize
+        return min(FULL_SIZE_CAPTURE_SCALE, detectionQuality.toDouble() / max(screenSize.x, screenSize.y))
+    }
+
     /**
      * Stop the screen detection started with [startDetection].
      *
@@ -238,10 +306,17 @@ internal class DetectorEngine(context: Context) {
             processingJob = null
             imageDetector?.close()
             imageDetector = null
+            framePacer = null
             scenarioProcessor = null
             detectionProgressListener?.onSessionEnded()
             detectionProgressListener = null
 
+            // The screen record is also used to capture the conditions, get back to the full size.
+            if (captureScale != FULL_SIZE_CAPTURE_SCALE) {
+                captureScale = FULL_SIZE_CAPTURE_SCALE
+                restartScreenRecord(applicationContext)
+            }
+
             _state.emit(DetectorState.RECORDING)
             processingShutdownJob = null
         }
@@ -279,15 +354,88 @@ internal class DetectorEngine(context: Context) {
         }
     }
 
-    /** Process the latest images provided by the [DisplayRecorder]. */
-    private suspend fun processScreenImages() {
+    /**
+     * Process the latest images provided by the [DisplayRecorder].
+     *
+     * The processing is made by two stages, each one in its own coroutine:
+     *  - the detection stage waits for the latest image, converts it and detects the events conditions on it. The older
+     *  images are dropped by the [DisplayRecorder], only the latest one is processed.
+     *  - the actions stage executes the actions of the events fulfilled by the detection stage.
+     *
+     * This allows the detection to continue on the new images while the actions are executing, which can takes a while
+     * with gestures, pauses or intents. The events fulfilled during this time are dropped by the [ScenarioProcessor],
+     * as the screen may not display the results of the executing actions yet. The bounded channel between the stages
+     * will then only contains a single event at most.
+     *
+     * Between two images, the detection stage waits for the delay given by the [FramePacer] of the scenario, if any.
+     * The slow down after inactive images ends as soon as the screen changes significantly, see [awaitFrameDelay].
+     */
+    private suspend fun processScreenImages() = coroutineScope {
         _state.emit(DetectorState.DETECTING)
 
-        scenarioProcessor?.invalidateScreenMetrics()
+        val processor = scenarioProcessor ?: return@coroutineScope
+        val detector = imageDetector ?: return@coroutineScope
+        val pacer = framePacer?.takeUnless { it.isUnlimited }
+        processor.invalidateScreenMetrics()
+
+        val fulfilledEvents = Channel<Event>(FULFILLED_EVENTS_CAPACITY)
+        launch(Dispatchers.Default) {
+            for (event in fulfilledEvents) processor.execute(event)
+        }
+
         while (processingJob?.isActive == true) {
-            displayRecorder.acquireLatestBitmap()?.let { screenFrame ->
-                scenarioProcessor?.process(screenFrame)
-            } ?: delay(NO_IMAGE_DELAY_MS)
+            if (!displayRecorder.hasPeekedImage) displayRecorder.awaitNewImage()
+
+            val processingStartTime = SystemClock.elapsedRealtime()
+            var fulfilledEvent: Event? = null
+            var screenChangeRatio = 0.0
+            val isProcessed = displayRecorder.processLatestImage { screenImage ->
+                fulfilledEvent = processor.detect(screenImage)
+                screenChangeRatio = detector.getScreenChangeRatio()
+            }
+            fulfilledEvent?.let { event -> fulfilledEvents.send(event) }
+
+            // Slow down according to the pacing policy, the next image will be the latest one after the delay.
+            if (pacer == null || !isProcessed) continue
+            val processingDuration = SystemClock.elapsedRealtime() - processingStartTime
+            val frameDelay = pacer.onFrameProcessed(
+                isActive = fulfilledEvent != null || screenChangeRatio >= ACTIVE_SCREEN_CHANGE_RATIO,
+                processingDuration = processingDuration,
+            )
+
+            // The frame rate limit is always waited, the slow down after inactive frames ends with the screen changes.
+            val frameRateDelay = pacer.getFrameRateDelay(processingDuration)
+            if (frameRateDelay > 0) delay(frameRateDelay)
+            if (frameDelay > frameRateDelay && awaitFrameDelay(processor, frameDelay - frameRateDelay)) pacer.reset()
+        }
+        fulfilledEvents.close()
+    }
+
+    /**
+     * Wait for the slow down delay between two images given by the [FramePacer], or until the screen changes
+     * significantly.
+     *
+     * Each new image during the delay is only compared with the image of the last detection, without detecting the
+     * conditions on it. It is kept by the [DisplayRecorder], and will be the one detected after the delay if there is
+     * no newer one.
+     *
+     * @param processor the processor of the images.
+     * @param frameDelay the delay to wait, in milliseconds.
+     *
+     * @return true if the wait has been interrupted by a change of the screen, false if the whole delay has elapsed.
+     */
+    private suspend fun awaitFrameDelay(processor: ScenarioProcessor, frameDelay: Long): Boolean {
+        val delayEndTime = SystemClock.elapsedRealtime() + frameDelay
+        while (true) {
+            val remainingDelay = delayEndTime - SystemClock.elapsedRealtime()
+            if (remainingDelay <= 0) return false
+            withTimeoutOrNull(remainingDelay) { displayRecorder.awaitNewImage() } ?: return false
+
+            var screenChangeRatio = 0.0
+            displayRecorder.peekLatestImage { screenImage ->
+                screenChangeRatio = processor.getScreenChangeRatio(screenImage)
+            }
+            if (screenChangeRatio >= ACTIVE_SCREEN_CHANGE_RATIO) return true
         }
     }
 
@@ -339,11 +487,24 @@ internal enum class DetectorState {
     DESTROYED,
 }
 
+/** Value of [DetectorEngine.captureScale] when the screen is recorded at full size. */
+private const val FULL_SIZE_CAPTURE_SCALE = 1.0
 /**
- * Waiting delay after getting a null image.
- * This is to avoid spamming when there is no image.
+ * Capacity of the channel between the detection and the actions stages.
+ * The detection stage never provides an event while the actions of the previous one are executing.
  */
-private const val NO_IMAGE_DELAY_MS = 20L
-
+private const val FULFILLED_EVENTS_CAPACITY = 1
+/**
+ * Ratio of the screen that must have changed between two frames for the screen to be considered as active by the
+ * frame pacing. The screen images are only provided on changes, but small ones (clock, animated icon...) are ignored.
+ */
+private const val ACTIVE_SCREEN_CHANGE_RATIO = 0.05
+/**
+ * Number of workers matching the conditions of a detection batch in parallel, if the device has enough cores.
+ * The detection runs continuously in the background for the whole scenario, while the user is using another app: using
+ * all cores would heat the device, drain the battery and slow down the app on screen. Two workers still detect the
+ * costly conditions of a batch by pairs, while leaving the other cores to the app on screen.
+ */
+private const val DETECTION_WORKER_COUNT = 2
 /** Tag for logs. */
 private const val TAG = "DetectorEngine"
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 Kevin Buzeau
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data
+
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Computes the delay between the processing of two screen frames, according to the frame pacing policy of a scenario.
+ *
+ * The frame rate is first limited by [maxFps]. Then, once the screen has been inactive for [backoffFrameCount]
+ * consecutive frames, the delay between the frames doubles on each new inactive frame, up to [backoffMaxDelay]. The
+ * first active frame restores the normal frame rate.
+ *
+ * @param maxFps the maximum number of frames processed per second. 0 for no limit.
+ * @param backoffFrameCount the number of consecutive inactive frames before slowing down. 0 to never slow down.
+ * @param backoffMaxDelay the maximum delay between two frames once slowed down, in milliseconds.
+ */
+internal class FramePacer(
+    maxFps: Int,
+    private val backoffFrameCount: Int,
+    private val backoffMaxDelay: Long,
+) {
+
+    /** The minimum duration of the processing of a frame, in milliseconds. */
+    private val minFrameDuration: Long = if (maxFps > 0) MILLIS_PER_SECOND / maxFps else 0
+    /** Tells if the frame rate is slowed down after inactive frames. */
+    private val isBackoffEnabled: Boolean = backoffFrameCount > 0 && backoffMaxDelay > 0
+
+    /** The number of consecutive inactive frames. */
+    private var inactiveFrameCount: Int = 0
+    /** The current delay between two frames due to the inactivity, in milliseconds. */
+    private var backoffDelay: Long = 0
+
+    /** Tells if this pacer never delays the frames. */
+    val isUnlimited: Boolean
+        get() = minFrameDuration == 0L && !isBackoffEnabled
+
+    /**
+     * Notify the end of the processing of a frame and get the delay to wait before processing the next one.
+     *
+     * @param isActive true if the frame was active (an event was fulfilled, or the screen has changed significantly),
+     *                 false if not.
+     * @param processingDuration the time spent processing the frame, in milliseconds.
+     *
+     * @return the delay to wait before processing the next frame, in milliseconds. 0 for no delay.
+     */
+    fun onFrameProcessed(isActive: Boolean, processingDuration: Long): Long {
+        updateBackoffDelay(isActive)
+        return max(max(minFrameDuration, backoffDelay) - processingDuration, 0)
+    }
+
+    /**
+     * Get the part of the delay before the next frame due to the frame rate limit only.
+     * Contrary to the slow down after inactive frames, this part should not be shortened by a screen change.
+     *
+     * @param processingDuration the time spent processing the frame, in milliseconds.
+     *
+     * @return the delay due to [maxFps], in milliseconds. 0 for no delay.
+     */
+    fun getFrameRateDelay(processingDuration: Long): Long =
+        max(minFrameDuration - processingDuration, 0)
+
+    /** Reset the pacing to its initial state, as if no frames were processed. */
+    fun reset() {
+        inactiveFrameCount = 0
+        backoffDelay = 0
+    }
+
+    private fun updateBackoffDelay(isActive: Boolean) {
+        if (!isBackoffEnabled) return
+
+        if (isActive) {
+            reset()
+            return
+        }
+
+        if (inactiveFrameCount < backoffFrameCount) {
+            inactiveFrameCount++
+            if (inactiveFrameCount < backoffFrameCount) return
+        }
+
+        backoffDelay =
+            if (backoffDelay == 0L) min(BACKOFF_MIN_DELAY_MS, backoffMaxDelay)
+            else min(backoffDelay * 2, backoffMaxDelay)
+    }
+}
+
+/** The number of milliseconds in a second. */
+private const val MILLIS_PER_SECOND = 1000L
+/** The first delay between two frames once slowed down, in milliseconds. */
+private const val BACKOFF_MIN_DELAY_MS = 50L
@@ -17,6 +17,7 @@
 package com.buzbuz.smartautoclicker.core.processing.data
 
 import android.util.Log
+import android.util.LongSparseArray
 
 import com.buzbuz.smartautoclicker.core.domain.model.action.Action
 import com.buzbuz.smartautoclicker.core.domain.model.event.Event
@@ -24,55 +25,97 @@ import com.buzbuz.smartautoclicker.core.domain.model.event.Event
 /**
  * Handle the state of the scenario events.
  *
- * Maintains two maps:
- *  - the enabled events map: those are the events that will be processed.
- *  - the disabled events map: those are the events that will be skipped.
- * Handles the ToggleEvent actions and move the events between those maps accordingly.
+ * The events are compiled once when the detection starts into an array, in the scenario order, and are referenced by
+ * their index in it. Their state is a bitset, with the bit of an event index set when this event is enabled. The
+ * ToggleEvent actions flips those bits, and the processing of each image iterates over the set bits with
+ * [getNextEnabledEventIndex], without any lookup or allocation.
+ *
+ * The events are toggled by the actions execution, while the enabled events are read by the detection of the next
+ * images, from another coroutine. The bitset is copied on each change, and replaced at once.
  */
 internal class ScenarioState(events: List<Event>) : ScenarioEditor {
 
-    /** Map of the enabled events. */
-    private val enabledEventsMap: MutableMap<Long, Event> = mutableMapOf()
-    /** Map of the disabled events. */
-    private val disabledEvents: MutableMap<Long, Event> = mutableMapOf()
+    /** The events of the scenario, in the processing order. */
+    private val events: Array<Event> = events.toTypedArray()
+    /** The index of each event in [events], by event database id. */
+    private val eventsIndexes: LongSparseArray<Int> = LongSparseArray<Int>(events.size).apply {
+        events.forEachIndexed { index, event -> put(event.id.databaseId, index) }
+    }
+
+    /** The enabled events bitset. The bit of an event index is in the word at this index divided by 64. */
+    @Volatile
+    private var enabledEvents: LongArray = LongArray((events.size + Long.SIZE_BITS - 1) / Long.SIZE_BITS).apply {
+        events.forEachIndexed { index, event -> if (event.enabledOnStart) setBit(index, true) }
+    }
+
+    /** The number of events in the scenario. */
+    val eventCount: Int
+        get() = events.size
+
+    /** @return the event at the given index. */
+    fun getEvent(eventIndex: Int): Event = events[eventIndex]
+
+    /** @return the index of the event with the given database id, or [NO_EVENT] if there is none. */
+    fun getEventIndex(eventId: Long): Int = eventsIndexes[eventId] ?: NO_EVENT
+
+    /**
+     * Get the index of the next enabled event, in the scenario order.
+     *
+     * @param fromIndex the index to start the search from, included.
+     * @return the index of the next enabled event, or [NO_EVENT] if there is none.
+     */
+    fun getNextEnabledEventIndex(fromIndex: Int): Int {
+        val bits = enabledEvents
+        var wordIndex = fromIndex / Long.SIZE_BITS
+        if (wordIndex >= bits.size) return NO_EVENT
 
-    init {
-        events.forEach { event ->
-            if (event.enabledOnStart) enabledEventsMap[event.id.databaseId] = event
-            else disabledEvents[event.id.databaseId] = event
+        var word = bits[wordIndex] and (-1L shl fromIndex)
+        while (word == 0L) {
+            if (++wordIndex == bits.size) return NO_EVENT
+            word = bits[wordIndex]
         }
+        return wordIndex * Long.SIZE_BITS + word.countTrailingZeroBits()
     }
 
-    /** Get the list of currently enabled events. */
-    fun getEnabledEvents(): Collection<Event> = enabledEventsMap.values
+    /** @return true if the event at the given index is enabled, false if not. */
+    fun isEventEnabled(eventIndex: Int): Boolean = enabledEvents.isBitSet(eventIndex)
+
+    /** @return the number of enabled events. */
+    fun getEnabledEventCount(): Int = enabledEvents.sumOf { word -> word.countOneBits() }
 
     /** Tells if all events are disabled. */
-    fun areAllEventsDisabled(): Boolean = enabledEventsMap.isEmpty()
+    fun areAllEventsDisabled(): Boolean = enabledEvents.all { word -> word == 0L }
 
+    @Synchronized
     override fun changeEventState(eventId: Long, toggleType: Action.ToggleEvent.ToggleType) {
+        val eventIndex = getEventIndex(eventId)
+        if (eventIndex == NO_EVENT) {
+            Log.w(TAG, "Trying to change the state of an unknown event.")
+            return
+        }
+
+        val bits = enabledEvents.copyOf()
         when (toggleType) {
-            Action.ToggleEvent.ToggleType.ENABLE -> enableEvent(eventId)
-            Action.ToggleEvent.ToggleType.DISABLE -> disableEvent(eventId)
-            Action.ToggleEvent.ToggleType.TOGGLE -> {
-                when {
-                    enabledEventsMap.containsKey(eventId) -> disableEvent(eventId)
-                    disabledEvents.containsKey(eventId) -> enableEvent(eventId)
-                    else -> Log.w(TAG, "Trying to change the state of an unknown event.")
-                }
-            }
+            Action.ToggleEvent.ToggleType.ENABLE -> bits.setBit(eventIndex, true)
+            Action.ToggleEvent.ToggleType.DISABLE -> bits.setBit(eventIndex, false)
+            Action.ToggleEvent.ToggleType.TOGGLE -> bits.setBit(eventIndex, !bits.isBitSet(eventIndex))
         }
+        enabledEvents = bits
     }
+}
 
-    /** Move an event from the disabled map to the enabled one. */
-    private fun enableEvent(eventId: Long) {
-        disabledEvents.remove(eventId)?.let { event -> enabledEventsMap[eventId] = event }
-    }
+/** @return true if the bit at the given index is set, false if not. */
+private fun LongArray.isBitSet(index: Int): Boolean =
+    this[index / Long.SIZE_BITS] and (1L shl index) != 0L
 
-    /** Move an event from the enabled map to the disabled one. */
-    private fun disableEvent(eventId: Long) {
-        enabledEventsMap.remove(eventId)?.let { event -> disabledEvents[eventId] = event }
-    }
+/** Set or clear the bit at the given index. */
+private fun LongArray.setBit(index: Int, isSet: Boolean) {
+    val wordIndex = index / Long.SIZE_BITS
+    this[wordIndex] = if (isSet) this[wordIndex] or (1L shl index) else this[wordIndex] and (1L shl index).inv()
 }
 
+/** Value returned when there is no event for the request. */
+internal const val NO_EVENT = -1
+
 /** Tag for logs. */
-private const val TAG = "ScenarioState"
\ No newline at end of file
+private const val TAG = "ScenarioState"
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data.processor
+
+import com.buzbuz.smartautoclicker.core.domain.model.AND
+import com.buzbuz.smartautoclicker.core.domain.model.EXACT
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
+import com.buzbuz.smartautoclicker.core.domain.model.OR
+import com.buzbuz.smartautoclicker.core.domain.model.action.Action
+import com.buzbuz.smartautoclicker.core.domain.model.condition.Condition
+import com.buzbuz.smartautoclicker.core.domain.model.event.Event
+
+import kotlin.math.max
+
+/**
+ * Keep track of the evaluation order of the conditions of each event.
+ *
+ * The evaluation of an event stops with its first condition not fulfilled for the AND operator, and with its first
+ * condition fulfilled for the OR operator. The order of the conditions doesn't change the result of an event, but it
+ * changes the number of conditions detected to get it. The only exception are the OR events clicking on a condition:
+ * the clicked condition is the first one fulfilled, so their conditions are always evaluated in their stored order.
+ *
+ * The detection time and the fulfilled rate of each condition are measured during the processing, and the conditions
+ * are periodically sorted by their detection time divided by their probability to end the evaluation of their event.
+ * This is the order minimizing the expected evaluation time of an event. Until they are measured, the conditions are
+ * ordered by the size of their detection area: exact ones first, then the ones in an area, then the whole screen ones.
+ *
+ * @param events the events of the scenario, the indexes of the events used by this class are in this list.
+ */
+internal class ConditionsOrder(private val events: List<Event>) {
+
+    /** Tells if the conditions of each event must be evaluated in their stored order. */
+    private val eventsFixedOrders: BooleanArray =
+        BooleanArray(events.size) { eventIndex -> events[eventIndex].isOrderFixed() }
+    /** The evaluation order of the conditions of each event, as indexes in the event conditions list. */
+    private val eventsOrders: Array<IntArray> =
+        Array(events.size) { eventIndex ->
+            if (eventsFixedOrders[eventIndex]) IntArray(events[eventIndex].conditions.size) { it }
+            else getDefaultOrder(events[eventIndex].conditions)
+        }
+    /** The average detection time of each condition of each event, in microseconds. */
+    private val eventsDurations: Array<DoubleArray> =
+        Array(events.size) { eventIndex -> DoubleArray(events[eventIndex].conditions.size) }
+    /** The average fulfilled rate of each condition of each event, between 0 and 1. */
+    private val eventsFulfilledRates: Array<DoubleArray> =
+        Array(events.size) { eventIndex -> DoubleArray(events[eventIndex].conditions.size) }
+    /** The number of measures of each condition of each event, up to [MEASURES_WINDOW]. */
+    private val eventsMeasuresCounts: Array<IntArray> =
+        Array(events.size) { eventIndex -> IntArray(events[eventIndex].conditions.size) }
+
+    /** The number of calls to [updateOrders] since the last update of the orders. */
+    private var detectionCount = 0
+
+    /**
+     * Get the condition of an event at an evaluation position.
+     *
+     * @param eventIndex the index of the event.
+     * @param evaluationIndex the position of the condition in the evaluation order of the event.
+     *
+     * @return the condition.
+     */
+    fun getCondition(eventIndex: Int, evaluationIndex: Int): Condition =
+        events[eventIndex].conditions[getConditionIndex(eventIndex, evaluationIndex)]
+
+    /**
+     * Get the index in the event conditions list of the condition at an evaluation position.
+     *
+     * @param eventIndex the index of the event.
+     * @param evaluationIndex the position of the condition in the evaluation order of the event.
+     *
+     * @return the index of the condition in the event conditions.
+     */
+    fun getConditionIndex(eventIndex: Int, evaluationIndex: Int): Int =
+        eventsOrders[eventIndex][evaluationIndex]
+
+    /**
+     * Measure the evaluation of a condition during the last detection.
+     *
+     * @param eventIndex the index of the event.
+     * @param evaluationIndex the position of the condition in the evaluation order of the event.
+     * @param durationUs the detection time of the condition, in microseconds.
+     * @param isFulfilled true if the condition was fulfilled, false if not.
+     */
+    fun onConditionEvaluated(eventIndex: Int, evaluationIndex: Int, durationUs: Int, isFulfilled: Boolean) {
+        val conditionIndex = eventsOrders[eventIndex][evaluationIndex]
+        val measuresCounts = eventsMeasuresCounts[eventIndex]
+
+        // Plain average for the first measures, then a moving one to follow the changes of the screen content.
+        val weight = 1.0 / (measuresCounts[conditionIndex] + 1)
+        if (measuresCounts[conditionIndex] < MEASURES_WINDOW - 1) measuresCounts[conditionIndex]++
+
+        eventsDurations[eventIndex][conditionIndex] += (durationUs - eventsDurations[eventIndex][conditionIndex]) * weight
+        eventsFulfilledRates[eventIndex][conditionIndex] +=
+            ((if (isFulfilled) 1.0 else 0.0) - eventsFulfilledRates[eventIndex][conditionIndex]) * weight
+    }
+
+    /**
+     * Update the evaluation orders with the measures of the previous detections.
+     * This must be called before each detection, the orders are only updated every [ORDERS_UPDATE_PERIOD] calls as
+     * changing them also changes the positions of the conditions in the detection batch, invalidating their cached
+     * detections.
+     */
+    fun updateOrders() {
+        if (++detectionCount < ORDERS_UPDATE_PERIOD) return
+        detectionCount = 0
+
+        for (eventIndex in events.indices) {
+            if (!eventsFixedOrders[eventIndex]) sortConditions(eventIndex)
+        }
+    }
+
+    /**
+     * Sort the conditions of an event by their evaluation cost.
+     * An insertion sort is used, as there is only a few conditions per event, and it keeps the current order of the
+     * conditions with the same cost, such as the ones never measured.
+     */
+    private fun sortConditions(eventIndex: Int) {
+        val order = eventsOrders[eventIndex]
+        for (index in 1 until order.size) {
+            val conditionIndex = order[index]
+            val cost = getEvaluationCost(eventIndex, conditionIndex)
+
+            var previousIndex = index - 1
+            while (previousIndex >= 0 && getEvaluationCost(eventIndex, order[previousIndex]) > cost) {
+                order[previousIndex + 1] = order[previousIndex]
+                previousIndex--
+            }
+            order[previousIndex + 1] = conditionIndex
+        }
+    }
+
+    /**
+     * Get the expected cost of a condition for the evaluation of its event: its detection time divided by its
+     * probability to end the evaluation.
+     * The conditions never measured were never reached by the evaluation, and are kept at the end.
+     */
+    private fun getEvaluationCost(eventIndex: Int, conditionIndex: Int): Double {
+        if (eventsMeasuresCounts[eventIndex][conditionIndex] == 0) return Double.POSITIVE_INFINITY
+
+        val fulfilledRate = eventsFulfilledRates[eventIndex][conditionIndex]
+        val endRate = if (events[eventIndex].conditionOperator == AND) 1.0 - fulfilledRate else fulfilledRate
+
+        // A condition with a cached result has no detection time, but it still ends the evaluation more or less often.
+        return (eventsDurations[eventIndex][conditionIndex] + 1) / max(endRate, MIN_END_RATE)
+    }
+}
+
+/**
+ * Tells if the conditions of this event must be evaluated in their stored order.
+ * The clicks on a condition of an OR event are on its first fulfilled condition, which depends on the evaluation order.
+ */
+private fun Event.isOrderFixed(): Boolean =
+    conditionOperator == OR && actions.any { action ->
+        action is Action.Click && action.positionType != Action.Click.PositionType.USER_SELECTED
+    }
+
+/** @return the default evaluation order of the conditions, from the smallest detection area to the largest one. */
+private fun getDefaultOrder(conditions: List<Condition>): IntArray =
+    conditions.indices
+        .sortedBy { conditionIndex ->
+            when (conditions[conditionIndex].detectionType) {
+                EXACT -> 0
+                IN_AREA -> 1
+                else -> 2
+            }
+        }
+        .toIntArray()
+
+/** The number of detections between two updates of the conditions orders. */
+private const val ORDERS_UPDATE_PERIOD = 100
+/** The number of measures averaged for the cost of a condition. */
+private const val MEASURES_WINDOW = 50
+/** The minimum probability for a condition to end the evaluation of its event, avoiding the division by zero. */
+private const val MIN_END_RATE = 0.01
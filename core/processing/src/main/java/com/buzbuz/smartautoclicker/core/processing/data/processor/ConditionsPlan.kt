@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 Kevin Buzeau
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data.processor
+
+import android.graphics.Rect
+
+import com.buzbuz.smartautoclicker.core.detection.INVALID_CONDITION_HANDLE
+import com.buzbuz.smartautoclicker.core.domain.model.AND
+import com.buzbuz.smartautoclicker.core.domain.model.EXACT
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
+import com.buzbuz.smartautoclicker.core.domain.model.WHOLE_SCREEN
+import com.buzbuz.smartautoclicker.core.domain.model.condition.Condition
+import com.buzbuz.smartautoclicker.core.domain.model.event.Event
+
+import kotlin.math.roundToInt
+
+/**
+ * The conditions of the scenario events, compiled once when the detection starts into flat arrays of primitives.
+ *
+ * The conditions of all events are stored one after the other, in the events order, and are referenced by the index of
+ * their event and their index in its conditions list. Their detection areas are mapped to the images coordinates at
+ * compile time, and the handles of their images are kept once registered in the detector. Adding them to the
+ * detection batch of each image then requires no lookup, no nullable unwrapping and no area mapping.
+ *
+ * @param events the events of the scenario, the indexes of the events used by this class are in this list.
+ * @param captureScale the ratio between the size of the processed images and the size of the screen.
+ */
+internal class ConditionsPlan(events: List<Event>, captureScale: Double) {
+
+    /** The index of the first condition of each event in the conditions arrays, and the total count at the end. */
+    private val eventsFirstConditions: IntArray = IntArray(events.size + 1).apply {
+        for (eventIndex in events.indices) this[eventIndex + 1] = this[eventIndex] + events[eventIndex].conditions.size
+    }
+    /** Tells if each event requires all of its conditions to be fulfilled. */
+    private val eventsRequireAll: BooleanArray = BooleanArray(events.size) { eventIndex ->
+        events[eventIndex].conditionOperator == AND
+    }
+
+    /** The conditions, for the notifications of their results. */
+    private val conditions: Array<Condition> = events.flatMap { event -> event.conditions }.toTypedArray()
+    /** The detection type of each condition, or [INVALID_DETECTION_TYPE] if it can't be detected. */
+    private val detectionTypes: IntArray = IntArray(conditions.size)
+    /** The detection area of each condition in the images coordinates, as left, top, right and bottom values. */
+    private val captureAreas: IntArray = IntArray(conditions.size * AREA_SIZE)
+    /** The threshold of each condition. */
+    private val thresholds: IntArray = IntArray(conditions.size) { index -> conditions[index].threshold }
+    /** Tells if each condition should be detected to be fulfilled. */
+    private val conditionsShouldBeDetected: BooleanArray =
+        BooleanArray(conditions.size) { index -> conditions[index].shouldBeDetected }
+    /** The handle of the image of each condition in the detector, or [INVALID_CONDITION_HANDLE] until registered. */
+    private val handles: IntArray = IntArray(conditions.size) { INVALID_CONDITION_HANDLE }
+
+    init {
+        conditions.forEachIndexed { index, condition ->
+            val area = when (condition.detectionType) {
+                EXACT -> condition.area
+                IN_AREA -> condition.detectionArea
+                WHOLE_SCREEN -> null
+                else -> throw IllegalArgumentException("Unexpected detection type")
+            }
+
+            detectionTypes[index] =
+                if (condition.detectionType == IN_AREA && area == null) INVALID_DETECTION_TYPE
+                else condition.detectionType
+
+            if (area != null) {
+                val areaIndex = index * AREA_SIZE
+                captureAreas[areaIndex] = (area.left * captureScale).roundToInt()
+                captureAreas[areaIndex + 1] = (area.top * captureScale).roundToInt()
+                captureAreas[areaIndex + 2] = (area.right * captureScale).roundToInt()
+                captureAreas[areaIndex + 3] = (area.bottom * captureScale).roundToInt()
+            }
+        }
+    }
+
+    /** @return the number of conditions of the event. */
+    fun getConditionCount(eventIndex: Int): Int =
+        eventsFirstConditions[eventIndex + 1] - eventsFirstConditions[eventIndex]
+
+    /** @return true if the event requires all of its conditions to be fulfilled, false if only one is required. */
+    fun isRequiringAll(eventIndex: Int): Boolean =
+        eventsRequireAll[eventIndex]
+
+    /** @return the condition at the given index of the event conditions. */
+    fun getCondition(eventIndex: Int, conditionIndex: Int): Condition =
+        conditions[eventsFirstConditions[eventIndex] + conditionIndex]
+
+    /** @return the detection type of the condition, or [INVALID_DETECTION_TYPE] if it can't be detected. */
+    fun getDetectionType(eventIndex: Int, conditionIndex: Int): Int =
+        detectionTypes[eventsFirstConditions[eventIndex] + conditionIndex]
+
+    /** @return the threshold of the condition. */
+    fun getThreshold(eventIndex: Int, conditionIndex: Int): Int =
+        thresholds[eventsFirstConditions[eventIndex] + conditionIndex]
+
+    /** @return true if the condition should be detected to be fulfilled, false if it should not. */
+    fun shouldBeDetected(eventIndex: Int, conditionIndex: Int): Boolean =
+        conditionsShouldBeDetected[eventsFirstConditions[eventIndex] + conditionIndex]
+
+    /**
+     * Get the detection area of the condition, in the images coordinates.
+     * Only defined for the [EXACT] and [IN_AREA] conditions.
+     *
+     * @param eventIndex the index of the event.
+     * @param conditionIndex the index of the condition in the event conditions.
+     * @param area set with the area of the condition.
+     */
+    fun getCaptureArea(eventIndex: Int, conditionIndex: Int, area: Rect) {
+        val areaIndex = (eventsFirstConditions[eventIndex] + conditionIndex) * AREA_SIZE
+        area.set(captureAreas[areaIndex], captureAreas[areaIndex + 1], captureAreas[areaIndex + 2], captureAreas[areaIndex + 3])
+    }
+
+    /** @return the handle of the image of the condition, or [INVALID_CONDITION_HANDLE] if it isn't registered yet. */
+    fun getHandle(eventIndex: Int, conditionIndex: Int): Int =
+        handles[eventsFirstConditions[eventIndex] + conditionIndex]
+
+    /** Keep the handle of the image of the condition, registered in the detector. */
+    fun setHandle(eventIndex: Int, conditionIndex: Int, handle: Int) {
+        handles[eventsFirstConditions[eventIndex] + conditionIndex] = handle
+    }
+}
+
+/** Detection type of a condition in an area, but without any area. */
+internal const val INVALID_DETECTION_TYPE = -1
+/** The number of values for each area in [ConditionsPlan.captureAreas]. */
+private const val AREA_SIZE = 4
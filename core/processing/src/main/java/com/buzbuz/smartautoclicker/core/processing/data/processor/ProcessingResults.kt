@@ -17,80 +17,165 @@
 package com.buzbuz.smartautoclicker.core.processing.data.processor
 
 import android.graphics.Point
+import android.util.LongSparseArray
+
+import com.buzbuz.smartautoclicker.core.domain.model.action.Action
 import com.buzbuz.smartautoclicker.core.domain.model.condition.Condition
 import com.buzbuz.smartautoclicker.core.domain.model.event.Event
 
+import kotlin.math.max
+
+/**
+ * Keep track of the detection results of the conditions during the processing.
+ *
+ * The results are created once for the whole processing, and are updated in place for each screen image. They are
+ * referenced by their database id in [LongSparseArray], and iterated by index in the events and conditions order, in
+ * order to avoid any key boxing or iterator allocation while processing.
+ */
 internal class ProcessingResults(events: List<Event>) {
 
-    private val eventsResults: MutableMap<Long, EventProcessingResults> =
-        mutableMapOf<Long, EventProcessingResults>().apply {
-            events.forEach {
-                put(it.id.databaseId, EventProcessingResults(it))
-            }
+    /** The results of each event, in the events order. */
+    private val eventsResults: Array<EventProcessingResults> =
+        Array(events.size) { index -> EventProcessingResults(index, events[index]) }
+    /** The results of each event, by event database id. */
+    private val eventsResultsById: LongSparseArray<EventProcessingResults> =
+        LongSparseArray<EventProcessingResults>(events.size).apply {
+            eventsResults.forEach { eventResults -> put(eventResults.eventDbId, eventResults) }
         }
 
     fun addResult(condition: Condition, isDetected: Boolean, position: Point, confRate: Double) {
-        eventsResults[condition.eventId.databaseId]
+        eventsResultsById[condition.eventId.databaseId]
             ?.addResult(condition.id.databaseId, isDetected, condition.shouldBeDetected, position, confRate)
     }
 
+    /**
+     * Set the result of a condition, referenced by its indexes in the events list provided to this class.
+     *
+     * @param eventIndex the index of the event.
+     * @param conditionIndex the index of the condition in the event conditions.
+     */
+    fun setResult(
+        eventIndex: Int,
+        conditionIndex: Int,
+        isDetected: Boolean,
+        shouldBeDetected: Boolean,
+        position: Point,
+        confRate: Double,
+    ) {
+        eventsResults[eventIndex].setResult(conditionIndex, isDetected, shouldBeDetected, position, confRate)
+    }
+
     fun clearResults() {
-        eventsResults.values.forEach { eventResults ->
-            eventResults.clearResults()
-        }
+        for (index in eventsResults.indices) eventsResults[index].clearResults()
     }
 
     fun getFirstMatchResult(): ConditionProcessingResult? {
-        eventsResults.values.forEach { eventsResults ->
-            return eventsResults.getFirstMatchResult() ?: return@forEach
+        for (index in eventsResults.indices) {
+            eventsResults[index].getFirstMatchResult()?.let { return it }
         }
         return null
     }
 
     fun getResult(eventDbId: Long, conditionDbId: Long): ConditionProcessingResult? =
-        eventsResults[eventDbId]?.getResult(conditionDbId)
+        eventsResultsById[eventDbId]?.getResult(conditionDbId)
 }
 
-private class EventProcessingResults(event: Event) {
+private class EventProcessingResults(eventIndex: Int, event: Event) {
 
-    private val conditionsResults: MutableMap<Long, ConditionProcessingResult> =
-        mutableMapOf<Long, ConditionProcessingResult>().apply {
-            event.conditions.forEach { put(it.id.databaseId, ConditionProcessingResult(it)) }
+    /** The database id of the event. */
+    val eventDbId: Long = event.id.databaseId
+
+    /** The results of each condition, in the conditions order. */
+    private val conditionsResults: Array<ConditionProcessingResult> =
+        Array(event.conditions.size) { index ->
+            ConditionProcessingResult(event.conditions[index], eventIndex, index)
+        }
+    /** The results of each condition, by condition database id. */
+    private val conditionsResultsById: LongSparseArray<ConditionProcessingResult> =
+        LongSparseArray<ConditionProcessingResult>(event.conditions.size).apply {
+            conditionsResults.forEach { result -> put(result.condition.id.databaseId, result) }
         }
 
     fun addResult(conditionId: Long, detected: Boolean, shouldBe: Boolean, pos: Point, confRate: Double) {
-        conditionsResults[conditionId]?.apply {
-            isDetected = detected
-            shouldBeDetected = shouldBe
-            position.set(pos.x, pos.y)
-            confidenceRate = confRate
-        }
+        conditionsResultsById[conditionId]?.set(detected, shouldBe, pos, confRate)
+    }
+
+    fun setResult(conditionIndex: Int, detected: Boolean, shouldBe: Boolean, pos: Point, confRate: Double) {
+        conditionsResults[conditionIndex].set(detected, shouldBe, pos, confRate)
     }
 
     fun clearResults() {
-        conditionsResults.values.forEach { result ->
-            result.apply {
+        for (index in conditionsResults.indices) {
+            conditionsResults[index].apply {
                 isDetected = false
                 shouldBeDetected = false
                 position.set(0, 0)
                 confidenceRate = 0.0
+                clearMatches()
             }
         }
     }
 
-    fun getFirstMatchResult(): ConditionProcessingResult? =
-        conditionsResults.values.find { conditionResults ->
-            conditionResults.isDetected && conditionResults.shouldBeDetected
+    fun getFirstMatchResult(): ConditionProcessingResult? {
+        for (index in conditionsResults.indices) {
+            val conditionResults = conditionsResults[index]
+            if (conditionResults.isDetected && conditionResults.shouldBeDetected) return conditionResults
         }
+        return null
+    }
 
-    fun getResult(conditionDbId: Long) =
-        conditionsResults[conditionDbId]
+    fun getResult(conditionDbId: Long): ConditionProcessingResult? =
+        conditionsResultsById[conditionDbId]
 }
 
+/**
+ * The detection results of a condition.
+ *
+ * @param condition the condition.
+ * @param eventIndex the index of the event of the condition in the events list.
+ * @param conditionIndex the index of the condition in the event conditions.
+ */
 internal data class ConditionProcessingResult(
     val condition: Condition,
+    val eventIndex: Int,
+    val conditionIndex: Int,
     var isDetected: Boolean = false,
     var shouldBeDetected: Boolean = false,
     val position: Point = Point(),
     var confidenceRate: Double = 0.0
-)
\ No newline at end of file
+) {
+
+    /**
+     * The center of each match of the condition on the screen, as x and y pairs, from the best to the worst match.
+     * Only detected for the conditions clicked with [Action.Click.PositionType.ON_EACH_DETECTED_CONDITION].
+     */
+    private var matchesPositions: IntArray = IntArray(0)
+
+    /** The number of matches in [matchesPositions]. */
+    var matchCount: Int = 0
+        private set
+
+    fun addMatch(pos: Point) {
+        if (matchesPositions.size < (matchCount + 1) * 2)
+            matchesPositions = matchesPositions.copyOf(max((matchCount + 1) * 2, matchesPositions.size * 2))
+
+        matchesPositions[matchCount * 2] = pos.x
+        matchesPositions[matchCount * 2 + 1] = pos.y
+        matchCount++
+    }
+
+    fun set(detected: Boolean, shouldBe: Boolean, pos: Point, confRate: Double) {
+        isDetected = detected
+        shouldBeDetected = shouldBe
+        position.set(pos.x, pos.y)
+        confidenceRate = confRate
+    }
+
+    fun getMatchX(matchIndex: Int): Int = matchesPositions[matchIndex * 2]
+
+    fun getMatchY(matchIndex: Int): Int = matchesPositions[matchIndex * 2 + 1]
+
+    fun clearMatches() {
+        matchCount = 0
+    }
+}
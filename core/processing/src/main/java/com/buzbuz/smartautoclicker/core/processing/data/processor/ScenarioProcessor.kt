@@ -17,24 +17,34 @@
 package com.buzbuz.smartautoclicker.core.processing.data.processor
 
 import android.graphics.Bitmap
+import android.graphics.Point
+import android.graphics.Rect
 import android.media.Image
 import android.util.Log
 
+import com.buzbuz.smartautoclicker.core.detection.DetectionBatch
+import com.buzbuz.smartautoclicker.core.detection.DetectionMatches
 import com.buzbuz.smartautoclicker.core.detection.DetectionResult
+import com.buzbuz.smartautoclicker.core.detection.INVALID_CONDITION_HANDLE
 import com.buzbuz.smartautoclicker.core.detection.ImageDetector
+import com.buzbuz.smartautoclicker.core.domain.model.action.Action
 import com.buzbuz.smartautoclicker.core.domain.model.condition.Condition
 import com.buzbuz.smartautoclicker.core.domain.model.endcondition.EndCondition
 import com.buzbuz.smartautoclicker.core.domain.model.event.Event
-import com.buzbuz.smartautoclicker.core.domain.model.AND
 import com.buzbuz.smartautoclicker.core.domain.model.ConditionOperator
 import com.buzbuz.smartautoclicker.core.domain.model.EXACT
-import com.buzbuz.smartautoclicker.core.domain.model.OR
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
 import com.buzbuz.smartautoclicker.core.domain.model.WHOLE_SCREEN
+import com.buzbuz.smartautoclicker.core.processing.data.ACTION_CLICK_ON_EACH_CONDITION
 import com.buzbuz.smartautoclicker.core.processing.data.ActionExecutor
+import com.buzbuz.smartautoclicker.core.processing.data.ActionsPlan
 import com.buzbuz.smartautoclicker.core.processing.data.AndroidExecutor
 import com.buzbuz.smartautoclicker.core.processing.data.EndConditionVerifier
+import com.buzbuz.smartautoclicker.core.processing.data.NO_EVENT
 import com.buzbuz.smartautoclicker.core.processing.data.ScenarioState
 
+import kotlin.math.roundToInt
+
 import kotlinx.coroutines.yield
 
 /**
@@ -50,6 +60,10 @@ import kotlinx.coroutines.yield
  * @param endConditions the list of end conditions for the current scenario.
  * @param onStopRequested called when a end condition of the scenario have been reached or all events are disabled.
  * @param progressListener the object to notify for detection progress. Can be null if not required.
+ * @param captureScale the ratio between the size of the processed images and the size of the screen. The conditions
+ *                     and the results are in screen coordinates, and are mapped to the images coordinates with it.
+ * @param isMultiScaleMatching true to also search the conditions not found at their captured size at the
+ *                             [MULTI_SCALE_MATCHING_SCALES].
  */
 internal class ScenarioProcessor(
     private val imageDetector: ImageDetector,
@@ -62,6 +76,8 @@ internal class ScenarioProcessor(
     endConditions: List<EndCondition>,
     private val onStopRequested: () -> Unit,
     private val progressListener: ProgressListener? = null,
+    private val captureScale: Double = 1.0,
+    private val isMultiScaleMatching: Boolean = false,
 ) {
 
     /** Handle the processing state of the scenario. */
@@ -71,28 +87,95 @@ internal class ScenarioProcessor(
     /** Verifies the end conditions of a scenario. */
     private val endConditionVerifier = EndConditionVerifier(endConditions, endConditionOperator, onStopRequested)
     /** Keep track of the detection results during the processing. */
-    private val processingResults = ProcessingResults(events)
+    private var processingResults = ProcessingResults(events)
+    /** The detection results of the event whose actions are executing, swapped with [processingResults]. */
+    private var executedResults = ProcessingResults(events)
+    /** Tells if the actions of an event are executing. */
+    @Volatile
+    private var isExecuting = false
+
+    /** The conditions of the enabled events, detected all at once for each image. */
+    private val detectionBatch = DetectionBatch()
+    /** Tells if [detectionBatch] has been detected on the current image. */
+    private var isBatchDetected = false
+    /** The handles of the conditions images registered in the detector, by condition path. */
+    private val conditionsHandles: MutableMap<String, Int> = mutableMapOf()
+    /** The conditions of the events, compiled for their detection. */
+    private val conditionsPlan = ConditionsPlan(events, captureScale)
+    /** The actions of each event, compiled for their execution. */
+    private val eventsActions = Array(events.size) { eventIndex -> ActionsPlan(events[eventIndex]) }
+    /** The index in [detectionBatch] of the group for each event, or [NO_GROUP] if the event is not in the batch. */
+    private val eventsGroups = IntArray(events.size) { NO_GROUP }
+    /** The evaluation order of the conditions of each event in [detectionBatch]. */
+    private val conditionsOrder = ConditionsOrder(events)
+    /** Reused for the notification of the results of each condition. */
+    private val conditionResult = DetectionResult()
+    /** Reused for the conditions areas in the images coordinates. */
+    private val captureArea = Rect()
+    /** Reused for the detection of all the matches of a clicked condition. */
+    private val conditionMatches = DetectionMatches()
+    /** Reused for the position of each match of a clicked condition. */
+    private val matchPosition = Point()
 
     /** Tells if the screen metrics have been invalidated and should be updated. */
     private var invalidateScreenMetrics = true
 
+    init {
+        // Set before any condition registration, so each condition is resized only once, when registered.
+        if (isMultiScaleMatching) imageDetector.setMatchingScales(MULTI_SCALE_MATCHING_SCALES)
+    }
+
     /** Drop all current cache related to screen metrics. */
     fun invalidateScreenMetrics() {
         invalidateScreenMetrics = true
     }
 
+    /**
+     * Find an event with the conditions fulfilled on the current image, and execute its actions.
+     *
+     * @param screenFrame the bitmap containing the current screen display.
+     */
+    suspend fun process(screenFrame: Bitmap) {
+        detect(screenFrame)?.let { event -> execute(event) }
+    }
+
+    /**
+     * Find an event with the conditions fulfilled on the current image, and execute its actions.
+     * The detection is made directly on the pixels of the image, which must remain open until this method returns.
+     *
+     * @param screenImage the image containing the current screen display.
+     */
+    suspend fun process(screenImage: Image) {
+        detect(screenImage)?.let { event -> execute(event) }
+    }
+
+    /**
+     * Get how much the screen has changed since the image of the last detection, without detecting anything.
+     * The changes are kept for the next detection, which can be made on this image or on a newer one.
+     *
+     * @param screenImage the image containing the current screen display, which must remain open until the next
+     *                    detection, or until this method is called with another image.
+     *
+     * @return the ratio of the screen that has changed, between 0 and 1.
+     */
+    fun getScreenChangeRatio(screenImage: Image): Double {
+        initScreenImage(screenImage)
+        return imageDetector.getScreenChangeRatio()
+    }
+
     /**
      * Find an event with the conditions fulfilled on the current image.
      *
      * @param screenFrame the bitmap containing the current screen display.
      *
-     * @return the first Event with all conditions fulfilled, or null if none has been found.
+     * @return the first event with its conditions fulfilled, to be provided to [execute], or null if none has been
+     * found or if the actions of a previous event are still executing.
      */
-    suspend fun process(screenFrame: Bitmap) {
+    suspend fun detect(screenFrame: Bitmap): Event? {
         // No more events enabled, there is nothing more to do. Stop the detection.
         if (scenarioState.areAllEventsDisabled()) {
             onStopRequested()
-            return
+            return null
         }
 
         progressListener?.onImageProcessingStarted()
@@ -100,31 +183,88 @@ internal class ScenarioProcessor(
         // Set the current screen image
         initScreenFrame(screenFrame)
 
+        return detectEvents()
+    }
+
+    /**
+     * Find an event with the conditions fulfilled on the current image.
+     * The detection is made directly on the pixels of the image, which must remain open until this method returns.
+     *
+     * @param screenImage the image containing the current screen display.
+     *
+     * @return the first event with its conditions fulfilled, to be provided to [execute], or null if none has been
+     * found or if the actions of a previous event are still executing.
+     */
+    suspend fun detect(screenImage: Image): Event? {
+        // No more events enabled, there is nothing more to do. Stop the detection.
+        if (scenarioState.areAllEventsDisabled()) {
+            onStopRequested()
+            return null
+        }
+
+        progressListener?.onImageProcessingStarted()
+
+        // Set the current screen image
+        initScreenImage(screenImage)
+
+        return detectEvents()
+    }
+
+    /**
+     * Execute the actions of an event returned by [detect], with the results of its detection.
+     * This can be called from another coroutine than [detect], which can continue to detect the next images meanwhile.
+     *
+     * @param event the fulfilled event to execute the actions of.
+     */
+    suspend fun execute(event: Event) {
+        try {
+            val eventIndex = scenarioState.getEventIndex(event.id.databaseId)
+            if (eventIndex != NO_EVENT) actionExecutor.executeActions(eventsActions[eventIndex], executedResults)
+
+            // Check if an event has reached its max execution count.
+            endConditionVerifier.onEventTriggered(event)
+        } finally {
+            isExecuting = false
+        }
+    }
+
+    /**
+     * Process the enabled events on the current screen image.
+     *
+     * An image detected while the actions of an event are executing can't be used to execute other actions: the screen
+     * may not display the results of those actions yet. Its detection is still made, for the progress listener and the
+     * detection cache of the next image, but its fulfilled event is dropped.
+     *
+     * @return the first event fulfilled, or null if there is none, or if it is dropped.
+     */
+    private suspend fun detectEvents(): Event? {
+        val canExecute = !isExecuting
+
         // Clear previous results
         processingResults.clearResults()
+        isBatchDetected = false
+
+        var fulfilledEvent: Event? = null
+        var eventIndex = scenarioState.getNextEnabledEventIndex(0)
+        while (eventIndex != NO_EVENT) {
+            val processedEventIndex = eventIndex
+            val event = scenarioState.getEvent(processedEventIndex)
+            eventIndex = scenarioState.getNextEnabledEventIndex(eventIndex + 1)
 
-        for (event in scenarioState.getEnabledEvents()) {
             // No conditions ? This should not happen, skip this event
-            if (event.conditions.isEmpty()) {
+            if (conditionsPlan.getConditionCount(processedEventIndex) == 0) {
                 continue
             }
 
             // Event conditions verification
             progressListener?.onEventProcessingStarted(event)
-            //TODO отключил поиск совпадения по картинке
-            val conditionAreFulfilled = true//verifyConditions(event) // тип?
+            val conditionAreFulfilled = verifyConditions(processedEventIndex)
             progressListener?.onEventProcessingCompleted(event, conditionAreFulfilled, processingResults.getFirstMatchResult())
 
-            // If conditions are fulfilled, execute this event's actions !
+            // If conditions are fulfilled, this event's actions will be executed !
             // Если условия выполнены, выполнить действия этого события !
             if (conditionAreFulfilled) {
-                event.actions.let { actions ->
-                    actionExecutor.executeActions(event, actions, processingResults)
-                }
-
-                // Check if an event has reached its max execution count.
-                if (endConditionVerifier.onEventTriggered(event)) return
-
+                fulfilledEvent = event
                 break
             }
 
@@ -133,7 +273,15 @@ internal class ScenarioProcessor(
         }
 
         progressListener?.onImageProcessingCompleted()
-        return
+        if (fulfilledEvent == null || !canExecute) return null
+
+        // The results of this detection are kept for the execution, the next detection uses the other ones.
+        val results = processingResults
+        processingResults = executedResults
+        executedResults = results
+        isExecuting = true
+
+        return fulfilledEvent
     }
 
     /**
@@ -149,80 +297,283 @@ internal class ScenarioProcessor(
         imageDetector.setupDetection(screenFrame)
     }
 
+    /** Initialize the detection algorithm with the pixels of the current screen image. */
+    private fun initScreenImage(screenImage: Image) {
+        if (invalidateScreenMetrics) {
+            imageDetector.setScreenMetrics(screenImage.width, screenImage.height, detectionQuality.toDouble())
+            invalidateScreenMetrics = false
+        }
+
+        val plane = screenImage.planes[0]
+        imageDetector.setupDetection(plane.buffer, screenImage.width, screenImage.height, plane.rowStride)
+    }
+
     /**
      * Verifies if all conditions of an event are fulfilled.
      * Applies the provided conditions the currently processed [Image] according to the provided operator.
      *
-     * @param event the event to verify the conditions of.
+     * The conditions of all enabled events are detected at once, on the first verification for the current image. The
+     * following verifications will then only read the results of this detection.
+     *
+     * @param eventIndex the index of the event to verify the conditions of.
      * @return true if the conditions are fulfilled, false if not.
      */
-    private suspend fun verifyConditions(event: Event) : Boolean {
-        event.conditions.forEach { condition ->
-            // Verify if the condition is fulfilled.
-            progressListener?.onConditionProcessingStarted(condition)
-            checkCondition(condition)
-                ?.let { result ->
-                    processingResults.addResult(condition, result.isDetected, result.position, result.confidenceRate)
-                    progressListener?.onConditionProcessingCompleted(result)
-
-                    if (condition.isNotFulfilled(result)) {
-                        // One of the condition isn't fulfilled, it's a false for a AND operator.
-                        if (event.conditionOperator == AND) return false
-                    } else if (event.conditionOperator == OR) {
-                        // One of the condition is fulfilled, it's a yes for a OR operator.
-                        return true
-                    }
-                }
-                ?:let {
-                    progressListener?.cancelCurrentConditionProcessing()
-                    return false
+    private suspend fun verifyConditions(eventIndex: Int) : Boolean {
+        if (!isBatchDetected) {
+            detectEnabledEvents()
+            isBatchDetected = true
+        }
+
+        val groupIndex = eventsGroups[eventIndex]
+        if (groupIndex == NO_GROUP || detectionBatch.isGroupSkipped(groupIndex)) {
+            progressListener?.cancelCurrentConditionProcessing()
+            return false
+        }
+
+        // Notify the results of the conditions evaluated during the batch detection, in their evaluation order.
+        val firstCondition = detectionBatch.getGroupFirstCondition(groupIndex)
+        for (evaluationIndex in 0 until detectionBatch.getGroupConditionCount(groupIndex)) {
+            val batchIndex = firstCondition + evaluationIndex
+            if (!detectionBatch.isConditionEvaluated(batchIndex)) continue
+
+            val conditionIndex = conditionsOrder.getConditionIndex(eventIndex, evaluationIndex)
+            progressListener?.onConditionProcessingStarted(conditionsPlan.getCondition(eventIndex, conditionIndex))
+            detectionBatch.getConditionResult(batchIndex, conditionResult)
+            if (captureScale != 1.0) {
+                conditionResult.position.set(
+                    (conditionResult.position.x / captureScale).roundToInt(),
+                    (conditionResult.position.y / captureScale).roundToInt(),
+                )
+            }
+            processingResults.setResult(
+                eventIndex,
+                conditionIndex,
+                conditionResult.isDetected,
+                conditionsPlan.shouldBeDetected(eventIndex, conditionIndex),
+                conditionResult.position,
+                conditionResult.confidenceRate,
+            )
+            progressListener?.onConditionProcessingCompleted(conditionResult)
+        }
+
+        if (!detectionBatch.isGroupFulfilled(groupIndex)) return false
+
+        if (eventsActions[eventIndex].isClickingEachMatch) detectClickedConditionsMatches(eventIndex)
+        return true
+    }
+
+    /**
+     * Detect all the matches of the conditions clicked with [Action.Click.PositionType.ON_EACH_DETECTED_CONDITION] by
+     * the actions of a fulfilled event.
+     * Only those conditions requires a detection of all matches, the others are only detected once by the batch.
+     *
+     * @param eventIndex the index of the fulfilled event.
+     */
+    private suspend fun detectClickedConditionsMatches(eventIndex: Int) {
+        val actions = eventsActions[eventIndex]
+        for (actionIndex in 0 until actions.actionCount) {
+            if (actions.getType(actionIndex) != ACTION_CLICK_ON_EACH_CONDITION) continue
+
+            // Same condition than the one clicked by the ActionExecutor.
+            val conditionResult = actions.getClickedConditionResult(actionIndex, processingResults) ?: continue
+            if (conditionResult.matchCount != 0) continue
+
+            detectAllMatches(conditionResult.eventIndex, conditionResult.conditionIndex)
+            for (matchIndex in 0 until conditionMatches.count) {
+                conditionMatches.getMatchPosition(matchIndex, matchPosition)
+                if (captureScale != 1.0) {
+                    matchPosition.set(
+                        (matchPosition.x / captureScale).roundToInt(),
+                        (matchPosition.y / captureScale).roundToInt(),
+                    )
                 }
+                conditionResult.addMatch(matchPosition)
+            }
+        }
+    }
 
-            yield()
+    /**
+     * Detect all the matches of the provided condition on the current screen image into [conditionMatches].
+     *
+     * @param eventIndex the index of the event of the condition.
+     * @param conditionIndex the index of the condition in the event conditions.
+     */
+    private suspend fun detectAllMatches(eventIndex: Int, conditionIndex: Int) {
+        conditionMatches.clear()
+
+        val handle = getConditionHandle(eventIndex, conditionIndex)
+        if (handle == INVALID_CONDITION_HANDLE) return
+
+        val threshold = conditionsPlan.getThreshold(eventIndex, conditionIndex)
+        when (conditionsPlan.getDetectionType(eventIndex, conditionIndex)) {
+            EXACT, IN_AREA -> {
+                conditionsPlan.getCaptureArea(eventIndex, conditionIndex, captureArea)
+                imageDetector.detectAllMatches(handle, captureArea, threshold, conditionMatches)
+            }
+            WHOLE_SCREEN -> imageDetector.detectAllMatches(handle, threshold, conditionMatches)
         }
+    }
+
+    /**
+     * Detect the conditions of all enabled events on the current screen image, with a single call to the detector.
+     * Each event is a group of the batch, verified with its operator, in the same order than the processing loop. The
+     * conditions of each group are in the order provided by [conditionsOrder].
+     */
+    private suspend fun detectEnabledEvents() {
+        detectionBatch.clear()
+        eventsGroups.fill(NO_GROUP)
+        conditionsOrder.updateOrders()
 
-        // All conditions passed for AND, none are for OR.
-        return event.conditionOperator == AND
+        var eventIndex = scenarioState.getNextEnabledEventIndex(0)
+        while (eventIndex != NO_EVENT) {
+            val conditionCount = conditionsPlan.getConditionCount(eventIndex)
+
+            // No conditions ? This should not happen, skip this event
+            if (conditionCount == 0) {
+                eventIndex = scenarioState.getNextEnabledEventIndex(eventIndex + 1)
+                continue
+            }
+
+            eventsGroups[eventIndex] = detectionBatch.startGroup(requireAll = conditionsPlan.isRequiringAll(eventIndex))
+            for (evaluationIndex in 0 until conditionCount) {
+                if (!addToBatch(eventIndex, conditionsOrder.getConditionIndex(eventIndex, evaluationIndex))) {
+                    detectionBatch.skipGroup()
+                    break
+                }
+            }
+            eventIndex = scenarioState.getNextEnabledEventIndex(eventIndex + 1)
+        }
+
+        imageDetector.detectConditions(detectionBatch)
+        measureConditionsEvaluation()
     }
 
-    private fun Condition.isNotFulfilled(result: DetectionResult): Boolean =
-        result.isDetected xor shouldBeDetected
+    /** Provides the detection time and the result of each condition evaluated by the batch to [conditionsOrder]. */
+    private fun measureConditionsEvaluation() {
+        for (eventIndex in eventsGroups.indices) {
+            val groupIndex = eventsGroups[eventIndex]
+            if (groupIndex == NO_GROUP || detectionBatch.isGroupSkipped(groupIndex)) continue
+
+            val firstCondition = detectionBatch.getGroupFirstCondition(groupIndex)
+            for (evaluationIndex in 0 until detectionBatch.getGroupConditionCount(groupIndex)) {
+                val conditionIndex = firstCondition + evaluationIndex
+                if (!detectionBatch.isConditionEvaluated(conditionIndex)) break
+
+                detectionBatch.getConditionResult(conditionIndex, conditionResult)
+                conditionsOrder.onConditionEvaluated(
+                    eventIndex,
+                    evaluationIndex,
+                    detectionBatch.getConditionDuration(conditionIndex),
+                    conditionResult.isDetected == conditionsPlan.shouldBeDetected(
+                        eventIndex,
+                        conditionsOrder.getConditionIndex(eventIndex, evaluationIndex),
+                    ),
+                )
+            }
+        }
+    }
 
     /**
-     * Check if the provided condition is fulfilled.
+     * Add the provided condition to the detection batch.
      *
-     * Check if the condition bitmap match the content of the condition area on the currently processed [Image].
+     * @param eventIndex the index of the event of the condition.
+     * @param conditionIndex the index of the condition in the event conditions.
      *
-     * @param condition the event condition to be verified.
+     * @return true if the condition has been added, false if the detection is not possible.
+     */
+    private suspend fun addToBatch(eventIndex: Int, conditionIndex: Int) : Boolean {
+        val handle = getConditionHandle(eventIndex, conditionIndex)
+        if (handle == INVALID_CONDITION_HANDLE) return false
+
+        val threshold = conditionsPlan.getThreshold(eventIndex, conditionIndex)
+        val shouldBeDetected = conditionsPlan.shouldBeDetected(eventIndex, conditionIndex)
+        when (conditionsPlan.getDetectionType(eventIndex, conditionIndex)) {
+            EXACT, IN_AREA -> {
+                conditionsPlan.getCaptureArea(eventIndex, conditionIndex, captureArea)
+                detectionBatch.addCondition(handle, captureArea, threshold, shouldBeDetected, isMultiScaleMatching)
+            }
+            // The batch is built in the same order on each frame, the moving conditions can be tracked between them.
+            WHOLE_SCREEN ->
+                detectionBatch.addCondition(handle, threshold, shouldBeDetected, isMultiScaleMatching, isTracked = true)
+            else -> return false
+        }
+        return true
+    }
+
+    /**
+     * Get the handle of the condition image in the detector.
+     * The image is registered in the detector on the first call for its path, and then reused for the whole session.
+     * The handle is then kept in [conditionsPlan] for the next calls for this condition.
      *
-     * @return the result of the detection, or null of the detection is not possible.
+     * @param eventIndex the index of the event of the condition.
+     * @param conditionIndex the index of the condition in the event conditions.
+     *
+     * @return the handle of the condition, or [INVALID_CONDITION_HANDLE] if its image can't be found.
+     */
+    private suspend fun getConditionHandle(eventIndex: Int, conditionIndex: Int): Int {
+        val planHandle = conditionsPlan.getHandle(eventIndex, conditionIndex)
+        if (planHandle != INVALID_CONDITION_HANDLE) return planHandle
+
+        val condition = conditionsPlan.getCondition(eventIndex, conditionIndex)
+        val handle = getConditionHandle(condition)
+        conditionsPlan.setHandle(eventIndex, conditionIndex, handle)
+        return handle
+    }
+
+    /**
+     * Get the handle of the condition image in the detector, registering it on the first call for its path.
+     *
+     * @param condition the condition to get the handle of.
+     *
+     * @return the handle of the condition, or [INVALID_CONDITION_HANDLE] if its image can't be found.
      */
-    private suspend fun checkCondition(condition: Condition) : DetectionResult? {
-        condition.path?.let { path ->
+    private suspend fun getConditionHandle(condition: Condition): Int {
+        val path = condition.path
+        if (path != null) {
+            conditionsHandles[path]?.let { handle -> return handle }
+
             bitmapSupplier(path, condition.area.width(), condition.area.height())?.let { conditionBitmap ->
-                return detect(condition, conditionBitmap)
+                val handle = registerConditionBitmap(conditionBitmap)
+                if (handle != INVALID_CONDITION_HANDLE) conditionsHandles[path] = handle
+                return handle
             }
         }
 
         Log.w(TAG, "Bitmap for condition with path ${condition.path} not found.")
-        return null
+        return INVALID_CONDITION_HANDLE
     }
 
     /**
-     * Detect the condition on the screen.
+     * Register the condition image in the detector, scaled to the images coordinates.
      *
-     * @param condition the condition to be detected.
-     * @param conditionBitmap the bitmap representing the condition.
+     * @param conditionBitmap the condition image, in screen coordinates.
      *
-     * @return the result of the detection.
+     * @return the handle of the condition.
      */
-    private fun detect(condition: Condition, conditionBitmap: Bitmap): DetectionResult =
-         when (condition.detectionType) {
-            EXACT -> imageDetector.detectCondition(conditionBitmap, condition.area, condition.threshold)
-            WHOLE_SCREEN -> imageDetector.detectCondition(conditionBitmap, condition.threshold)
-            else -> throw IllegalArgumentException("Unexpected detection type")
-        }
+    private fun registerConditionBitmap(conditionBitmap: Bitmap): Int {
+        if (captureScale == 1.0) return imageDetector.registerCondition(conditionBitmap)
+
+        val captureBitmap = Bitmap.createScaledBitmap(
+            conditionBitmap,
+            (conditionBitmap.width * captureScale).roundToInt().coerceAtLeast(1),
+            (conditionBitmap.height * captureScale).roundToInt().coerceAtLeast(1),
+            true,
+        )
+
+        // The detector keeps its own copy, and the supplied bitmap may be cached, only release the scaled one.
+        val handle = imageDetector.registerCondition(captureBitmap)
+        if (captureBitmap != conditionBitmap) captureBitmap.recycle()
+        return handle
+    }
 }
 
+/**
+ * The sizes of the conditions searched by the multi-scale matching, relatively to their captured size.
+ * They cover the usual ratios between the screen densities of two devices.
+ */
+private val MULTI_SCALE_MATCHING_SCALES = doubleArrayOf(0.67, 0.75, 0.875, 1.14, 1.33, 1.5)
+
+/** Value of [ScenarioProcessor.eventsGroups] for an event not in the detection batch. */
+private const val NO_GROUP = -1
 /** Tag for logs. */
 private const val TAG = "ScenarioProcessor"
\ No newline at end of file
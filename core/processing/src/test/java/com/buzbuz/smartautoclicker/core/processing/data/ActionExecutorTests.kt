@@ -74,6 +74,8 @@ class ActionExecutorTests {
             Action.Click(Identifier(id), TEST_EVENT_ID, TEST_NAME, duration, Action.Click.PositionType.USER_SELECTED, TEST_X1, TEST_Y1, null)
         fun getNewDefaultClickCondition(id: Long, conditionId: Long? = null) =
             Action.Click(Identifier(id), TEST_EVENT_ID, TEST_NAME, TEST_DURATION, Action.Click.PositionType.ON_DETECTED_CONDITION, null, null, conditionId?.let { Identifier(conditionId) })
+        fun getNewDefaultClickEachCondition(id: Long, conditionId: Long? = null) =
+            Action.Click(Identifier(id), TEST_EVENT_ID, TEST_NAME, TEST_DURATION, Action.Click.PositionType.ON_EACH_DETECTED_CONDITION, null, null, conditionId?.let { Identifier(conditionId) })
         fun getNewDefaultSwipe(id: Long) =
             Action.Swipe(Identifier(id), TEST_EVENT_ID, TEST_NAME, TEST_DURATION, TEST_X1, TEST_Y1, TEST_X2, TEST_Y2)
         fun getNewDefaultPause(id: Long) =
@@ -112,7 +114,7 @@ class ActionExecutorTests {
     @Test
     fun noActions() = runTest {
         val event = getNewDefaultEvent()
-        actionExecutor.executeActions(event, emptyList(), ProcessingResults(listOf(event)))
+        actionExecutor.executeActions(ActionsPlan(event, emptyList()), ProcessingResults(listOf(event)))
         verify(mockAndroidExecutor, never()).executeGesture(anyNotNull())
     }
 
@@ -121,13 +123,25 @@ class ActionExecutorTests {
         val clickAction = getNewDefaultClickUserPos(1)
         val event = getNewDefaultEvent()
 
-        actionExecutor.executeActions(event, listOf(clickAction), ProcessingResults(listOf(event)))
+        actionExecutor.executeActions(ActionsPlan(event, listOf(clickAction)), ProcessingResults(listOf(event)))
 
         val gestureCaptor = argumentCaptor<GestureDescription>()
         verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
         assertActionGesture(gestureCaptor.lastValue)
     }
 
+    @Test
+    fun execute_oneClick_incomplete() = runTest {
+        val clickAction = getNewDefaultClickUserPos(1).copy(x = null)
+        val event = getNewDefaultEvent()
+
+        val actions = ActionsPlan(event, listOf(clickAction))
+        actionExecutor.executeActions(actions, ProcessingResults(listOf(event)))
+
+        assertEquals("Incomplete action should not be compiled", 0, actions.actionCount)
+        verify(mockAndroidExecutor, never()).executeGesture(anyNotNull())
+    }
+
     @Test
     fun execute_oneClick_onCondition_or() = runTest {
         val clickAction = getNewDefaultClickUserPos(1)
@@ -137,7 +151,7 @@ class ActionExecutorTests {
         val results = ProcessingResults(listOf(event))
         results.addResult(condition, true, Point(15, 15), 100.0)
 
-        actionExecutor.executeActions(event, listOf(clickAction), results)
+        actionExecutor.executeActions(ActionsPlan(event, listOf(clickAction)), results)
 
         val gestureCaptor = argumentCaptor<GestureDescription>()
         verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
@@ -155,7 +169,44 @@ class ActionExecutorTests {
         results.addResult(conditionValid, true, Point(15, 15), 100.0)
         results.addResult(conditionOther, true, Point(45, 45), 98.0)
 
-        actionExecutor.executeActions(event, listOf(clickAction), results)
+        actionExecutor.executeActions(ActionsPlan(event, listOf(clickAction)), results)
+
+        val gestureCaptor = argumentCaptor<GestureDescription>()
+        verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
+        assertActionGesture(gestureCaptor.lastValue)
+    }
+
+    @Test
+    fun execute_oneClick_onEachCondition() = runTest {
+        val condition = getNewDefaultCondition(42L)
+        val clickAction = getNewDefaultClickEachCondition(1, condition.id.databaseId)
+
+        val event = getNewDefaultEvent(AND, conditions = listOf(condition))
+        val results = ProcessingResults(listOf(event))
+        results.addResult(condition, true, Point(15, 15), 100.0)
+        results.getResult(event.id.databaseId, condition.id.databaseId)!!.apply {
+            addMatch(Point(15, 15))
+            addMatch(Point(45, 45))
+            addMatch(Point(75, 75))
+        }
+
+        actionExecutor.executeActions(ActionsPlan(event, listOf(clickAction)), results)
+
+        val gestureCaptor = argumentCaptor<GestureDescription>()
+        verify(mockAndroidExecutor, times(3)).executeGesture(gestureCaptor.capture())
+        gestureCaptor.allValues.forEach { gesture -> assertActionGesture(gesture) }
+    }
+
+    @Test
+    fun execute_oneClick_onEachCondition_noMatches() = runTest {
+        val condition = getNewDefaultCondition(42L)
+        val clickAction = getNewDefaultClickEachCondition(1, condition.id.databaseId)
+
+        val event = getNewDefaultEvent(AND, conditions = listOf(condition))
+        val results = ProcessingResults(listOf(event))
+        results.addResult(condition, true, Point(15, 15), 100.0)
+
+        actionExecutor.executeActions(ActionsPlan(event, listOf(clickAction)), results)
 
         val gestureCaptor = argumentCaptor<GestureDescription>()
         verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
@@ -166,7 +217,7 @@ class ActionExecutorTests {
     fun execute_oneSwipe() = runTest {
         val swipeAction = getNewDefaultSwipe(1)
 
-        actionExecutor.executeActions(getNewDefaultEvent(), listOf(swipeAction), ProcessingResults(emptyList()))
+        actionExecutor.executeActions(ActionsPlan(getNewDefaultEvent(), listOf(swipeAction)), ProcessingResults(emptyList()))
 
         val gestureCaptor = argumentCaptor<GestureDescription>()
         verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
@@ -178,7 +229,7 @@ class ActionExecutorTests {
         val pause = getNewDefaultPause(1)
 
         // Execute the pause. As the handler is waiting to the finish the pause, we should stays in EXECUTING
-        actionExecutor.executeActions(getNewDefaultEvent(), listOf(pause), ProcessingResults(emptyList()))
+        actionExecutor.executeActions(ActionsPlan(getNewDefaultEvent(), listOf(pause)), ProcessingResults(emptyList()))
 
         // Only a pause, there should be no gestures
         verify(mockAndroidExecutor, never()).executeGesture(anyNotNull())
@@ -192,7 +243,7 @@ class ActionExecutorTests {
         val gestureCaptor = argumentCaptor<GestureDescription>()
 
         // Execute the actions.
-        actionExecutor.executeActions(getNewDefaultEvent(), listOf(click, pause, swipe), ProcessingResults(emptyList()))
+        actionExecutor.executeActions(ActionsPlan(getNewDefaultEvent(), listOf(click, pause, swipe)), ProcessingResults(emptyList()))
 
         // Verify the gestures executions
         verify(mockAndroidExecutor, times(2)).executeGesture(gestureCaptor.capture())
@@ -214,8 +265,7 @@ class ActionExecutorTests {
 
         launch(Dispatchers.IO) {
             actionExecutor.executeActions(
-                getNewDefaultEvent(),
-                listOf(getNewDefaultClickUserPos(1, executionDurationMs)),
+                ActionsPlan(getNewDefaultEvent(), listOf(getNewDefaultClickUserPos(1, executionDurationMs))),
                 ProcessingResults(emptyList()),
             )
 
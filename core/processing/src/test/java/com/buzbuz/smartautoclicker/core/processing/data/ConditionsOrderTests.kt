@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2022 Kevin Buzeau
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data
+
+import android.graphics.Rect
+import android.os.Build
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+
+import com.buzbuz.smartautoclicker.core.domain.model.AND
+import com.buzbuz.smartautoclicker.core.domain.model.EXACT
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
+import com.buzbuz.smartautoclicker.core.domain.model.Identifier
+import com.buzbuz.smartautoclicker.core.domain.model.OR
+import com.buzbuz.smartautoclicker.core.domain.model.WHOLE_SCREEN
+import com.buzbuz.smartautoclicker.core.domain.model.action.Action
+import com.buzbuz.smartautoclicker.core.domain.model.condition.Condition
+import com.buzbuz.smartautoclicker.core.processing.data.processor.ConditionsOrder
+import com.buzbuz.smartautoclicker.core.processing.utils.ProcessingData
+
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.robolectric.annotation.Config
+
+/** Test the [ConditionsOrder] class. */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [Build.VERSION_CODES.Q])
+class ConditionsOrderTests {
+
+    private companion object {
+        private const val TEST_CONDITION_PATH_1 = "TOTO1"
+        private const val TEST_CONDITION_PATH_2 = "TOTO2"
+        private const val TEST_CONDITION_PATH_3 = "TOTO3"
+        private val CONDITIONS_PATHS = listOf(TEST_CONDITION_PATH_1, TEST_CONDITION_PATH_2, TEST_CONDITION_PATH_3)
+        private val TEST_CONDITION_AREA = Rect(0, 1, 2, 3)
+        private const val TEST_CONDITION_THRESHOLD = 1
+
+        /** The number of detections between two updates of the orders. */
+        private const val ORDERS_UPDATE_PERIOD = 100
+    }
+
+    private fun newCondition(path: String, detectionType: Int): Condition =
+        ProcessingData.newCondition(path, TEST_CONDITION_AREA, TEST_CONDITION_THRESHOLD, detectionType)
+
+    /** Simulates the detections of the conditions of the first event until the orders are updated. */
+    private fun ConditionsOrder.measureDetections(durationsUs: List<Int>, fulfilled: List<Boolean>) {
+        repeat(ORDERS_UPDATE_PERIOD) {
+            updateOrders()
+            durationsUs.indices.forEach { evaluationIndex ->
+                val condition = getCondition(0, evaluationIndex)
+                val conditionIndex = CONDITIONS_PATHS.indexOf(condition.path)
+                onConditionEvaluated(0, evaluationIndex, durationsUs[conditionIndex], fulfilled[conditionIndex])
+            }
+        }
+        updateOrders()
+    }
+
+    @Test
+    fun defaultOrder_byDetectionType() {
+        val event = ProcessingData.newEvent(
+            conditions = listOf(
+                newCondition(TEST_CONDITION_PATH_1, WHOLE_SCREEN),
+                newCondition(TEST_CONDITION_PATH_2, EXACT),
+                newCondition(TEST_CONDITION_PATH_3, IN_AREA),
+            ),
+        )
+
+        val conditionsOrder = ConditionsOrder(listOf(event))
+
+        Assert.assertEquals("Exact condition should be first", TEST_CONDITION_PATH_2, conditionsOrder.getCondition(0, 0).path)
+        Assert.assertEquals("In area condition should be second", TEST_CONDITION_PATH_3, conditionsOrder.getCondition(0, 1).path)
+        Assert.assertEquals("Whole screen condition should be last", TEST_CONDITION_PATH_1, conditionsOrder.getCondition(0, 2).path)
+    }
+
+    @Test
+    fun and_cheapNeverFulfilled_first() {
+        val event = ProcessingData.newEvent(
+            operator = AND,
+            conditions = listOf(
+                newCondition(TEST_CONDITION_PATH_1, EXACT),
+                newCondition(TEST_CONDITION_PATH_2, EXACT),
+            ),
+        )
+
+        val conditionsOrder = ConditionsOrder(listOf(event))
+        conditionsOrder.measureDetections(durationsUs = listOf(1000, 10), fulfilled = listOf(true, false))
+
+        Assert.assertEquals("Invalid first condition", TEST_CONDITION_PATH_2, conditionsOrder.getCondition(0, 0).path)
+        Assert.assertEquals("Invalid second condition", TEST_CONDITION_PATH_1, conditionsOrder.getCondition(0, 1).path)
+    }
+
+    @Test
+    fun or_alwaysFulfilled_first() {
+        val event = ProcessingData.newEvent(
+            operator = OR,
+            conditions = listOf(
+                newCondition(TEST_CONDITION_PATH_1, EXACT),
+                newCondition(TEST_CONDITION_PATH_2, WHOLE_SCREEN),
+            ),
+        )
+
+        val conditionsOrder = ConditionsOrder(listOf(event))
+        conditionsOrder.measureDetections(durationsUs = listOf(10, 1000), fulfilled = listOf(false, true))
+
+        Assert.assertEquals("Invalid first condition", TEST_CONDITION_PATH_2, conditionsOrder.getCondition(0, 0).path)
+        Assert.assertEquals("Invalid second condition", TEST_CONDITION_PATH_1, conditionsOrder.getCondition(0, 1).path)
+    }
+
+    @Test
+    fun or_clickOnCondition_storedOrder() {
+        val event = ProcessingData.newEvent(
+            operator = OR,
+            conditions = listOf(
+                newCondition(TEST_CONDITION_PATH_1, WHOLE_SCREEN),
+                newCondition(TEST_CONDITION_PATH_2, EXACT),
+            ),
+            actions = listOf(
+                Action.Click(
+                    id = Identifier(1),
+                    eventId = Identifier(1),
+                    pressDuration = 1,
+                    positionType = Action.Click.PositionType.ON_DETECTED_CONDITION,
+                ),
+            ),
+        )
+
+        val conditionsOrder = ConditionsOrder(listOf(event))
+        conditionsOrder.measureDetections(durationsUs = listOf(1000, 10), fulfilled = listOf(false, true))
+
+        Assert.assertEquals("Invalid first condition", TEST_CONDITION_PATH_1, conditionsOrder.getCondition(0, 0).path)
+        Assert.assertEquals("Invalid second condition", TEST_CONDITION_PATH_2, conditionsOrder.getCondition(0, 1).path)
+    }
+
+    @Test
+    fun order_notUpdated_beforePeriod() {
+        val event = ProcessingData.newEvent(
+            operator = AND,
+            conditions = listOf(
+                newCondition(TEST_CONDITION_PATH_1, EXACT),
+                newCondition(TEST_CONDITION_PATH_2, EXACT),
+            ),
+        )
+
+        val conditionsOrder = ConditionsOrder(listOf(event))
+        conditionsOrder.updateOrders()
+        conditionsOrder.onConditionEvaluated(0, 0, 1000, true)
+        conditionsOrder.onConditionEvaluated(0, 1, 10, false)
+        conditionsOrder.updateOrders()
+
+        Assert.assertEquals("Order should not be updated", TEST_CONDITION_PATH_1, conditionsOrder.getCondition(0, 0).path)
+    }
+}
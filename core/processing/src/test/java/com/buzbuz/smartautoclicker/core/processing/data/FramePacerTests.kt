@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 Kevin Buzeau
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.buzbuz.smartautoclicker.core.processing.data
+
+import android.os.Build
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.robolectric.annotation.Config
+
+/** Test the [FramePacer] class. */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [Build.VERSION_CODES.Q])
+class FramePacerTests {
+
+    private companion object {
+        private const val TEST_MAX_FPS = 10
+        private const val TEST_MIN_FRAME_DURATION = 100L
+        private const val TEST_BACKOFF_FRAME_COUNT = 3
+        private const val TEST_BACKOFF_MAX_DELAY = 500L
+        private const val TEST_PROCESSING_DURATION = 20L
+
+        /** The first delay between two frames once slowed down. */
+        private const val BACKOFF_MIN_DELAY = 50L
+    }
+
+    @Test
+    fun unlimited() {
+        val pacer = FramePacer(0, 0, 0)
+
+        Assert.assertTrue(pacer.isUnlimited)
+        repeat(10) { Assert.assertEquals(0L, pacer.onFrameProcessed(false, TEST_PROCESSING_DURATION)) }
+    }
+
+    @Test
+    fun maxFps_delayIsFrameDurationMinusProcessing() {
+        val pacer = FramePacer(TEST_MAX_FPS, 0, 0)
+
+        Assert.assertFalse(pacer.isUnlimited)
+        Assert.assertEquals(
+            TEST_MIN_FRAME_DURATION - TEST_PROCESSING_DURATION,
+            pacer.onFrameProcessed(true, TEST_PROCESSING_DURATION),
+        )
+        Assert.assertEquals(0L, pacer.onFrameProcessed(true, TEST_MIN_FRAME_DURATION * 2))
+    }
+
+    @Test
+    fun backoff_afterInactiveFrames() {
+        val pacer = FramePacer(0, TEST_BACKOFF_FRAME_COUNT, TEST_BACKOFF_MAX_DELAY)
+
+        repeat(TEST_BACKOFF_FRAME_COUNT - 1) { Assert.assertEquals(0L, pacer.onFrameProcessed(false, 0)) }
+        Assert.assertEquals(BACKOFF_MIN_DELAY, pacer.onFrameProcessed(false, 0))
+        Assert.assertEquals(BACKOFF_MIN_DELAY * 2, pacer.onFrameProcessed(false, 0))
+        Assert.assertEquals(BACKOFF_MIN_DELAY * 4, pacer.onFrameProcessed(false, 0))
+        Assert.assertEquals(BACKOFF_MIN_DELAY * 8, pacer.onFrameProcessed(false, 0))
+        Assert.assertEquals(TEST_BACKOFF_MAX_DELAY, pacer.onFrameProcessed(false, 0))
+        Assert.assertEquals(TEST_BACKOFF_MAX_DELAY, pacer.onFrameProcessed(false, 0))
+    }
+
+    @Test
+    fun backoff_activeFrameRestoresFrameRate() {
+        val pacer = FramePacer(TEST_MAX_FPS, TEST_BACKOFF_FRAME_COUNT, TEST_BACKOFF_MAX_DELAY)
+
+        repeat(TEST_BACKOFF_FRAME_COUNT + 5) { pacer.onFrameProcessed(false, 0) }
+        Assert.assertEquals(TEST_BACKOFF_MAX_DELAY, pacer.onFrameProcessed(false, 0))
+
+        Assert.assertEquals(TEST_MIN_FRAME_DURATION, pacer.onFrameProcessed(true, 0))
+        repeat(TEST_BACKOFF_FRAME_COUNT - 1) {
+            Assert.assertEquals(TEST_MIN_FRAME_DURATION, pacer.onFrameProcessed(false, 0))
+        }
+    }
+
+    @Test
+    fun frameRateDelay_notIncludingBackoff() {
+        val pacer = FramePacer(TEST_MAX_FPS, TEST_BACKOFF_FRAME_COUNT, TEST_BACKOFF_MAX_DELAY)
+
+        repeat(TEST_BACKOFF_FRAME_COUNT + 5) { pacer.onFrameProcessed(false, TEST_PROCESSING_DURATION) }
+
+        Assert.assertEquals(
+            TEST_BACKOFF_MAX_DELAY - TEST_PROCESSING_DURATION,
+            pacer.onFrameProcessed(false, TEST_PROCESSING_DURATION),
+        )
+        Assert.assertEquals(
+            TEST_MIN_FRAME_DURATION - TEST_PROCESSING_DURATION,
+            pacer.getFrameRateDelay(TEST_PROCESSING_DURATION),
+        )
+    }
+}
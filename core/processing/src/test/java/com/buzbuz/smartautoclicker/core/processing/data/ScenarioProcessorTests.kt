@@ -18,12 +18,15 @@ package com.buzbuz.smartautoclicker.core.processing.data
 
 import android.accessibilityservice.GestureDescription
 import android.graphics.Bitmap
+import android.graphics.Point
 import android.graphics.Rect
 import android.os.Build
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.buzbuz.smartautoclicker.core.*
+import com.buzbuz.smartautoclicker.core.detection.DetectionBatch
 import com.buzbuz.smartautoclicker.core.detection.DetectionResult
 import com.buzbuz.smartautoclicker.core.detection.ImageDetector
+import com.buzbuz.smartautoclicker.core.detection.NO_GROUP_FULFILLED
 import com.buzbuz.smartautoclicker.core.domain.model.AND
 import com.buzbuz.smartautoclicker.core.domain.model.DetectionType
 import com.buzbuz.smartautoclicker.core.domain.model.EXACT
@@ -57,7 +60,9 @@ import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
 import org.mockito.Mockito.verifyNoInteractions
 import org.mockito.MockitoAnnotations
+import org.mockito.kotlin.any
 import org.mockito.kotlin.argumentCaptor
+import org.robolectric.Shadows.shadowOf
 import org.robolectric.annotation.Config
 import org.mockito.Mockito.`when` as mockWhen
 
@@ -116,6 +121,10 @@ class ScenarioProcessorTests {
 
     /** The object under test. */
     private lateinit var scenarioProcessor: ScenarioProcessor
+    /** The detection results of the test conditions, by condition handle. */
+    private val conditionsDetections: MutableMap<Int, DetectionResult> = mutableMapOf()
+    /** Tells if the test conditions are fulfilled with their detection results, by condition handle. */
+    private val conditionsFulfilled: MutableMap<Int, Boolean> = mutableMapOf()
 
     /** Creates and initialize mocks for a new condition. */
     private fun createTestCondition(
@@ -125,18 +134,53 @@ class ScenarioProcessorTests {
         @DetectionType detectionType: Int,
         shouldBeOnScreen: Boolean,
         isDetected: Boolean,
+        detectedPosition: Point = Point(),
     ) : Condition {
         val conditionBitmap = mock(Bitmap::class.java)
         mockWhen(mockBitmapSupplier.getBitmap(path, area.width(), area.height())).thenReturn(conditionBitmap)
 
-        val pass = if (isDetected) TEST_DETECTION_OK else TEST_DETECTION_KO
-        when (detectionType) {
-            EXACT -> mockWhen(mockImageDetector.detectCondition(conditionBitmap, area, threshold)).thenReturn(pass)
-            WHOLE_SCREEN -> mockWhen(mockImageDetector.detectCondition(conditionBitmap, threshold)).thenReturn(pass)
-        }
+        val conditionHandle = conditionsDetections.size
+        mockWhen(mockImageDetector.registerCondition(conditionBitmap)).thenReturn(conditionHandle)
+        conditionsDetections[conditionHandle] =
+            if (isDetected) TEST_DETECTION_OK.copy(position = Point(detectedPosition)) else TEST_DETECTION_KO
+        conditionsFulfilled[conditionHandle] = isDetected == shouldBeOnScreen
         return newCondition(path, area, threshold, detectionType, shouldBeOnScreen)
     }
 
+    /**
+     * Set the results of all conditions of the batch from the test conditions, like the native detection.
+     * @return the index of the first fulfilled group, or [NO_GROUP_FULFILLED] if none are.
+     */
+    private fun mockBatchDetection(batch: DetectionBatch): Int {
+        var fulfilledGroup = NO_GROUP_FULFILLED
+        for (groupIndex in 0 until batch.groupCount) {
+            if (batch.isGroupSkipped(groupIndex) || fulfilledGroup != NO_GROUP_FULFILLED) {
+                batch.setGroupResult(groupIndex, false)
+                continue
+            }
+
+            // The evaluation of a group stops on its first condition deciding it, as in the native detection.
+            val requireAll = batch.isGroupRequiringAll(groupIndex)
+            var isFulfilled = requireAll
+            val firstCondition = batch.getGroupFirstCondition(groupIndex)
+            for (conditionIndex in firstCondition until firstCondition + batch.getGroupConditionCount(groupIndex)) {
+                val handle = batch.getConditionHandle(conditionIndex)
+                batch.setConditionResult(conditionIndex, conditionsDetections[handle] ?: TEST_DETECTION_KO)
+
+                val isConditionFulfilled = conditionsFulfilled[handle] == true
+                if (isConditionFulfilled != requireAll) {
+                    isFulfilled = isConditionFulfilled
+                    break
+                }
+            }
+
+            batch.setGroupResult(groupIndex, isFulfilled)
+            if (isFulfilled) fulfilledGroup = groupIndex
+        }
+
+        return fulfilledGroup
+    }
+
     /** */
     private suspend fun assertActionGesture(expectedDuration: Long) {
         val gestureCaptor = argumentCaptor<GestureDescription>()
@@ -154,7 +198,8 @@ class ScenarioProcessorTests {
     private fun createNewScenarioProcessor(
         events: List<Event>,
         endConditions: List<EndCondition>,
-        endConditionOperator: Int
+        endConditionOperator: Int,
+        isMultiScaleMatching: Boolean = false,
     ) = ScenarioProcessor(
         mockImageDetector,
         TEST_DATA_DETECTION_QUALITY.toInt(),
@@ -165,6 +210,7 @@ class ScenarioProcessorTests {
         endConditionOperator,
         endConditions,
         mockEndListener::onStopRequested,
+        isMultiScaleMatching = isMultiScaleMatching,
     )
 
     @Before
@@ -176,10 +222,17 @@ class ScenarioProcessorTests {
         mockWhen(mockScreenBitmap.width).thenReturn(TEST_DATA_SCREEN_IMAGE_WIDTH)
         mockWhen(mockScreenBitmap.height).thenReturn(TEST_DATA_SCREEN_IMAGE_HEIGHT)
         mockWhen(mockScreenBitmap.config).thenReturn(Bitmap.Config.ARGB_8888)
+
+        // Mock the batch detection with the results of the test conditions
+        mockWhen(mockImageDetector.detectConditions(any())).thenAnswer { invocation ->
+            mockBatchDetection(invocation.getArgument(0))
+        }
     }
 
     @After
     fun tearDown() {
+        conditionsDetections.clear()
+        conditionsFulfilled.clear()
         Dispatchers.resetMain()
     }
 
@@ -277,6 +330,7 @@ class ScenarioProcessorTests {
         scenarioProcessor.process(mockScreenBitmap)
 
         verify(mockImageDetector).setupDetection(mockScreenBitmap)
+        verify(mockImageDetector).detectConditions(any())
         assertActionGesture(expectedDuration)
         verifyNoInteractions(mockEndListener)
     }
@@ -375,6 +429,35 @@ class ScenarioProcessorTests {
         verifyNoInteractions(mockEndListener)
     }
 
+    @Test
+    fun oneCondition_wholeScreen_multiScaleMatching() = runTest {
+        val condition = createTestCondition(
+            TEST_CONDITION_PATH_1,
+            TEST_CONDITION_AREA_1,
+            TEST_CONDITION_THRESHOLD_1,
+            WHOLE_SCREEN,
+            isDetected = true,
+            shouldBeOnScreen = true,
+        )
+        val event = newEvent(
+            operator = AND,
+            conditions = listOf(condition),
+            actions = listOf(newDefaultClickAction()),
+        )
+
+        scenarioProcessor = createNewScenarioProcessor(listOf(event), emptyList(), OR, isMultiScaleMatching = true)
+        scenarioProcessor.process(mockScreenBitmap)
+
+        // The scales are set before the conditions registration, each condition is resized only once.
+        val detectorOrder = Mockito.inOrder(mockImageDetector)
+        detectorOrder.verify(mockImageDetector).setMatchingScales(any())
+        detectorOrder.verify(mockImageDetector).registerCondition(any())
+        val batchCaptor = argumentCaptor<DetectionBatch>()
+        verify(mockImageDetector).detectConditions(batchCaptor.capture())
+        Assert.assertTrue("Condition should be multi-scale", batchCaptor.lastValue.isConditionMultiScale(0))
+        assertActionGesture(1L)
+    }
+
     @Test
     fun oneCondition_wholeScreen_match_should_Not_BeDetected() = runTest {
         val condition = createTestCondition(
@@ -1088,6 +1171,7 @@ class ScenarioProcessorTests {
         scenarioProcessor.process(mockScreenBitmap)
 
         verify(mockImageDetector).setupDetection(mockScreenBitmap)
+        verify(mockImageDetector, times(1)).detectConditions(any())
         assertActionGesture(actionDuration2)
         verifyNoInteractions(mockEndListener)
     }
@@ -1420,4 +1504,77 @@ class ScenarioProcessorTests {
         scenarioProcessor.process(mockScreenBitmap)
         verify(mockEndListener, never()).onStopRequested()
     }
+
+    @Test
+    fun severalConditions_OR_allMatch_clickOnFirstStoredCondition() = runTest {
+        val firstPosition = Point(100, 200)
+        val condition1 = createTestCondition(
+            TEST_CONDITION_PATH_1,
+            TEST_CONDITION_AREA_1,
+            TEST_CONDITION_THRESHOLD_1,
+            WHOLE_SCREEN,
+            isDetected = true,
+            shouldBeOnScreen = true,
+            detectedPosition = firstPosition,
+        )
+        val condition2 = createTestCondition(
+            TEST_CONDITION_PATH_2,
+            TEST_CONDITION_AREA_2,
+            TEST_CONDITION_THRESHOLD_2,
+            EXACT,
+            isDetected = true,
+            shouldBeOnScreen = true,
+            detectedPosition = Point(300, 400),
+        )
+        val event = newEvent(
+            operator = OR,
+            conditions = listOf(condition1, condition2),
+            actions = listOf(
+                Action.Click(
+                    id = Identifier(1),
+                    eventId = Identifier(1),
+                    pressDuration = 1,
+                    positionType = Action.Click.PositionType.ON_DETECTED_CONDITION,
+                ),
+            ),
+        )
+
+        scenarioProcessor = createNewScenarioProcessor(listOf(event), emptyList(), OR)
+        scenarioProcessor.process(mockScreenBitmap)
+
+        // The exact condition is cheaper, but the click must be on the first condition, as stored in the event.
+        val gestureCaptor = argumentCaptor<GestureDescription>()
+        verify(mockAndroidExecutor).executeGesture(gestureCaptor.capture())
+        val clickPosition = shadowOf(gestureCaptor.lastValue.getStroke(0).path).points.first()
+        Assert.assertEquals("Invalid click x position", firstPosition.x.toFloat(), clickPosition.x)
+        Assert.assertEquals("Invalid click y position", firstPosition.y.toFloat(), clickPosition.y)
+    }
+
+    @Test
+    fun detect_whileExecuting_shouldDropEvent() = runTest {
+        val condition = createTestCondition(
+            TEST_CONDITION_PATH_1,
+            TEST_CONDITION_AREA_1,
+            TEST_CONDITION_THRESHOLD_1,
+            EXACT,
+            isDetected = true,
+            shouldBeOnScreen = true,
+        )
+        val event = newEvent(
+            operator = AND,
+            conditions = listOf(condition),
+            actions = listOf(newDefaultClickAction()),
+        )
+
+        scenarioProcessor = createNewScenarioProcessor(listOf(event), emptyList(), OR)
+
+        val fulfilledEvent = scenarioProcessor.detect(mockScreenBitmap)
+        Assert.assertEquals("Event should be fulfilled", event, fulfilledEvent)
+        Assert.assertNull("Event should be dropped while executing", scenarioProcessor.detect(mockScreenBitmap))
+        verify(mockImageDetector, times(2)).detectConditions(any())
+
+        scenarioProcessor.execute(fulfilledEvent!!)
+        assertActionGesture(1L)
+        Assert.assertEquals("Event should be fulfilled after execution", event, scenarioProcessor.detect(mockScreenBitmap))
+    }
 }
\ No newline at end of file
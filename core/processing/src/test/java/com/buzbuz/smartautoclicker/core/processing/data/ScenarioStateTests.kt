@@ -21,6 +21,7 @@ import android.os.Build
 import androidx.test.ext.junit.runners.AndroidJUnit4
 
 import com.buzbuz.smartautoclicker.core.domain.model.action.Action
+import com.buzbuz.smartautoclicker.core.domain.model.event.Event
 import com.buzbuz.smartautoclicker.core.processing.data.ScenarioState
 import com.buzbuz.smartautoclicker.core.processing.utils.ProcessingData
 
@@ -35,6 +36,9 @@ import org.robolectric.annotation.Config
 @Config(sdk = [Build.VERSION_CODES.Q])
 class ScenarioStateTests {
 
+    private fun ScenarioState.isEventEnabled(event: Event): Boolean =
+        isEventEnabled(getEventIndex(event.id.databaseId))
+
     @Test
     fun all_events_enabled_on_start() {
         val eventList = listOf(
@@ -45,7 +49,7 @@ class ScenarioStateTests {
 
         val scenarioState = ScenarioState(eventList)
 
-        Assert.assertEquals("Invalid enabled events count", eventList.size, scenarioState.getEnabledEvents().size)
+        Assert.assertEquals("Invalid enabled events count", eventList.size, scenarioState.getEnabledEventCount())
     }
 
     @Test
@@ -58,7 +62,7 @@ class ScenarioStateTests {
 
         val scenarioState = ScenarioState(eventList)
 
-        Assert.assertEquals("Invalid enabled events count", 0, scenarioState.getEnabledEvents().size)
+        Assert.assertEquals("Invalid enabled events count", 0, scenarioState.getEnabledEventCount())
     }
 
     @Test
@@ -71,7 +75,7 @@ class ScenarioStateTests {
 
         val scenarioState = ScenarioState(eventList)
 
-        Assert.assertEquals("Invalid enabled events count", 1, scenarioState.getEnabledEvents().size)
+        Assert.assertEquals("Invalid enabled events count", 1, scenarioState.getEnabledEventCount())
     }
 
     @Test
@@ -87,7 +91,7 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.ENABLE)
         }
 
-        Assert.assertTrue("Event not enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertTrue("Event not enabled", scenarioState.isEventEnabled(changingEvent))
     }
 
     @Test
@@ -103,7 +107,7 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.ENABLE)
         }
 
-        Assert.assertTrue("Event not enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertTrue("Event not enabled", scenarioState.isEventEnabled(changingEvent))
     }
 
     @Test
@@ -119,7 +123,7 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.DISABLE)
         }
 
-        Assert.assertFalse("Event should not be enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertFalse("Event should not be enabled", scenarioState.isEventEnabled(changingEvent))
     }
 
     @Test
@@ -135,7 +139,7 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.DISABLE)
         }
 
-        Assert.assertFalse("Event should not be enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertFalse("Event should not be enabled", scenarioState.isEventEnabled(changingEvent))
     }
 
     @Test
@@ -151,7 +155,7 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.TOGGLE)
         }
 
-        Assert.assertFalse("Event should not be enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertFalse("Event should not be enabled", scenarioState.isEventEnabled(changingEvent))
     }
 
     @Test
@@ -167,6 +171,23 @@ class ScenarioStateTests {
             changeEventState(changingEvent.id.databaseId, Action.ToggleEvent.ToggleType.ENABLE)
         }
 
-        Assert.assertTrue("Event not enabled", scenarioState.getEnabledEvents().contains(changingEvent))
+        Assert.assertTrue("Event not enabled", scenarioState.isEventEnabled(changingEvent))
+    }
+
+    @Test
+    fun next_enabled_events_in_scenario_order() {
+        val eventList = List(130) { index ->
+            ProcessingData.newEvent(id = index.toLong(), enableOnStart = index == 3 || index == 64 || index == 129)
+        }
+
+        val scenarioState = ScenarioState(eventList).apply {
+            changeEventState(64L, Action.ToggleEvent.ToggleType.DISABLE)
+            changeEventState(70L, Action.ToggleEvent.ToggleType.ENABLE)
+        }
+
+        Assert.assertEquals("Invalid first enabled event", 3, scenarioState.getNextEnabledEventIndex(0))
+        Assert.assertEquals("Invalid second enabled event", 70, scenarioState.getNextEnabledEventIndex(4))
+        Assert.assertEquals("Invalid third enabled event", 129, scenarioState.getNextEnabledEventIndex(71))
+        Assert.assertEquals("There should be no more enabled events", NO_EVENT, scenarioState.getNextEnabledEventIndex(130))
     }
 }
\ No newline at end of file
@@ -141,6 +141,11 @@ internal class ScenarioSerializer {
                 ?.coerceIn(OPERATOR_LOWER_BOUND, OPERATOR_UPPER_BOUND)
                 ?: OPERATOR_DEFAULT_VALUE,
             randomize = getBoolean("randomize") ?: false,
+            maxFps = getInt("maxFps")?.coerceAtLeast(0) ?: 0,
+            backoffFrameCount = getInt("backoffFrameCount")?.coerceAtLeast(0) ?: 0,
+            backoffMaxDelay = getLong("backoffMaxDelay")?.coerceAtLeast(0) ?: 0,
+            downscaleCapture = getBoolean("downscaleCapture") ?: false,
+            multiScaleMatching = getBoolean("multiScaleMatching") ?: false,
         )
     }
 
@@ -230,6 +235,10 @@ internal class ScenarioSerializer {
                 threshold = getInt("threshold")
                     ?.coerceIn(CONDITION_THRESHOLD_LOWER_BOUND, CONDITION_THRESHOLD_UPPER_BOUND)
                     ?: CONDITION_THRESHOLD_DEFAULT_VALUE,
+                detectionAreaLeft = getInt("detectionAreaLeft"),
+                detectionAreaTop = getInt("detectionAreaTop"),
+                detectionAreaRight = getInt("detectionAreaRight"),
+                detectionAreaBottom = getInt("detectionAreaBottom"),
             )
         }
     }
@@ -425,7 +434,7 @@ const val OPERATOR_DEFAULT_VALUE = OPERATOR_LOWER_BOUND
 /** Detection type lower bound on compat deserialization. */
 const val DETECTION_TYPE_LOWER_BOUND = 1
 /** Detection type upper bound on compat deserialization. */
-const val DETECTION_TYPE_UPPER_BOUND = 2
+const val DETECTION_TYPE_UPPER_BOUND = 3
 /** Detection type default value on compat deserialization. */
 const val DETECTION_TYPE_DEFAULT_VALUE = DETECTION_TYPE_LOWER_BOUND
 
@@ -154,7 +154,7 @@ class EditedItemsBuilder internal constructor(
 
     private fun createNewClickFrom(from: Action.Click, eventId: Identifier): Action.Click {
         val conditionId =
-            if (from.positionType == PositionType.ON_DETECTED_CONDITION && from.clickOnConditionId != null)
+            if (from.positionType.isOnCondition() && from.clickOnConditionId != null)
                 eventCopyConditionIdMap[from.clickOnConditionId]
             else null
 
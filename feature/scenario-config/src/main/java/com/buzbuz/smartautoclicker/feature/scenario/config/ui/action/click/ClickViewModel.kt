@@ -106,9 +106,9 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
             when {
                 click.positionType == Action.Click.PositionType.USER_SELECTED ->
                     application.getUserSelectedClickPositionState(click)
-                click.positionType == Action.Click.PositionType.ON_DETECTED_CONDITION && event.value.conditionOperator == OR ->
-                    application.getOnConditionWithOrPositionState()
-                click.positionType == Action.Click.PositionType.ON_DETECTED_CONDITION && event.value.conditionOperator == AND ->
+                click.positionType.isOnCondition() && event.value.conditionOperator == OR ->
+                    application.getOnConditionWithOrPositionState(click)
+                click.positionType.isOnCondition() && event.value.conditionOperator == AND ->
                     application.getOnConditionWithAndPositionState(evt, click)
                 else -> null
             }
@@ -118,12 +118,16 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
         title = R.string.dropdown_item_title_click_position_type_on_condition,
         helperText = R.string.dropdown_helper_text_click_position_type_on_condition,
     )
+    private val clickTypeItemOnEachCondition = DropdownItem(
+        title = R.string.dropdown_item_title_click_position_type_on_each_condition,
+        helperText = R.string.dropdown_helper_text_click_position_type_on_each_condition,
+    )
     private val clickTypeItemOnPosition = DropdownItem(
         title= R.string.dropdown_item_title_click_position_type_on_position,
         helperText = R.string.dropdown_helper_text_click_position_type_on_position,
     )
     /** Items for the click type dropdown field. */
-    val clickTypeItems = listOf(clickTypeItemOnCondition, clickTypeItemOnPosition)
+    val clickTypeItems = listOf(clickTypeItemOnCondition, clickTypeItemOnEachCondition, clickTypeItemOnPosition)
 
     /** Tells if the configured click is valid and can be saved. */
     val isValidAction: Flow<Boolean> = editionRepository.editionState.editedActionState
@@ -144,6 +148,7 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
         editionRepository.editionState.getEditedAction<Action.Click>()?.let { click ->
             val positionType = when (newItem) {
                 clickTypeItemOnCondition -> Action.Click.PositionType.ON_DETECTED_CONDITION
+                clickTypeItemOnEachCondition -> Action.Click.PositionType.ON_EACH_DETECTED_CONDITION
                 clickTypeItemOnPosition -> Action.Click.PositionType.USER_SELECTED
                 else -> return
             }
@@ -263,9 +268,9 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
         )
     }
 
-    private fun Context.getOnConditionWithOrPositionState(): ClickPositionUiState =
+    private fun Context.getOnConditionWithOrPositionState(click: Action.Click): ClickPositionUiState =
         ClickPositionUiState(
-            selectedChoice = clickTypeItemOnCondition,
+            selectedChoice = click.getOnConditionChoice(),
             selectorTitle = getString(R.string.item_title_click_on_condition_or_operator),
             selectorSubText = getString(R.string.item_desc_click_on_condition_or_operator),
             selectorIcon = null,
@@ -288,7 +293,7 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
         val atLeastOneCondition = availableConditions.value.isNotEmpty()
 
         return ClickPositionUiState(
-            selectedChoice = clickTypeItemOnCondition,
+            selectedChoice = click.getOnConditionChoice(),
             selectorTitle = getString(R.string.item_title_click_on_condition_and_operator),
             selectorSubText = subText,
             selectorIcon = conditionBitmap,
@@ -296,6 +301,10 @@ class ClickViewModel(application: Application) : AndroidViewModel(application) {
             action = if (atLeastOneCondition) ClickPositionSelectorAction.SELECT_CONDITION else ClickPositionSelectorAction.NONE,
         )
     }
+
+    private fun Action.Click.getOnConditionChoice(): DropdownItem =
+        if (positionType == Action.Click.PositionType.ON_EACH_DETECTED_CONDITION) clickTypeItemOnEachCondition
+        else clickTypeItemOnCondition
 }
 
 data class ClickPositionUiState(
@@ -19,12 +19,15 @@ package com.buzbuz.smartautoclicker.feature.scenario.config.ui.condition
 import android.content.DialogInterface
 import android.graphics.Bitmap
 import android.graphics.Color
+import android.graphics.Rect
 import android.text.InputFilter
+import android.text.InputType
 import android.util.Log
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 
+import androidx.annotation.StringRes
 import androidx.core.content.ContextCompat
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.lifecycleScope
@@ -38,9 +41,12 @@ import com.buzbuz.smartautoclicker.core.ui.bindings.setLabel
 import com.buzbuz.smartautoclicker.core.ui.bindings.setOnTextChangedListener
 import com.buzbuz.smartautoclicker.core.ui.bindings.setButtonEnabledState
 import com.buzbuz.smartautoclicker.core.ui.bindings.setSelectedItem
+import com.buzbuz.smartautoclicker.core.ui.bindings.setError
 import com.buzbuz.smartautoclicker.core.ui.bindings.setText
+import com.buzbuz.smartautoclicker.core.ui.databinding.IncludeInputFieldTextBinding
 import com.buzbuz.smartautoclicker.core.ui.overlays.dialog.OverlayDialog
 import com.buzbuz.smartautoclicker.core.ui.overlays.viewModels
+import com.buzbuz.smartautoclicker.core.ui.utils.MinMaxInputFilter
 import com.buzbuz.smartautoclicker.feature.scenario.config.R
 import com.buzbuz.smartautoclicker.feature.scenario.config.databinding.DialogConfigConditionBinding
 import com.buzbuz.smartautoclicker.feature.scenario.config.utils.setError
@@ -105,6 +111,15 @@ class ConditionDialog(
                 onItemBound = ::onDetectionTypeDropdownItemBound,
             )
 
+            editDetectionAreaLeft.setupDetectionAreaField(
+                R.string.input_field_label_detection_area_left, viewModel.screenSize.x, viewModel::setDetectionAreaLeft)
+            editDetectionAreaTop.setupDetectionAreaField(
+                R.string.input_field_label_detection_area_top, viewModel.screenSize.y, viewModel::setDetectionAreaTop)
+            editDetectionAreaRight.setupDetectionAreaField(
+                R.string.input_field_label_detection_area_right, viewModel.screenSize.x, viewModel::setDetectionAreaRight)
+            editDetectionAreaBottom.setupDetectionAreaField(
+                R.string.input_field_label_detection_area_bottom, viewModel.screenSize.y, viewModel::setDetectionAreaBottom)
+
             conditionShouldAppear.setItems(
                 label = context.getString(R.string.dropdown_label_condition_visibility),
                 items = viewModel.shouldBeDetectedItems,
@@ -135,6 +150,9 @@ class ConditionDialog(
                 launch { viewModel.conditionBitmap.collect(::updateConditionBitmap) }
                 launch { viewModel.shouldBeDetected.collect(::updateShouldBeDetected) }
                 launch { viewModel.detectionType.collect(::updateConditionType) }
+                launch { viewModel.isDetectionAreaEditable.collect(::updateDetectionAreaVisibility) }
+                launch { viewModel.detectionArea.collect(::updateDetectionArea) }
+                launch { viewModel.detectionAreaError.collect(::updateDetectionAreaError) }
                 launch { viewModel.threshold.collect(::updateThreshold) }
                 launch { viewModel.conditionCanBeSaved.collect(::updateSaveButton) }
             }
@@ -188,6 +206,23 @@ class ConditionDialog(
         viewBinding.conditionDetectionType.setSelectedItem(newValue)
     }
 
+    private fun updateDetectionAreaVisibility(isEditable: Boolean) {
+        viewBinding.conditionDetectionArea.visibility = if (isEditable) View.VISIBLE else View.GONE
+    }
+
+    private fun updateDetectionArea(newArea: Rect) {
+        viewBinding.apply {
+            editDetectionAreaLeft.setText(newArea.left.toString(), InputType.TYPE_CLASS_NUMBER)
+            editDetectionAreaTop.setText(newArea.top.toString(), InputType.TYPE_CLASS_NUMBER)
+            editDetectionAreaRight.setText(newArea.right.toString(), InputType.TYPE_CLASS_NUMBER)
+            editDetectionAreaBottom.setText(newArea.bottom.toString(), InputType.TYPE_CLASS_NUMBER)
+        }
+    }
+
+    private fun updateDetectionAreaError(isError: Boolean) {
+        viewBinding.editDetectionAreaBottom.setError(R.string.input_field_error_detection_area, isError)
+    }
+
     private fun updateThreshold(newThreshold: Int) {
         viewBinding.apply {
             val isNotInitialized = seekbarDiffThreshold.value == 0f
@@ -200,6 +235,17 @@ class ConditionDialog(
         }
     }
 
+    private fun IncludeInputFieldTextBinding.setupDetectionAreaField(
+        @StringRes label: Int,
+        max: Int,
+        onValueChanged: (Int?) -> Unit,
+    ) {
+        textField.filters = arrayOf(MinMaxInputFilter(0, max))
+        setLabel(label)
+        setOnTextChangedListener { onValueChanged(if (it.isNotEmpty()) it.toString().toInt() else null) }
+        hideSoftInputOnFocusLoss(textField)
+    }
+
     private fun updateSaveButton(isValidCondition: Boolean) {
         viewBinding.layoutTopBar.setButtonEnabledState(DialogNavigationButton.SAVE, isValidCondition)
     }
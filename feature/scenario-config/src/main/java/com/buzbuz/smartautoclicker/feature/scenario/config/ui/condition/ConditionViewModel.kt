@@ -18,13 +18,17 @@ package com.buzbuz.smartautoclicker.feature.scenario.config.ui.condition
 
 import android.app.Application
 import android.graphics.Bitmap
+import android.graphics.Point
+import android.graphics.Rect
 import android.view.View
 
 import androidx.lifecycle.AndroidViewModel
 
+import com.buzbuz.smartautoclicker.core.display.DisplayMetrics
 import com.buzbuz.smartautoclicker.core.domain.Repository
 import com.buzbuz.smartautoclicker.core.ui.bindings.DropdownItem
 import com.buzbuz.smartautoclicker.core.domain.model.EXACT
+import com.buzbuz.smartautoclicker.core.domain.model.IN_AREA
 import com.buzbuz.smartautoclicker.core.domain.model.WHOLE_SCREEN
 import com.buzbuz.smartautoclicker.core.ui.monitoring.MonitoredViewType
 import com.buzbuz.smartautoclicker.core.ui.monitoring.MonitoredViewsManager
@@ -42,6 +46,8 @@ class ConditionViewModel(application: Application) : AndroidViewModel(applicatio
     private val repository = Repository.getRepository(application)
     /** Repository providing access to the edited items. */
     private val editionRepository = EditionRepository.getInstance(application)
+    /** Provides the screen size for the default detection area. */
+    private val displayMetrics = DisplayMetrics.getInstance(application)
     /** Monitor the views fot the tutorial. */
     private val monitoredViewsManager: MonitoredViewsManager = MonitoredViewsManager.getInstance()
 
@@ -91,19 +97,37 @@ class ConditionViewModel(application: Application) : AndroidViewModel(applicatio
         helperText = R.string.dropdown_helper_text_detection_type_screen,
         icon = R.drawable.ic_detect_whole_screen,
     )
+    val detectionTypeInArea = DropdownItem(
+        title= R.string.dropdown_item_title_detection_type_in_area,
+        helperText = R.string.dropdown_helper_text_detection_type_in_area,
+        icon = R.drawable.ic_detect_in_area,
+    )
     /** Detection types choices for the dropdown field. */
-    val detectionTypeItems = listOf(detectionTypeExact, detectionTypeScreen)
+    val detectionTypeItems = listOf(detectionTypeExact, detectionTypeScreen, detectionTypeInArea)
     /** The type of detection currently selected by the user. */
     val detectionType: Flow<DropdownItem> = configuredCondition
         .map { condition ->
             when (condition.detectionType) {
                 EXACT -> detectionTypeExact
                 WHOLE_SCREEN -> detectionTypeScreen
+                IN_AREA -> detectionTypeInArea
                 else -> null
             }
         }
         .filterNotNull()
 
+    /** Tells if the detection area can be edited, as it is only used by the [IN_AREA] detection type. */
+    val isDetectionAreaEditable: Flow<Boolean> = configuredCondition.map { it.detectionType == IN_AREA }
+    /** The area of the screen to search the condition in, once it is set. */
+    val detectionArea: Flow<Rect> = configuredCondition
+        .mapNotNull { it.detectionArea }
+        .take(1)
+    /** Tells if the detection area is invalid, as too small to contain the condition. */
+    val detectionAreaError: Flow<Boolean> = configuredCondition.map { !it.isDetectionAreaValid() }
+    /** The size of the screen, limiting the detection area. */
+    val screenSize: Point
+        get() = displayMetrics.screenSize
+
     /** The condition threshold value currently edited by the user. */
     val threshold: Flow<Int> = configuredCondition.mapNotNull { it.threshold }
     /** The bitmap for the configured condition. */
@@ -148,10 +172,16 @@ class ConditionViewModel(application: Application) : AndroidViewModel(applicatio
             val type = when (newType) {
                 detectionTypeExact -> EXACT
                 detectionTypeScreen -> WHOLE_SCREEN
+                detectionTypeInArea -> IN_AREA
                 else -> return
             }
 
-            editionRepository.updateEditedCondition(condition.copy(detectionType = type))
+            editionRepository.updateEditedCondition(
+                condition.copy(
+                    detectionType = type,
+                    detectionArea = condition.detectionArea ?: getDefaultDetectionArea(condition.area),
+                )
+            )
         }
     }
 
@@ -165,6 +195,41 @@ class ConditionViewModel(application: Application) : AndroidViewModel(applicatio
         }
     }
 
+    /** Set the left of the detection area, in pixels. */
+    fun setDetectionAreaLeft(left: Int?) = updateDetectionArea { this.left = left ?: 0 }
+
+    /** Set the top of the detection area, in pixels. */
+    fun setDetectionAreaTop(top: Int?) = updateDetectionArea { this.top = top ?: 0 }
+
+    /** Set the right of the detection area, in pixels. */
+    fun setDetectionAreaRight(right: Int?) = updateDetectionArea { this.right = right ?: 0 }
+
+    /** Set the bottom of the detection area, in pixels. */
+    fun setDetectionAreaBottom(bottom: Int?) = updateDetectionArea { this.bottom = bottom ?: 0 }
+
+    private fun updateDetectionArea(update: Rect.() -> Unit) {
+        editionRepository.editionState.getEditedCondition()?.let { condition ->
+            val detectionArea = Rect(condition.detectionArea ?: getDefaultDetectionArea(condition.area)).apply(update)
+            editionRepository.updateEditedCondition(condition.copy(detectionArea = detectionArea))
+        }
+    }
+
+    /**
+     * Get the default detection area for a condition.
+     * It is a band of the screen width, centered on the condition and three times its height.
+     *
+     * @param conditionArea the area of the condition on the screen.
+     */
+    private fun getDefaultDetectionArea(conditionArea: Rect): Rect {
+        val screenSize = displayMetrics.screenSize
+        return Rect(
+            0,
+            (conditionArea.top - conditionArea.height()).coerceAtLeast(0),
+            screenSize.x,
+            (conditionArea.bottom + conditionArea.height()).coerceAtMost(screenSize.y),
+        )
+    }
+
     fun isConditionRelatedToClick(): Boolean =
         editionRepository.editionState.isEditedConditionReferencedByClick()
 
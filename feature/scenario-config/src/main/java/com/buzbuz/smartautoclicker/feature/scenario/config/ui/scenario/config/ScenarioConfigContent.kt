@@ -19,6 +19,7 @@ package com.buzbuz.smartautoclicker.feature.scenario.config.ui.scenario.config
 import android.content.Context
 import android.text.InputFilter
 import android.text.InputFilter.LengthFilter
+import android.text.InputType
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
@@ -39,6 +40,7 @@ import com.buzbuz.smartautoclicker.core.ui.overlays.dialog.NavBarDialogContent
 import com.buzbuz.smartautoclicker.core.domain.model.endcondition.EndCondition
 import com.buzbuz.smartautoclicker.core.ui.overlays.manager.OverlayManager
 import com.buzbuz.smartautoclicker.core.ui.overlays.dialog.viewModels
+import com.buzbuz.smartautoclicker.core.ui.utils.MinMaxInputFilter
 import com.buzbuz.smartautoclicker.feature.scenario.config.R
 import com.buzbuz.smartautoclicker.feature.scenario.config.databinding.ContentScenarioConfigBinding
 import com.buzbuz.smartautoclicker.feature.scenario.config.ui.endcondition.EndConditionConfigDialog
@@ -78,6 +80,45 @@ class ScenarioConfigContent(appContext: Context) : NavBarDialogContent(appContex
                 if (fromUser) viewModel.setDetectionQuality(value.roundToInt())
             }
 
+            captureResolutionField.setItems(
+                label = context.resources.getString(R.string.input_field_label_capture_resolution),
+                items = viewModel.captureResolutionItems,
+                onItemSelected = viewModel::setCaptureResolution,
+            )
+
+            conditionScalesField.setItems(
+                label = context.resources.getString(R.string.input_field_label_condition_scales),
+                items = viewModel.conditionScalesItems,
+                onItemSelected = viewModel::setConditionScales,
+            )
+
+            maxFpsField.apply {
+                textField.filters = arrayOf(MinMaxInputFilter(0, MAX_FPS_MAX))
+                setLabel(R.string.input_field_label_max_fps)
+                setOnTextChangedListener {
+                    viewModel.setMaxFps(if (it.isNotEmpty()) it.toString().toInt() else null)
+                }
+            }
+            dialogController.hideSoftInputOnFocusLoss(maxFpsField.textField)
+
+            backoffFrameCountField.apply {
+                textField.filters = arrayOf(MinMaxInputFilter(0, BACKOFF_FRAME_COUNT_MAX))
+                setLabel(R.string.input_field_label_backoff_frame_count)
+                setOnTextChangedListener {
+                    viewModel.setBackoffFrameCount(if (it.isNotEmpty()) it.toString().toInt() else null)
+                }
+            }
+            dialogController.hideSoftInputOnFocusLoss(backoffFrameCountField.textField)
+
+            backoffMaxDelayField.apply {
+                textField.filters = arrayOf(MinMaxInputFilter(0, BACKOFF_MAX_DELAY_MAX))
+                setLabel(R.string.input_field_label_backoff_max_delay)
+                setOnTextChangedListener {
+                    viewModel.setBackoffMaxDelay(if (it.isNotEmpty()) it.toString().toLong() else null)
+                }
+            }
+            dialogController.hideSoftInputOnFocusLoss(backoffMaxDelayField.textField)
+
             endConditionsOperatorField.setItems(
                 items = viewModel.endConditionOperatorsItems,
                 onItemSelected = viewModel::setConditionOperator,
@@ -116,6 +157,11 @@ class ScenarioConfigContent(appContext: Context) : NavBarDialogContent(appContex
                 launch { viewModel.randomization.collect(::updateRandomization) }
                 launch { viewModel.isProModePurchased.collect(::updateProModeFeaturesUi) }
                 launch { viewModel.detectionQuality.collect(::updateQuality) }
+                launch { viewModel.captureResolution.collect(::updateCaptureResolution) }
+                launch { viewModel.conditionScales.collect(::updateConditionScales) }
+                launch { viewModel.maxFps.collect(::updateMaxFps) }
+                launch { viewModel.backoffFrameCount.collect(::updateBackoffFrameCount) }
+                launch { viewModel.backoffMaxDelay.collect(::updateBackoffMaxDelay) }
                 launch { viewModel.endConditionOperator.collect(::updateEndConditionOperator) }
                 launch { viewModel.endConditions.collect(::updateEndConditions) }
             }
@@ -181,6 +227,26 @@ class ScenarioConfigContent(appContext: Context) : NavBarDialogContent(appContex
         }
     }
 
+    private fun updateCaptureResolution(resolutionItem: DropdownItem) {
+        viewBinding.captureResolutionField.setSelectedItem(resolutionItem)
+    }
+
+    private fun updateConditionScales(scalesItem: DropdownItem) {
+        viewBinding.conditionScalesField.setSelectedItem(scalesItem)
+    }
+
+    private fun updateMaxFps(maxFps: String) {
+        viewBinding.maxFpsField.setText(maxFps, InputType.TYPE_CLASS_NUMBER)
+    }
+
+    private fun updateBackoffFrameCount(frameCount: String) {
+        viewBinding.backoffFrameCountField.setText(frameCount, InputType.TYPE_CLASS_NUMBER)
+    }
+
+    private fun updateBackoffMaxDelay(delayMs: String) {
+        viewBinding.backoffMaxDelayField.setText(delayMs, InputType.TYPE_CLASS_NUMBER)
+    }
+
     private fun updateEndConditionOperator(operatorItem: DropdownItem) {
         viewBinding.endConditionsOperatorField.setSelectedItem(operatorItem)
     }
@@ -100,6 +100,57 @@ class ScenarioConfigViewModel(application: Application) : AndroidViewModel(appli
     val detectionQuality: Flow<Int?> = configuredScenario
         .map { it.detectionQuality }
 
+    private val fullCaptureResolutionItem = DropdownItem(
+        title = R.string.dropdown_item_title_capture_resolution_full,
+        helperText = R.string.dropdown_helper_text_capture_resolution_full,
+    )
+    private val detectionCaptureResolutionItem = DropdownItem(
+        title = R.string.dropdown_item_title_capture_resolution_detection,
+        helperText = R.string.dropdown_helper_text_capture_resolution_detection,
+    )
+    val captureResolutionItems = listOf(fullCaptureResolutionItem, detectionCaptureResolutionItem)
+
+    /** The resolution of the screen capture during the detection. */
+    val captureResolution: Flow<DropdownItem> = configuredScenario
+        .map {
+            when (it.downscaleCapture) {
+                true -> detectionCaptureResolutionItem
+                false -> fullCaptureResolutionItem
+            }
+        }
+
+    private val capturedConditionScaleItem = DropdownItem(
+        title = R.string.dropdown_item_title_condition_scales_captured,
+        helperText = R.string.dropdown_helper_text_condition_scales_captured,
+    )
+    private val multipleConditionScalesItem = DropdownItem(
+        title = R.string.dropdown_item_title_condition_scales_multiple,
+        helperText = R.string.dropdown_helper_text_condition_scales_multiple,
+    )
+    val conditionScalesItems = listOf(capturedConditionScaleItem, multipleConditionScalesItem)
+
+    /** The sizes at which the conditions are searched during the detection. */
+    val conditionScales: Flow<DropdownItem> = configuredScenario
+        .map {
+            when (it.multiScaleMatching) {
+                true -> multipleConditionScalesItem
+                false -> capturedConditionScaleItem
+            }
+        }
+
+    /** The maximum number of screen images processed per second, 0 for no limit. */
+    val maxFps: Flow<String> = configuredScenario
+        .map { it.maxFps.toString() }
+        .take(1)
+    /** The number of images without changes before slowing down the detection, 0 to never slow it down. */
+    val backoffFrameCount: Flow<String> = configuredScenario
+        .map { it.backoffFrameCount.toString() }
+        .take(1)
+    /** The maximum delay between two images once the detection is slowed down, in milliseconds. */
+    val backoffMaxDelay: Flow<String> = configuredScenario
+        .map { it.backoffMaxDelay.toString() }
+        .take(1)
+
     private val conditionAndItem = DropdownItem(
         title = R.string.dropdown_item_title_condition_and,
         helperText = R.string.dropdown_helper_text_end_condition_and,
@@ -202,6 +253,72 @@ class ScenarioConfigViewModel(application: Application) : AndroidViewModel(appli
         }
     }
 
+    /** Set the resolution of the screen capture during the detection. */
+    fun setCaptureResolution(resolutionItem: DropdownItem) {
+        editionRepository.editionState.getScenario()?.let { scenario ->
+            val downscaleCapture = when (resolutionItem) {
+                detectionCaptureResolutionItem -> true
+                fullCaptureResolutionItem -> false
+                else -> return
+            }
+
+            viewModelScope.launch {
+                editionRepository.updateEditedScenario(scenario.copy(downscaleCapture = downscaleCapture))
+            }
+        }
+    }
+
+    /** Set the sizes at which the conditions are searched during the detection. */
+    fun setConditionScales(scalesItem: DropdownItem) {
+        editionRepository.editionState.getScenario()?.let { scenario ->
+            val multiScaleMatching = when (scalesItem) {
+                multipleConditionScalesItem -> true
+                capturedConditionScaleItem -> false
+                else -> return
+            }
+
+            viewModelScope.launch {
+                editionRepository.updateEditedScenario(scenario.copy(multiScaleMatching = multiScaleMatching))
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of screen images processed per second.
+     * @param maxFps the new maximum, null or 0 for no limit.
+     */
+    fun setMaxFps(maxFps: Int?) {
+        editionRepository.editionState.getScenario()?.let { scenario ->
+            viewModelScope.launch {
+                editionRepository.updateEditedScenario(scenario.copy(maxFps = maxFps ?: 0))
+            }
+        }
+    }
+
+    /**
+     * Set the number of images without changes before slowing down the detection.
+     * @param frameCount the new image count, null or 0 to never slow down the detection.
+     */
+    fun setBackoffFrameCount(frameCount: Int?) {
+        editionRepository.editionState.getScenario()?.let { scenario ->
+            viewModelScope.launch {
+                editionRepository.updateEditedScenario(scenario.copy(backoffFrameCount = frameCount ?: 0))
+            }
+        }
+    }
+
+    /**
+     * Set the maximum delay between two images once the detection is slowed down.
+     * @param delayMs the new delay in milliseconds, null or 0 to never slow down the detection.
+     */
+    fun setBackoffMaxDelay(delayMs: Long?) {
+        editionRepository.editionState.getScenario()?.let { scenario ->
+            viewModelScope.launch {
+                editionRepository.updateEditedScenario(scenario.copy(backoffMaxDelay = delayMs ?: 0))
+            }
+        }
+    }
+
     /** Toggle the end condition operator between AND and OR. */
     fun setConditionOperator(operatorItem: DropdownItem) {
         editionRepository.editionState.getScenario()?.let { scenario ->
@@ -263,4 +380,10 @@ data class RandomizationDropdownUiState(
 /** The minimum value for the seek bar. */
 const val SLIDER_QUALITY_MIN = DETECTION_QUALITY_MIN.toFloat()
 /** The maximum value for the seek bar. */
-const val SLIDER_QUALITY_MAX = DETECTION_QUALITY_MAX.toFloat()
\ No newline at end of file
+const val SLIDER_QUALITY_MAX = DETECTION_QUALITY_MAX.toFloat()
+/** The maximum value for the maximum number of images processed per second. */
+const val MAX_FPS_MAX = 120
+/** The maximum value for the number of images without changes before slowing down the detection. */
+const val BACKOFF_FRAME_COUNT_MAX = 9999
+/** The maximum value for the maximum delay between two images once slowed down, in milliseconds. */
+const val BACKOFF_MAX_DELAY_MAX = 60000
@@ -23,13 +23,13 @@ import com.buzbuz.smartautoclicker.core.domain.model.event.Event
 internal fun Action.isValidInEvent(event: Event?): Boolean {
     event ?: return false
 
-    return if (event.conditionOperator == AND && this is Action.Click && positionType == Action.Click.PositionType.ON_DETECTED_CONDITION) {
+    return if (event.conditionOperator == AND && this is Action.Click && positionType.isOnCondition()) {
         clickOnConditionId != null && isComplete()
     } else isComplete()
 }
 
 internal fun Action.isClickOnCondition(): Boolean =
-    this is Action.Click && this.positionType == Action.Click.PositionType.ON_DETECTED_CONDITION
+    this is Action.Click && this.positionType.isOnCondition()
 
 /** Check if this list does not already contains the provided action */
 internal fun List<Action>.doesNotContainAction(action: Action): Boolean =